@@ -0,0 +1,75 @@
+package uk.ac.ebi.subs.ena;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import uk.ac.ebi.subs.ena.listener.SubmissionEnvelopeMessageConverter;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Benchmarks reading the submission envelope of a message: with Spring AMQP's JSON message converter,
+ * which copies the body to a string before parsing it, and with the streaming converter of the agent,
+ * from the same JSON body and from the body compressed with gzip.
+ */
+@State(Scope.Benchmark)
+public class EnvelopeReadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int numberOfFiles;
+
+    private Jackson2JsonMessageConverter jsonMessageConverter;
+
+    private SubmissionEnvelopeMessageConverter submissionEnvelopeMessageConverter;
+
+    private Message jsonMessage;
+
+    private Message gzipMessage;
+
+    @Setup
+    public void setup() throws IOException {
+        final ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        jsonMessageConverter = new Jackson2JsonMessageConverter(objectMapper);
+        submissionEnvelopeMessageConverter =
+                new SubmissionEnvelopeMessageConverter(objectMapper, new EnaAgentMetrics(new SimpleMeterRegistry()));
+
+        jsonMessage = jsonMessageConverter.toMessage(
+                SyntheticSubmissions.submissionEnvelope(numberOfFiles), new MessageProperties());
+
+        final ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedBody)) {
+            gzipOutputStream.write(jsonMessage.getBody());
+        }
+        final MessageProperties gzipMessageProperties = new MessageProperties();
+        gzipMessageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        gzipMessageProperties.setContentEncoding(SubmissionEnvelopeMessageConverter.GZIP);
+        gzipMessage = new Message(compressedBody.toByteArray(), gzipMessageProperties);
+    }
+
+    @Benchmark
+    public Object readWithJsonMessageConverter() {
+        return jsonMessageConverter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public SubmissionEnvelope readWithStreamingConverter() {
+        return submissionEnvelopeMessageConverter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public SubmissionEnvelope readGzipWithStreamingConverter() {
+        return submissionEnvelopeMessageConverter.fromMessage(gzipMessage);
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.ebi.subs.ena;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.subs.ena.filemove.SshConnectionManager;
+import uk.ac.ebi.subs.ena.filemove.SshFileMoveTransport;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.List;
+
+/**
+ * Benchmarks the work done on the agent to move the files of a submission:
+ * working out the relative path of every file and building the SSH command of a batch.
+ */
+@State(Scope.Benchmark)
+public class FileMoveCommandBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int numberOfFiles;
+
+    private SshConnectionManager sshConnectionManager;
+
+    private SshFileMoveTransport sshFileMoveTransport;
+
+    private FileMoveService fileMoveService;
+
+    private List<UploadedFile> uploadedFiles;
+
+    private String sourceBasePath;
+
+    @Setup
+    public void setup() {
+        sshConnectionManager = SyntheticSubmissions.sshConnectionManager();
+        sshFileMoveTransport = SyntheticSubmissions.sshFileMoveTransport(sshConnectionManager);
+        fileMoveService = SyntheticSubmissions.fileMoveService(sshFileMoveTransport);
+        uploadedFiles = SyntheticSubmissions.submissionEnvelope(numberOfFiles).getUploadedFiles();
+
+        final String path = uploadedFiles.get(0).getPath();
+        sourceBasePath = path.substring(0, path.indexOf(SyntheticSubmissions.SOURCE_BASE_FOLDER)
+                + SyntheticSubmissions.SOURCE_BASE_FOLDER.length());
+    }
+
+    @Benchmark
+    public void getRelativeFilePath(Blackhole blackhole) {
+        for (UploadedFile uploadedFile : uploadedFiles) {
+            blackhole.consume(fileMoveService.getRelativeFilePath(uploadedFile.getPath()));
+        }
+    }
+
+    @Benchmark
+    public String[] buildFileMoveCommand() {
+        return sshConnectionManager.remoteCommand(sshFileMoveTransport.batchFileMoveCommand(sourceBasePath));
+    }
+}
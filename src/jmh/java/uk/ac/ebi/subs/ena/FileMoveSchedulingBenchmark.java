@@ -0,0 +1,106 @@
+package uk.ac.ebi.subs.ena;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.ena.filemove.FileMoveResult;
+import uk.ac.ebi.subs.ena.filemove.FileMoveTransport;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks how long the files of a submission take to move in all, against a transport
+ * that takes a millisecond per MB of file: 20 small, 8 medium and 4 large files, listed small first, on 4 parallel moves.
+ * Batches taken in the order the files are listed put all the large files in the last batch, which takes about 1000 ms,
+ * while packing the batches largest file first spreads the 1400 ms of moves to about 350 ms per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileMoveSchedulingBenchmark {
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final int PARALLEL_MOVES = 4;
+
+    @Param({"false", "true"})
+    public boolean largestFirst;
+
+    private FileMoveService fileMoveService;
+
+    private List<UploadedFile> uploadedFiles;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fileMoveService = SyntheticSubmissions.fileMoveService(new SleepingFileMoveTransport());
+        ReflectionTestUtils.setField(fileMoveService, "batchSize", 500);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMoves", PARALLEL_MOVES);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", PARALLEL_MOVES);
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxAttempts", 1);
+        ReflectionTestUtils.setField(fileMoveService, "largestFirst", largestFirst);
+        ReflectionTestUtils.setField(fileMoveService, "expectedThroughputBytesPerSecond", 1000 * MB);
+        fileMoveService.afterPropertiesSet();
+
+        uploadedFiles = SyntheticSubmissions.submissionEnvelope(32).getUploadedFiles();
+        for (int i = 0; i < uploadedFiles.size(); i++) {
+            uploadedFiles.get(i).setTotalSize((i < 20 ? 10 : i < 28 ? 50 : 200) * MB);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fileMoveService.destroy();
+    }
+
+    @Benchmark
+    public List<FileMoveResult> moveFiles() {
+        return fileMoveService.moveFiles(uploadedFiles);
+    }
+
+    private static class SleepingFileMoveTransport implements FileMoveTransport {
+
+        @Override
+        public String getHostName() {
+            return "benchmark";
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public Set<String> findArchivedFiles(Collection<String> relativeFilePaths) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public List<FileMoveResult> moveBatch(String sourceBasePath, Map<String, UploadedFile> filesByRelativePath) {
+            final List<UploadedFile> uploadedFiles = new ArrayList<>(filesByRelativePath.values());
+            try {
+                Thread.sleep(uploadedFiles.stream().mapToLong(UploadedFile::getTotalSize).sum() / MB);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return uploadedFiles.stream()
+                    .map(uploadedFile -> FileMoveResult.succeeded(uploadedFile.getPath()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
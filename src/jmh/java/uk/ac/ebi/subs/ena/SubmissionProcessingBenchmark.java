@@ -0,0 +1,64 @@
+package uk.ac.ebi.subs.ena;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.ac.ebi.subs.processing.ProcessingCertificateEnvelope;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.Map;
+
+/**
+ * Benchmarks processing a submission without ENA and without moving files,
+ * i.e. the work the agent does itself for submissions of a growing number of uploaded files.
+ */
+@State(Scope.Benchmark)
+public class SubmissionProcessingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int numberOfFiles;
+
+    private EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor;
+
+    private SubmissionEnvelope submissionEnvelope;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        enaAgentSubmissionsProcessor = SyntheticSubmissions.enaAgentSubmissionsProcessor(
+                SyntheticSubmissions.fileMoveService(
+                        SyntheticSubmissions.sshFileMoveTransport(SyntheticSubmissions.sshConnectionManager())));
+        submissionEnvelope = SyntheticSubmissions.submissionEnvelope(numberOfFiles);
+    }
+
+    /**
+     * Processing a submission renames its files, so the benchmarks that do need the original names back each time.
+     */
+    @State(Scope.Benchmark)
+    public static class OriginalFileNames {
+
+        @Setup(Level.Invocation)
+        public void reset(SubmissionProcessingBenchmark benchmark) {
+            SyntheticSubmissions.resetFileNames(benchmark.submissionEnvelope);
+        }
+    }
+
+    @Benchmark
+    public ProcessingCertificateEnvelope processSubmission(OriginalFileNames originalFileNames) {
+        return enaAgentSubmissionsProcessor.processSubmission(submissionEnvelope);
+    }
+
+    @Benchmark
+    public SubmissionEnvelope injectPathAndChecksum(OriginalFileNames originalFileNames) {
+        enaAgentSubmissionsProcessor.injectPathAndChecksum(submissionEnvelope);
+        return submissionEnvelope;
+    }
+
+    @Benchmark
+    public Map<String, UploadedFile> filesByFilename() {
+        return enaAgentSubmissionsProcessor.filesByFilename(submissionEnvelope.getUploadedFiles());
+    }
+}
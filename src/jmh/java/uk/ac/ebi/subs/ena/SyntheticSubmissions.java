@@ -0,0 +1,175 @@
+package uk.ac.ebi.subs.ena;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.data.Submission;
+import uk.ac.ebi.subs.data.component.File;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionCheckpointStore;
+import uk.ac.ebi.subs.ena.checksum.ChecksumVerifier;
+import uk.ac.ebi.subs.ena.filemove.ArchivedFileCache;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionController;
+import uk.ac.ebi.subs.ena.filemove.FileMoveJournal;
+import uk.ac.ebi.subs.ena.filemove.FileMoveTransport;
+import uk.ac.ebi.subs.ena.filemove.FileMoveWatchdog;
+import uk.ac.ebi.subs.ena.filemove.SshConnectionManager;
+import uk.ac.ebi.subs.ena.filemove.SshFileMoveTransport;
+import uk.ac.ebi.subs.ena.listener.KeyedSerialExecutor;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.ena.progress.SubmissionProgressRegistry;
+import uk.ac.ebi.subs.ena.publisher.CertificatePublisher;
+import uk.ac.ebi.subs.ena.sample.SampleUpdateCoalescer;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Builds the synthetic submissions and the stubbed services the benchmarks run against.
+ * Each assay data of a synthetic submission refers to a pair of uploaded files, like paired-end reads do.
+ */
+final class SyntheticSubmissions {
+
+    static final String SOURCE_BASE_FOLDER = "ready_to_agent";
+
+    static final String ACTIVE_PROFILE = "benchmark";
+
+    private static final String WEBIN_FOLDER_PATH = "/fire/staging/era/upload/Webin-46220";
+
+    private static final String SOURCE_FOLDER = "/data/" + SOURCE_BASE_FOLDER + "/team/submission/";
+
+    private SyntheticSubmissions() {
+    }
+
+    static SubmissionEnvelope submissionEnvelope(int numberOfFiles) {
+        Team team = new Team();
+        team.setName("benchmark-team");
+
+        Submission submission = new Submission();
+        submission.setId(UUID.randomUUID().toString());
+        submission.setTeam(team);
+        SubmissionEnvelope submissionEnvelope = new SubmissionEnvelope(submission);
+
+        AssayData assayData = null;
+        for (int i = 0; i < numberOfFiles; i++) {
+            if (i % 2 == 0) {
+                assayData = new AssayData();
+                assayData.setId(UUID.randomUUID().toString());
+                assayData.setAlias("assay-data-" + i);
+                assayData.setTeam(team);
+                assayData.setAccession("ERR" + (1000000 + i));
+                submissionEnvelope.getAssayData().add(assayData);
+            }
+
+            final String filename = String.format("sample_%06d_R%d.fastq.gz", i / 2, i % 2 + 1);
+
+            File file = new File();
+            file.setName(filename);
+            file.setType("fastq");
+            assayData.getFiles().add(file);
+
+            UploadedFile uploadedFile = new UploadedFile();
+            uploadedFile.setFilename(filename);
+            uploadedFile.setPath(SOURCE_FOLDER + filename);
+            uploadedFile.setChecksum(String.format("%032x", i));
+            uploadedFile.setTotalSize(1024L * 1024L * i);
+            submissionEnvelope.getUploadedFiles().add(uploadedFile);
+        }
+
+        return submissionEnvelope;
+    }
+
+    /**
+     * Gives the files of the assay data back their original names, which {@code injectPathAndChecksum} replaces.
+     */
+    static void resetFileNames(SubmissionEnvelope submissionEnvelope) {
+        final List<UploadedFile> uploadedFiles = submissionEnvelope.getUploadedFiles();
+        int i = 0;
+        for (AssayData assayData : submissionEnvelope.getAssayData()) {
+            for (File file : assayData.getFiles()) {
+                file.setName(uploadedFiles.get(i++).getFilename());
+            }
+        }
+    }
+
+    static SshConnectionManager sshConnectionManager() {
+        SshConnectionManager sshConnectionManager = new SshConnectionManager();
+        ReflectionTestUtils.setField(sshConnectionManager, "remoteHostName", "sra-login");
+        ReflectionTestUtils.setField(sshConnectionManager, "fileMoveUsername", "fileuploadusername");
+        ReflectionTestUtils.setField(sshConnectionManager, "sshCommand", "ssh");
+        ReflectionTestUtils.setField(sshConnectionManager, "multiplexing", true);
+        ReflectionTestUtils.setField(sshConnectionManager, "controlDir", "/tmp/ena-agent-ssh");
+        ReflectionTestUtils.setField(sshConnectionManager, "controlPersistSeconds", 300);
+
+        return sshConnectionManager;
+    }
+
+    /**
+     * @return an SSH transport that builds commands, but is never asked to move anything
+     */
+    static SshFileMoveTransport sshFileMoveTransport(SshConnectionManager sshConnectionManager) {
+        SshFileMoveTransport sshFileMoveTransport = new SshFileMoveTransport(sshConnectionManager,
+                new EnaAgentMetrics(new SimpleMeterRegistry()), new FileMoveWatchdog());
+        ReflectionTestUtils.setField(sshFileMoveTransport, "webinFolderPath", WEBIN_FOLDER_PATH);
+        ReflectionTestUtils.setField(sshFileMoveTransport, "scriptPath", "/homes/test_user/file-upload");
+        ReflectionTestUtils.setField(sshFileMoveTransport, "activeProfile", ACTIVE_PROFILE);
+
+        return sshFileMoveTransport;
+    }
+
+    /**
+     * @return a file move service that works out paths, but is never asked to move anything,
+     * with an archived file cache that holds nothing, so the same files can be moved over and over
+     */
+    static FileMoveService fileMoveService(FileMoveTransport fileMoveTransport) {
+        final EnaAgentMetrics enaAgentMetrics = new EnaAgentMetrics(new SimpleMeterRegistry());
+        final FileMoveAdmissionController fileMoveAdmissionController = new FileMoveAdmissionController(enaAgentMetrics);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightBytes", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightMoves", Integer.MAX_VALUE);
+        FileMoveService fileMoveService = new FileMoveService(fileMoveTransport, new ChecksumVerifier(enaAgentMetrics),
+                fileMoveAdmissionController,
+                new ArchivedFileCache(mock(FileMoveJournal.class, withSettings().stubOnly()), enaAgentMetrics),
+                enaAgentMetrics);
+        ReflectionTestUtils.setField(fileMoveService, "webinFolderPath", WEBIN_FOLDER_PATH);
+        ReflectionTestUtils.setField(fileMoveService, "sourceBaseFolder", SOURCE_BASE_FOLDER);
+        ReflectionTestUtils.setField(fileMoveService, "activeProfile", ACTIVE_PROFILE);
+
+        return fileMoveService;
+    }
+
+    /**
+     * @return a processor whose ENA processor accepts everything without doing any work
+     */
+    static EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor(FileMoveService fileMoveService) {
+        ENAProcessor enaProcessor = mock(ENAProcessor.class, withSettings().stubOnly());
+        when(enaProcessor.process(any(SubmissionEnvelope.class))).thenReturn(Collections.emptyList());
+
+        EnaAgentMetrics enaAgentMetrics = new EnaAgentMetrics(new SimpleMeterRegistry());
+        EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor = new EnaAgentSubmissionsProcessor(
+                mock(RabbitMessagingTemplate.class, withSettings().stubOnly()),
+                mock(MessageConverter.class, withSettings().stubOnly()),
+                new PartitionedEnaProcessor(enaProcessor, enaAgentMetrics),
+                fileMoveService,
+                mock(FileMoveJournal.class, withSettings().stubOnly()),
+                mock(SubmissionCheckpointStore.class, withSettings().stubOnly()),
+                enaAgentMetrics,
+                new KeyedSerialExecutor(4, "benchmark-submission-"),
+                mock(SampleUpdateCoalescer.class),
+                mock(CertificatePublisher.class),
+                new SubmissionProgressRegistry(enaAgentMetrics));
+        ReflectionTestUtils.setField(enaAgentSubmissionsProcessor, "activeProfile", ACTIVE_PROFILE);
+
+        return enaAgentSubmissionsProcessor;
+    }
+}
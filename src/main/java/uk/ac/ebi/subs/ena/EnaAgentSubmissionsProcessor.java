@@ -2,11 +2,14 @@ package uk.ac.ebi.subs.ena;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.rabbitmq.client.Channel;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 import uk.ac.ebi.subs.data.component.Archive;
 import uk.ac.ebi.subs.data.component.File;
@@ -14,7 +17,20 @@ import uk.ac.ebi.subs.data.status.ProcessingStatusEnum;
 import uk.ac.ebi.subs.data.submittable.Project;
 import uk.ac.ebi.subs.data.submittable.Sample;
 import uk.ac.ebi.subs.data.submittable.Submittable;
-import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionCheckpoint;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionCheckpointStore;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionStage;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionException;
+import uk.ac.ebi.subs.ena.filemove.FileMoveJournal;
+import uk.ac.ebi.subs.ena.filemove.FileMoveResult;
+import uk.ac.ebi.subs.ena.listener.KeyedSerialExecutor;
+import uk.ac.ebi.subs.ena.listener.SubmissionListenerConfiguration;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.ena.progress.SubmissionProgress;
+import uk.ac.ebi.subs.ena.progress.SubmissionProgressRegistry;
+import uk.ac.ebi.subs.ena.publisher.CertificatePublisher;
+import uk.ac.ebi.subs.ena.sample.SampleUpdateCoalescer;
+import uk.ac.ebi.subs.ena.sample.SampleUpdateRejectedException;
 import uk.ac.ebi.subs.messaging.Exchanges;
 import uk.ac.ebi.subs.messaging.Queues;
 import uk.ac.ebi.subs.messaging.Topics;
@@ -23,12 +39,24 @@ import uk.ac.ebi.subs.processing.ProcessingCertificateEnvelope;
 import uk.ac.ebi.subs.processing.SubmissionEnvelope;
 import uk.ac.ebi.subs.processing.UpdatedSamplesEnvelope;
 import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
-import uk.ac.ebi.subs.validator.data.SingleValidationResult;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -46,98 +74,496 @@ public class EnaAgentSubmissionsProcessor {
     @Value("${spring.profiles.active:dev}")
     private String activeProfile;
 
+    @Value("${ena.pipelining.enabled:false}")
+    private boolean pipeliningEnabled;
+
+    @Value("${ena.sample_update.enabled:false}")
+    private boolean sampleUpdatesEnabled;
+
+    @Value("${ena.certificates.chunkSize:0}")
+    private int certificateChunkSize;
+
+    @Value("${ena.listener.requeueDelayMillis:5000}")
+    private long requeueDelayMillis;
+
     RabbitMessagingTemplate rabbitMessagingTemplate;
 
-    ENAProcessor enaProcessor;
+    PartitionedEnaProcessor partitionedEnaProcessor;
 
     FileMoveService fileMoveService;
 
+    FileMoveJournal fileMoveJournal;
+
+    SubmissionCheckpointStore submissionCheckpointStore;
+
+    EnaAgentMetrics enaAgentMetrics;
+
+    KeyedSerialExecutor submissionSerialExecutor;
+
+    SampleUpdateCoalescer sampleUpdateCoalescer;
+
+    CertificatePublisher certificatePublisher;
+
+    SubmissionProgressRegistry submissionProgressRegistry;
+
     private static final ProcessingStatusEnum COMPLETED = ProcessingStatusEnum.Completed;
     private static final ProcessingStatusEnum ERROR = ProcessingStatusEnum.Error;
 
     @Autowired
     public EnaAgentSubmissionsProcessor(RabbitMessagingTemplate rabbitMessagingTemplate, MessageConverter messageConverter,
-                                        ENAProcessor enaProcessor,
-                                        FileMoveService fileMoveService) {
+                                        PartitionedEnaProcessor partitionedEnaProcessor,
+                                        FileMoveService fileMoveService, FileMoveJournal fileMoveJournal,
+                                        SubmissionCheckpointStore submissionCheckpointStore, EnaAgentMetrics enaAgentMetrics,
+                                        KeyedSerialExecutor submissionSerialExecutor, SampleUpdateCoalescer sampleUpdateCoalescer,
+                                        CertificatePublisher certificatePublisher,
+                                        SubmissionProgressRegistry submissionProgressRegistry) {
         this.rabbitMessagingTemplate = rabbitMessagingTemplate;
         this.rabbitMessagingTemplate.setMessageConverter(messageConverter);
-        this.enaProcessor = enaProcessor;
+        this.partitionedEnaProcessor = partitionedEnaProcessor;
         this.fileMoveService = fileMoveService;
+        this.fileMoveJournal = fileMoveJournal;
+        this.submissionCheckpointStore = submissionCheckpointStore;
+        this.enaAgentMetrics = enaAgentMetrics;
+        this.submissionSerialExecutor = submissionSerialExecutor;
+        this.sampleUpdateCoalescer = sampleUpdateCoalescer;
+        this.certificatePublisher = certificatePublisher;
+        this.submissionProgressRegistry = submissionProgressRegistry;
     }
 
-    @RabbitListener(queues = Queues.ENA_SAMPLES_UPDATED)
-    public void handleSampleUpdate(UpdatedSamplesEnvelope updatedSamplesEnvelope) {
+    /**
+     * Adds the updated samples to the open window of the {@link SampleUpdateCoalescer} without waiting for the window to be sent.
+     * The message is acknowledged once its samples have reached ENA, rejected without being requeued if ENA rejected any of them,
+     * or sent back to the queue if they could not be sent.
+     */
+    @RabbitListener(queues = Queues.ENA_SAMPLES_UPDATED,
+            containerFactory = SubmissionListenerConfiguration.SAMPLE_UPDATE_LISTENER_CONTAINER_FACTORY)
+    public void handleSampleUpdate(UpdatedSamplesEnvelope updatedSamplesEnvelope, Channel channel,
+                                   @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) throws IOException {
 
         logger.info("received updated samples for submission {}", updatedSamplesEnvelope.getSubmissionId());
 
-        updatedSamplesEnvelope.getUpdatedSamples().forEach(s -> {
+        if (!sampleUpdatesEnabled) {
+            logger.info("sample updates are disabled, skipping {} samples of submission {}",
+                    updatedSamplesEnvelope.getUpdatedSamples().size(), updatedSamplesEnvelope.getSubmissionId());
+            channel.basicAck(deliveryTag, false);
+            return;
+        }
+
+        final CompletableFuture<Void> sent;
+        try {
+            sent = sampleUpdateCoalescer.add(updatedSamplesEnvelope);
+        } catch (RuntimeException e) {
+            logger.error("could not take the updated samples of submission {}", updatedSamplesEnvelope.getSubmissionId(), e);
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
 
-            logger.info("NOT IMPLEMENTED, updates sample {} using submission {}", s.getAccession(), updatedSamplesEnvelope.getSubmissionId());
+        sent.whenComplete((result, e) -> {
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            try {
+                if (cause == null) {
+                    logger.info("finished updating samples for submission {}", updatedSamplesEnvelope.getSubmissionId());
+                    channel.basicAck(deliveryTag, false);
+                } else if (cause instanceof SampleUpdateRejectedException) {
+                    logger.error(cause.getMessage());
+                    channel.basicReject(deliveryTag, false);
+                } else {
+                    channel.basicNack(deliveryTag, false, true);
+                }
+            } catch (IOException ioException) {
+                logger.error("could not settle sample update message {}", deliveryTag, ioException);
+            }
         });
+    }
+
 
-        logger.info("finished updating samples for submission {}", updatedSamplesEnvelope.getSubmissionId());
+    /**
+     * Processes the submission. A submission whose files do not fit in the file move budget in time
+     * is sent back to the queue after ena.listener.requeueDelayMillis to be delivered again later, and is not counted as failed.
+     * A delivery of a submission that is still being processed waits for the earlier one to finish,
+     * without holding up the deliveries of other submissions.
+     *
+     * Messages are acknowledged by hand once the results have been sent, or sent back to the queue if the submission failed.
+     * A message that can not even be handed over for processing, e.g. an envelope without a submission, is rejected.
+     * When the results are sent with publisher confirms, the listener does not wait for the processing,
+     * and the results count as sent once the broker has confirmed them.
+     */
+    @RabbitListener(queues = {Queues.ENA_AGENT},
+            containerFactory = SubmissionListenerConfiguration.SUBMISSION_LISTENER_CONTAINER_FACTORY)
+    public void handleSubmission(SubmissionEnvelope submissionEnvelope, Channel channel,
+                                 @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        final String submissionId;
+        final CompletableFuture<Void> published;
+        try {
+            submissionId = submissionEnvelope.getSubmission().getId();
+            published = submissionSerialExecutor
+                    .submit(submissionId, () -> trackAndProcessSubmission(submissionEnvelope))
+                    .thenCompose(Function.identity());
+        } catch (RuntimeException e) {
+            logger.error("could not take submission message {}, rejecting it", deliveryTag, e);
+            enaAgentMetrics.recordSubmissionFailure();
+            reject(channel, deliveryTag);
+            return;
+        }
+
+        final CompletableFuture<Void> acknowledged = published.handle((result, e) -> {
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof FileMoveAdmissionException) {
+                logger.info("requeueing submission {} in {} ms: {}", submissionId, requeueDelayMillis, cause.getMessage());
+                CompletableFuture.runAsync(() -> acknowledge(channel, deliveryTag, false),
+                        CompletableFuture.delayedExecutor(requeueDelayMillis, TimeUnit.MILLISECONDS));
+                return null;
+            }
+            if (cause != null) {
+                logger.error("submission {} could not be processed or its results could not be sent", submissionId, cause);
+                enaAgentMetrics.recordSubmissionFailure();
+            }
+            acknowledge(channel, deliveryTag, cause == null);
+            return null;
+        });
+
+        if (!certificatePublisher.isConfirming()) {
+            acknowledged.join();
+        }
     }
 
+    /**
+     * Acknowledges the message, or sends it back to the queue.
+     */
+    private void acknowledge(Channel channel, long deliveryTag, boolean processed) {
+        try {
+            if (processed) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                channel.basicNack(deliveryTag, false, true);
+            }
+        } catch (IOException e) {
+            logger.error("could not {} message {}", processed ? "acknowledge" : "requeue", deliveryTag, e);
+        }
+    }
+
+    /**
+     * Rejects the message without sending it back to the queue, so it goes to the dead letter exchange of the queue if it has one.
+     */
+    private void reject(Channel channel, long deliveryTag) {
+        try {
+            channel.basicReject(deliveryTag, false);
+        } catch (IOException e) {
+            logger.error("could not reject message {}", deliveryTag, e);
+        }
+    }
+
+    /**
+     * Processes the submission like {@link #processAndPublishSubmission(SubmissionEnvelope)} does,
+     * with its progress in the {@link SubmissionProgressRegistry} until its results have been sent or it has failed.
+     */
+    private CompletableFuture<Void> trackAndProcessSubmission(SubmissionEnvelope submissionEnvelope) {
+        final String submissionId = submissionEnvelope.getSubmission().getId();
+        submissionProgressRegistry.start(submissionId);
+        try {
+            return processAndPublishSubmission(submissionEnvelope)
+                    .whenComplete((result, e) -> submissionProgressRegistry.finish(submissionId));
+        } catch (RuntimeException e) {
+            submissionProgressRegistry.finish(submissionId);
+            throw e;
+        }
+    }
 
-    @RabbitListener(queues = {Queues.ENA_AGENT})
-    public void handleSubmission(SubmissionEnvelope submissionEnvelope) {
-        moveUploadedFilesToArchive(submissionEnvelope);
+    /**
+     * @return the pending outcome of sending the results of the submission, done once they have been sent
+     */
+    private CompletableFuture<Void> processAndPublishSubmission(SubmissionEnvelope submissionEnvelope) {
+        final String submissionId = submissionEnvelope.getSubmission().getId();
+        logger.info("received submission {}", submissionId);
 
-        ProcessingCertificateEnvelope processingCertificateEnvelope = processSubmission(submissionEnvelope);
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(submissionId);
 
-        logger.info("received submission {}, most recent handler was ",
-                submissionEnvelope.getSubmission().getId());
-        logger.info("processed submission {}", submissionEnvelope.getSubmission().getId());
-        rabbitMessagingTemplate.convertAndSend(Exchanges.SUBMISSIONS, Topics.EVENT_SUBMISSION_AGENT_RESULTS, processingCertificateEnvelope);
-        logger.info("sent submission {}", submissionEnvelope.getSubmission().getId());
+        final long publishStart;
+        final CompletableFuture<Void> publish;
+
+        if (certificateChunkSize > 0 && !checkpoint.isCompleted(SubmissionStage.CERTIFICATES_BUILT)) {
+            if (pipeliningEnabled && !checkpoint.isCompleted(SubmissionStage.ENA_PROCESSED)) {
+                submitWhileMovingFiles(submissionEnvelope, checkpoint);
+            } else {
+                moveFilesAndSubmit(submissionEnvelope, checkpoint);
+            }
+
+            logger.info("processed submission {}", submissionId);
+            publishStart = enaAgentMetrics.start();
+            publish = publishCertificateChunks(submissionEnvelope, checkpoint);
+            progress(submissionEnvelope).setStage(SubmissionProgress.Stage.PUBLISHING);
+        } else {
+            if (checkpoint.isCompleted(SubmissionStage.CERTIFICATES_BUILT)) {
+                logger.info("resuming submission {} with its certificates built on an earlier delivery", submissionId);
+            } else {
+                checkpoint.setProcessingCertificates(pipeliningEnabled
+                        ? processSubmissionWhileMovingFiles(submissionEnvelope, checkpoint).getProcessingCertificates()
+                        : processSubmission(submissionEnvelope, checkpoint).getProcessingCertificates());
+                checkpoint.complete(SubmissionStage.CERTIFICATES_BUILT);
+                submissionCheckpointStore.save(checkpoint);
+            }
+
+            logger.info("processed submission {}", submissionId);
+            publishStart = enaAgentMetrics.start();
+            progress(submissionEnvelope).setStage(SubmissionProgress.Stage.PUBLISHING);
+            publish = certificatePublisher.publish(Exchanges.SUBMISSIONS, Topics.EVENT_SUBMISSION_AGENT_RESULTS,
+                    new ProcessingCertificateEnvelope(submissionId, checkpoint.getProcessingCertificates(), submissionEnvelope.getJWTToken()));
+        }
+
+        return publish.thenRun(() -> {
+            enaAgentMetrics.recordPublishStage(publishStart);
+            fileMoveJournal.markSubmissionCompleted(submissionId);
+            submissionCheckpointStore.delete(submissionId);
+            enaAgentMetrics.recordSubmissionOutcome(checkpoint.hasErrors() || checkpoint.hasFileMoveErrors());
+            logger.info("sent submission {}", submissionId);
+        });
     }
 
     ProcessingCertificateEnvelope processSubmission(SubmissionEnvelope submissionEnvelope) {
         injectPathAndChecksum(submissionEnvelope);
 
-        final List<SingleValidationResult> validationResultList = enaProcessor.process(submissionEnvelope);
+        final SubmissionCheckpoint checkpoint = new SubmissionCheckpoint();
+
+        final long enaProcessStart = enaAgentMetrics.start();
+        partitionedEnaProcessor.process(submissionEnvelope, (processedEnvelope, validationResultList) -> {
+            checkpoint.recordEnaResults(processedEnvelope.allSubmissionItemsStream(), validationResultList);
+            if (!validationResultList.isEmpty()) {
+                logger.error("error messages during submission: {}", validationResultList);
+            }
+        });
+        enaAgentMetrics.recordEnaProcessStage(enaProcessStart);
 
-        List<ProcessingCertificate> processingCertificateList = new ArrayList<>();
+        return buildProcessingCertificateEnvelope(submissionEnvelope, checkpoint);
+    }
 
-        ProcessingStatusEnum outcome = (validationResultList.isEmpty()) ? COMPLETED : ERROR;
+    /**
+     * Moves the files of the submission, then submits it to ENA, skipping the stages the checkpoint says are done.
+     * The accessions ENA gave on an earlier delivery are put back before anything goes to ENA,
+     * so the submittables still to send can refer to the parents ENA has already accepted.
+     * The paths and checksums are injected on every delivery, as they only live in the envelope.
+     * The submittables whose files could not be moved are not submitted and get an error certificate instead.
+     */
+    ProcessingCertificateEnvelope processSubmission(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        moveFilesAndSubmit(submissionEnvelope, checkpoint);
+
+        return buildProcessingCertificateEnvelope(submissionEnvelope, checkpoint);
+    }
 
-        Map<String, String> errorLookup = new HashMap<>();
+    private void moveFilesAndSubmit(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        checkpoint.restoreAccessions(submissionEnvelope);
 
-        for (SingleValidationResult vr : validationResultList) {
-            errorLookup.put(
-                    vr.getEntityUuid(),
-                    vr.getMessage()
-            );
+        if (!checkpoint.isCompleted(SubmissionStage.FILES_MOVED)) {
+            progress(submissionEnvelope).setStage(SubmissionProgress.Stage.MOVING_FILES);
+            final Map<Submittable, List<String>> sourcePathsBySubmittable = sourcePathsBySubmittable(submissionEnvelope);
+            deadLetterFailedFileMoves(moveUploadedFilesToArchive(submissionEnvelope), sourcePathsBySubmittable, checkpoint);
+            checkpoint.complete(SubmissionStage.FILES_MOVED);
+            submissionCheckpointStore.save(checkpoint);
         }
 
-        if (!validationResultList.isEmpty()) {
-            logger.error("error messages during submission: {}", validationResultList);
+        injectPathAndChecksum(submissionEnvelope);
+        checkpoint.complete(SubmissionStage.PATHS_INJECTED);
+
+        if (!checkpoint.isCompleted(SubmissionStage.ENA_PROCESSED)) {
+            progress(submissionEnvelope).setStage(SubmissionProgress.Stage.SUBMITTING_TO_ENA);
+            final long enaProcessStart = enaAgentMetrics.start();
+            submitToEna(submissionEnvelope, checkpoint);
+            enaAgentMetrics.recordEnaProcessStage(enaProcessStart);
+            checkpoint.complete(SubmissionStage.ENA_PROCESSED);
+            submissionCheckpointStore.save(checkpoint);
         }
+    }
 
-        submissionEnvelope.allSubmissionItemsStream().forEach(submittable -> {
-            if (Sample.class.isAssignableFrom(submittable.getClass()) || Project.class.isAssignableFrom(submittable.getClass())) {
-                return;
-            }
+    /**
+     * Submits the metadata of the submission to ENA while its files are being moved.
+     * The studies, samples, assays and projects go to ENA straight away. Each assay data and analysis goes
+     * as soon as its own files have been moved, together with the others that became ready in the meantime.
+     * The submittables the checkpoint says ENA has already processed are not submitted again,
+     * nor are the ones whose files could not be moved.
+     * The certificates follow the same rules as {@link #processSubmission(SubmissionEnvelope)}.
+     */
+    ProcessingCertificateEnvelope processSubmissionWhileMovingFiles(SubmissionEnvelope submissionEnvelope,
+                                                                    SubmissionCheckpoint checkpoint) {
+        submitWhileMovingFiles(submissionEnvelope, checkpoint);
+
+        return buildProcessingCertificateEnvelope(submissionEnvelope, checkpoint);
+    }
 
-            ProcessingCertificate cert = new ProcessingCertificate(
-                    submittable,
-                    Archive.Ena,
-                    outcome
-            );
-            if (errorLookup.containsKey(submittable.getId())) {
-                cert.setMessage(errorLookup.get(submittable.getId()));
+    private void submitWhileMovingFiles(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        checkpoint.restoreAccessions(submissionEnvelope);
+        progress(submissionEnvelope).setStage(SubmissionProgress.Stage.MOVING_FILES_AND_SUBMITTING_TO_ENA);
+        final long fileMoveStart = enaAgentMetrics.start();
+        final Map<String, CompletableFuture<FileMoveResult>> fileMoves = startMovingUploadedFiles(submissionEnvelope);
+        CompletableFuture.allOf(fileMoves.values().toArray(new CompletableFuture[0]))
+                .whenComplete((result, e) -> enaAgentMetrics.recordFileMoveStage(fileMoveStart));
+
+        final Map<Submittable, List<String>> sourcePathsBySubmittable = sourcePathsBySubmittable(submissionEnvelope);
+        final Map<Submittable, List<CompletableFuture<FileMoveResult>>> fileMovesBySubmittable = new IdentityHashMap<>();
+        sourcePathsBySubmittable.forEach((submittable, sourcePaths) ->
+                fileMovesBySubmittable.put(submittable, sourcePaths.stream()
+                        .map(fileMoves::get)
+                        .collect(Collectors.toList())));
+
+        injectPathAndChecksum(submissionEnvelope);
+        checkpoint.complete(SubmissionStage.PATHS_INJECTED);
+
+        final long enaProcessStart = enaAgentMetrics.start();
+        submitToEna(SubmissionEnvelopes.withoutFileDependentSubmittables(submissionEnvelope), checkpoint);
+        final boolean parentsAccepted = !checkpoint.hasErrors();
+
+        final BlockingQueue<Submittable> readySubmittables = new LinkedBlockingQueue<>();
+        fileMovesBySubmittable.forEach((submittable, submittableFileMoves) ->
+                CompletableFuture.allOf(submittableFileMoves.toArray(new CompletableFuture[0]))
+                        .whenComplete((result, e) -> readySubmittables.add(submittable)));
+
+        int pendingSubmittables = fileMovesBySubmittable.size();
+        while (pendingSubmittables > 0) {
+            List<Submittable> submittables = new ArrayList<>();
+            submittables.add(takeReadySubmittable(readySubmittables));
+            readySubmittables.drainTo(submittables);
+            pendingSubmittables -= submittables.size();
+
+            final List<Submittable> submittablesWithMovedFiles = submittables.stream()
+                    .filter(submittable -> fileMovesBySubmittable.get(submittable).stream()
+                            .allMatch(fileMove -> fileMove.handle((result, e) -> e == null && result.isSuccessful()).getNow(false)))
+                    .collect(Collectors.toList());
+
+            if (parentsAccepted && !submittablesWithMovedFiles.isEmpty()) {
+                submitToEna(SubmissionEnvelopes.withFileDependentSubmittables(submissionEnvelope, submittablesWithMovedFiles),
+                        checkpoint);
             }
-            if (submittable.isAccessioned()) {
-                cert.setAccession(submittable.getAccession());
+        }
+
+        enaAgentMetrics.recordEnaProcessStage(enaProcessStart);
+
+        deadLetterFailedFileMoves(failedFileMoves(fileMoves), sourcePathsBySubmittable, checkpoint);
+        checkpoint.complete(SubmissionStage.FILES_MOVED);
+        checkpoint.complete(SubmissionStage.ENA_PROCESSED);
+        submissionCheckpointStore.save(checkpoint);
+    }
+
+    /**
+     * Sends the submittables of the envelope that ENA has not processed yet to ENA,
+     * leaving out the ones whose files could not be moved,
+     * and records the outcome in the checkpoint as soon as ENA has answered for each part of it,
+     * see {@link PartitionedEnaProcessor}.
+     */
+    private void submitToEna(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        SubmissionEnvelope remainingEnvelope = submissionEnvelope;
+
+        if (checkpoint.hasProcessedSubmittables() || checkpoint.hasFileMoveErrors()) {
+            remainingEnvelope = SubmissionEnvelopes.without(submissionEnvelope,
+                    submittable -> checkpoint.isProcessed(submittable) || checkpoint.hasFileMoveError(submittable));
+            if (!remainingEnvelope.allSubmissionItemsStream().findAny().isPresent()) {
+                logger.info("there is nothing left to send to ENA from these submittables of submission {}",
+                        checkpoint.getSubmissionId());
+                return;
             }
-            processingCertificateList.add(cert);
-        });
+        }
+
+        final SubmissionProgress progress = progress(submissionEnvelope);
+        progress.recordEnaCallStarted();
+        try {
+            partitionedEnaProcessor.process(remainingEnvelope, (processedEnvelope, validationResultList) -> {
+                checkpoint.recordEnaResults(processedEnvelope.allSubmissionItemsStream(), validationResultList);
+                submissionCheckpointStore.appendResults(checkpoint);
+
+                if (!validationResultList.isEmpty()) {
+                    logger.error("error messages during submission: {}", validationResultList);
+                }
+            });
+        } finally {
+            progress.recordEnaCallFinished();
+        }
+    }
 
+    private Submittable takeReadySubmittable(BlockingQueue<Submittable> readySubmittables) {
+        try {
+            return readySubmittables.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the files of the submission to be moved.", e);
+        }
+    }
+
+    private ProcessingCertificateEnvelope buildProcessingCertificateEnvelope(SubmissionEnvelope submissionEnvelope,
+                                                                             SubmissionCheckpoint checkpoint) {
+        progress(submissionEnvelope).setStage(SubmissionProgress.Stage.BUILDING_CERTIFICATES);
+        final long certificateBuildStart = enaAgentMetrics.start();
+        List<ProcessingCertificate> processingCertificateList =
+                processingCertificates(submissionEnvelope, checkpoint).collect(Collectors.toList());
+
+        enaAgentMetrics.recordCertificateBuildStage(certificateBuildStart);
         return new ProcessingCertificateEnvelope(
                 submissionEnvelope.getSubmission().getId(), processingCertificateList, submissionEnvelope.getJWTToken());
     }
 
-    private void injectPathAndChecksum(SubmissionEnvelope submissionEnvelope) {
+    /**
+     * Sends the certificates of the submission in envelopes of up to ena.certificates.chunkSize certificates,
+     * building each certificate as its envelope fills up, so only one envelope of them is held at a time.
+     * Each envelope carries its position in the {@link CertificatePublisher#CHUNK_SEQUENCE_HEADER} header,
+     * and the last one, which is empty if there are no certificates at all, has {@link CertificatePublisher#LAST_CHUNK_HEADER} set.
+     *
+     * @return the pending outcome of sending all the envelopes
+     */
+    private CompletableFuture<Void> publishCertificateChunks(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        progress(submissionEnvelope).setStage(SubmissionProgress.Stage.BUILDING_CERTIFICATES);
+        final long certificateBuildStart = enaAgentMetrics.start();
+        final Iterator<ProcessingCertificate> processingCertificates = processingCertificates(submissionEnvelope, checkpoint).iterator();
+        final List<CompletableFuture<Void>> chunkPublishes = new ArrayList<>();
+
+        int sequence = 0;
+        do {
+            final List<ProcessingCertificate> chunk = new ArrayList<>();
+            while (processingCertificates.hasNext() && chunk.size() < certificateChunkSize) {
+                chunk.add(processingCertificates.next());
+            }
+
+            final Map<String, Object> headers = new HashMap<>();
+            headers.put(CertificatePublisher.CHUNK_SEQUENCE_HEADER, sequence++);
+            headers.put(CertificatePublisher.LAST_CHUNK_HEADER, !processingCertificates.hasNext());
+            chunkPublishes.add(certificatePublisher.publish(Exchanges.SUBMISSIONS, Topics.EVENT_SUBMISSION_AGENT_RESULTS,
+                    new ProcessingCertificateEnvelope(submissionEnvelope.getSubmission().getId(), chunk, submissionEnvelope.getJWTToken()),
+                    headers));
+        } while (processingCertificates.hasNext());
+
+        enaAgentMetrics.recordCertificateBuildStage(certificateBuildStart);
+        logger.info("sending the certificates of submission {} in {} chunks", checkpoint.getSubmissionId(), sequence);
+
+        return CompletableFuture.allOf(chunkPublishes.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * @return the certificates of the submittables of the submission, leaving out the samples and projects,
+     * built one by one as the stream is read
+     */
+    private Stream<ProcessingCertificate> processingCertificates(SubmissionEnvelope submissionEnvelope, SubmissionCheckpoint checkpoint) {
+        final ProcessingStatusEnum outcome = checkpoint.hasErrors() ? ERROR : COMPLETED;
+
+        return submissionEnvelope.allSubmissionItemsStream()
+                .filter(submittable -> !Sample.class.isAssignableFrom(submittable.getClass())
+                        && !Project.class.isAssignableFrom(submittable.getClass()))
+                .map(submittable -> {
+                    ProcessingCertificate cert = new ProcessingCertificate(
+                            submittable,
+                            Archive.Ena,
+                            checkpoint.hasFileMoveError(submittable) ? ERROR : outcome
+                    );
+                    String message = checkpoint.getMessage(submittable);
+                    if (message == null) {
+                        message = checkpoint.getSubmissionMessage();
+                    }
+                    if (message != null) {
+                        cert.setMessage(message);
+                    }
+                    if (submittable.isAccessioned()) {
+                        cert.setAccession(submittable.getAccession());
+                    }
+                    return cert;
+                });
+    }
+
+    void injectPathAndChecksum(SubmissionEnvelope submissionEnvelope) {
+        final long injectPathsStart = enaAgentMetrics.start();
         Map<String, UploadedFile> uploadedFileMap = filesByFilename(submissionEnvelope.getUploadedFiles());
 
         Stream<File> assayDataFileStream = submissionEnvelope.getAssayData().stream().flatMap(ad -> ad.getFiles().stream());
@@ -149,12 +575,140 @@ public class EnaAgentSubmissionsProcessor {
                 file.setChecksumMethod("MD5");
                 file.setName(String.join("/", activeProfile, fileMoveService.getRelativeFilePath(uploadedFile.getPath())));
         });
+        enaAgentMetrics.recordInjectPathsStage(injectPathsStart);
     }
 
-    private void moveUploadedFilesToArchive(SubmissionEnvelope submissionEnvelope) {
+    /**
+     * @return the moves of the files that failed, once every file has moved or has used up its attempts
+     */
+    private List<FileMoveResult> moveUploadedFilesToArchive(SubmissionEnvelope submissionEnvelope) {
+        final long fileMoveStart = enaAgentMetrics.start();
+        final Map<String, CompletableFuture<FileMoveResult>> fileMoves = startMovingUploadedFiles(submissionEnvelope);
+        try {
+            return failedFileMoves(fileMoves);
+        } finally {
+            enaAgentMetrics.recordFileMoveStage(fileMoveStart);
+        }
+    }
+
+    /**
+     * Starts moving the uploaded files of the submission, except the ones the journal says have already been moved,
+     * and records each successful move in the journal and in the progress of the submission.
+     */
+    private Map<String, CompletableFuture<FileMoveResult>> startMovingUploadedFiles(SubmissionEnvelope submissionEnvelope) {
+        final String submissionId = submissionEnvelope.getSubmission().getId();
+        final SubmissionProgress progress = progress(submissionEnvelope);
+        final Map<String, CompletableFuture<FileMoveResult>> fileMoves = new LinkedHashMap<>();
+        final List<UploadedFile> filesToMove = new ArrayList<>();
+
+        progress.setFilesToMove(submissionEnvelope.getUploadedFiles().size(), submissionEnvelope.getUploadedFiles().stream()
+                .map(UploadedFile::getTotalSize)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .sum());
         submissionEnvelope.getUploadedFiles().forEach(uploadedFile -> {
-            fileMoveService.moveFile(uploadedFile.getPath());
+            if (fileMoveJournal.isMoved(submissionId, uploadedFile)) {
+                progress.recordFileMoved(uploadedFile.getTotalSize());
+                fileMoves.put(uploadedFile.getPath(), CompletableFuture.completedFuture(FileMoveResult.succeeded(uploadedFile.getPath())));
+            } else {
+                filesToMove.add(uploadedFile);
+            }
         });
+
+        if (!fileMoves.isEmpty()) {
+            logger.info("skipping {} files of submission {} that have already been moved", fileMoves.size(), submissionId);
+        }
+
+        final Map<String, CompletableFuture<FileMoveResult>> startedFileMoves = fileMoveService.startMovingFiles(filesToMove);
+        filesToMove.forEach(uploadedFile -> fileMoves.put(uploadedFile.getPath(),
+                startedFileMoves.get(uploadedFile.getPath()).thenApply(fileMoveResult -> {
+                    if (fileMoveResult.isSuccessful()) {
+                        fileMoveJournal.recordMoved(submissionId, uploadedFile);
+                        progress.recordFileMoved(uploadedFile.getTotalSize());
+                    }
+                    return fileMoveResult;
+                })));
+
+        return fileMoves;
+    }
+
+    /**
+     * @return the moves that failed, counting the ones that ended with an exception rather than a result
+     */
+    private List<FileMoveResult> failedFileMoves(Map<String, CompletableFuture<FileMoveResult>> fileMoves) {
+        final List<FileMoveResult> failedFileMoves = fileMoves.entrySet().stream()
+                .map(fileMove -> fileMove.getValue()
+                        .handle((result, e) -> e == null ? result : FileMoveResult.failed(fileMove.getKey(), e.getMessage()))
+                        .join())
+                .filter(fileMoveResult -> !fileMoveResult.isSuccessful())
+                .collect(Collectors.toList());
+
+        fileMoveJournal.sync();
+
+        return failedFileMoves;
+    }
+
+    /**
+     * Records the submittables whose files could not be moved in the checkpoint,
+     * with the reason each of their files failed, so the rest of the submission can go on without them.
+     * A file that none of the submittables refers to and could not be moved is recorded as an error of the whole submission.
+     */
+    private void deadLetterFailedFileMoves(List<FileMoveResult> failedFileMoves,
+                                           Map<Submittable, List<String>> sourcePathsBySubmittable,
+                                           SubmissionCheckpoint checkpoint) {
+        if (failedFileMoves.isEmpty()) {
+            return;
+        }
+
+        logger.error("the files of submission {} could not be moved: {}", checkpoint.getSubmissionId(), failedFileMoves);
+        enaAgentMetrics.recordFileMoveDeadLetters(failedFileMoves.size());
+
+        final Map<String, FileMoveResult> failedFileMovesBySourcePath = failedFileMoves.stream()
+                .collect(Collectors.toMap(FileMoveResult::getSourcePath, fileMoveResult -> fileMoveResult));
+
+        sourcePathsBySubmittable.forEach((submittable, sourcePaths) -> {
+            final String message = sourcePaths.stream()
+                    .map(failedFileMovesBySourcePath::get)
+                    .filter(Objects::nonNull)
+                    .map(fileMoveResult -> String.format("The file %s could not be moved: %s",
+                            fileMoveResult.getSourcePath(), fileMoveResult.getMessage()))
+                    .collect(Collectors.joining(" "));
+
+            if (!message.isEmpty()) {
+                checkpoint.recordFileMoveError(submittable, message);
+            }
+        });
+
+        final Set<String> referencedSourcePaths = sourcePathsBySubmittable.values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toSet());
+        failedFileMoves.stream()
+                .filter(fileMoveResult -> !referencedSourcePaths.contains(fileMoveResult.getSourcePath()))
+                .forEach(fileMoveResult -> checkpoint.recordSubmissionError(String.format(
+                        "The file %s could not be moved: %s", fileMoveResult.getSourcePath(), fileMoveResult.getMessage())));
+    }
+
+    /**
+     * @return the source paths of the uploaded files of each assay data and analysis,
+     * read before the paths are injected into the files of the submittables.
+     * The submittables are told apart by identity, as injecting the paths and accessions changes what they are equal to.
+     */
+    private Map<Submittable, List<String>> sourcePathsBySubmittable(SubmissionEnvelope submissionEnvelope) {
+        final Map<String, UploadedFile> uploadedFileMap = filesByFilename(submissionEnvelope.getUploadedFiles());
+        final Map<Submittable, List<String>> sourcePathsBySubmittable = new IdentityHashMap<>();
+
+        SubmissionEnvelopes.fileDependentSubmittables(submissionEnvelope).forEach(submittable ->
+                sourcePathsBySubmittable.put(submittable, SubmissionEnvelopes.filesOf(submittable).stream()
+                        .map(file -> uploadedFileMap.get(file.getName()))
+                        .filter(Objects::nonNull)
+                        .map(UploadedFile::getPath)
+                        .collect(Collectors.toList())));
+
+        return sourcePathsBySubmittable;
+    }
+
+    private SubmissionProgress progress(SubmissionEnvelope submissionEnvelope) {
+        return submissionProgressRegistry.get(submissionEnvelope.getSubmission().getId());
     }
 
     Map<String, UploadedFile> filesByFilename(List<UploadedFile> files) {
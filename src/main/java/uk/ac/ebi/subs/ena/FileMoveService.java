@@ -2,18 +2,56 @@ package uk.ac.ebi.subs.ena;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import uk.ac.ebi.subs.ena.checksum.ChecksumVerifier;
+import uk.ac.ebi.subs.ena.filemove.ArchivedFileCache;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionController;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionException;
+import uk.ac.ebi.subs.ena.filemove.FileMoveResult;
+import uk.ac.ebi.subs.ena.filemove.FileMoveScheduler;
+import uk.ac.ebi.subs.ena.filemove.FileMoveTransport;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
 
-import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
- * This service responsible to move an uploaded file to ENA's 'webin' folder.
- * It executes an external shell script to do the actual file movement using SSH/SCP.
+ * This service responsible to move uploaded files to ENA's 'webin' folder.
+ * The actual file movement is left to the {@link FileMoveTransport} in use,
+ * either ENA's file move script run over SSH or NIO on a node that mounts the 'webin' folder.
+ *
+ * Files are moved in batches, which run in parallel on the slots of a {@link FileMoveScheduler},
+ * as many as the moves allowed at once both overall and to the file move host, so a batch that has a slot is moving files.
+ * The batches are packed largest file first, so they have about the same number of bytes each,
+ * and none of them is expected to hold its slot for longer than ena.file_move.maxBatchSeconds,
+ * so the scheduler, which shares the slots fairly between submissions, can soon give one to a submission that comes in.
+ * The files only start moving once they fit in the budget of the {@link FileMoveAdmissionController}.
+ * When the checksums are verified, see {@link ChecksumVerifier}, a batch starts moving once its files have been checked.
+ * The files that fail to move are moved again after an exponential backoff, up to a number of attempts per file.
  */
 @Service
-public class FileMoveService {
+public class FileMoveService implements InitializingBean, DisposableBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileMoveService.class);
 
@@ -23,88 +61,400 @@ public class FileMoveService {
     @Value("${ena.file_move.sourceBaseFolder}")
     private String sourceBaseFolder;
 
-    @Value("${ena.file_move.remoteHostName}")
-    private String remoteHostName;
+    @Value("${ena.file_move.batchSize:500}")
+    private int batchSize;
 
-    @Value("${ena.file_move.scriptPath}")
-    private String scriptPath;
+    @Value("${ena.file_move.maxConcurrentMoves:8}")
+    private int maxConcurrentMoves;
 
-    @Value("${ena.fileMoveProcessUserName}")
-    private String fileMoveUsername;
+    @Value("${ena.file_move.maxConcurrentMovesPerHost:4}")
+    private int maxConcurrentMovesPerHost;
 
-    @Value("${ena.file_move.logFilePath}")
-    private String logFilePath;
+    @Value("${ena.file_move.retryMaxAttempts:4}")
+    private int retryMaxAttempts;
+
+    @Value("${ena.file_move.retryInitialDelayMillis:2000}")
+    private long retryInitialDelayMillis;
+
+    @Value("${ena.file_move.retryMaxDelayMillis:60000}")
+    private long retryMaxDelayMillis;
+
+    @Value("${ena.file_move.maxBatchSeconds:300}")
+    private long maxBatchSeconds;
+
+    @Value("${ena.file_move.largestFirst:true}")
+    private boolean largestFirst;
+
+    @Value("${ena.file_move.expectedThroughputBytesPerSecond:52428800}")
+    private long expectedThroughputBytesPerSecond;
 
     @Value("${spring.profiles.active:dev}")
     private String activeProfile;
 
+    private final FileMoveTransport fileMoveTransport;
+
+    private final ChecksumVerifier checksumVerifier;
+
+    private final FileMoveAdmissionController fileMoveAdmissionController;
+
+    private final ArchivedFileCache archivedFileCache;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private FileMoveScheduler fileMoveScheduler;
+
     private static final String FILE_SEPARATOR = System.getProperty("file.separator");
 
+    @Autowired
+    public FileMoveService(FileMoveTransport fileMoveTransport, ChecksumVerifier checksumVerifier,
+                           FileMoveAdmissionController fileMoveAdmissionController, ArchivedFileCache archivedFileCache,
+                           EnaAgentMetrics enaAgentMetrics) {
+        this.fileMoveTransport = fileMoveTransport;
+        this.checksumVerifier = checksumVerifier;
+        this.fileMoveAdmissionController = fileMoveAdmissionController;
+        this.archivedFileCache = archivedFileCache;
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        fileMoveScheduler = new FileMoveScheduler(parallelMoves(), expectedThroughputBytesPerSecond, "file-move-");
+        enaAgentMetrics.registerFileMoveScheduler(fileMoveScheduler);
+        archivedFileCache.seed(this::getRelativeFilePath);
+    }
+
+    @Override
+    public void destroy() {
+        fileMoveScheduler.shutdown();
+    }
+
     public String getRelativeFilePath(String sourcePath) {
         return sourcePath.substring(sourcePath.indexOf(sourceBaseFolder) + sourceBaseFolder.length() + 1);
     }
 
-    public void moveFile(String sourcePath) {
+    /**
+     * Moves the given files to ENA's 'webin' folder, in batches of files.
+     * The files are spread over as many batches of similar size as there are parallel moves allowed to the host,
+     * so the call takes about as long as the slowest batch.
+     *
+     * @param uploadedFiles the files to move
+     * @return the outcome of the move of each file
+     */
+    public List<FileMoveResult> moveFiles(List<UploadedFile> uploadedFiles) {
+        return startMovingFiles(uploadedFiles).values().stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Starts moving the given files like {@link #moveFiles(List)} does, without waiting for the moves to finish.
+     * A file given more than once, with the same checksum and relative path, is only moved once.
+     * The files the {@link ArchivedFileCache} has seen moved before are not moved again
+     * if they are still in the 'webin' folder, and are reported as moved straight away.
+     *
+     * @param allUploadedFiles the files to move
+     * @return the pending outcome of the move of each file, keyed by the source path of the file
+     * @throws FileMoveAdmissionException if the files do not fit in the file move budget in time, before any of them has moved
+     */
+    public Map<String, CompletableFuture<FileMoveResult>> startMovingFiles(List<UploadedFile> allUploadedFiles) {
+        final Map<String, UploadedFile> filesByArchiveKey = new LinkedHashMap<>();
+        allUploadedFiles.forEach(uploadedFile -> filesByArchiveKey.putIfAbsent(archiveKey(uploadedFile), uploadedFile));
 
-        final String relativeFilePath = getRelativeFilePath(sourcePath);
-        final String sourceBasePath = sourcePath.substring(0, sourcePath.indexOf(sourceBaseFolder) + sourceBaseFolder.length());
+        final Set<String> archivedSourcePaths = findArchivedFiles(filesByArchiveKey.values());
+        final List<UploadedFile> uploadedFiles = filesByArchiveKey.values().stream()
+                .filter(uploadedFile -> !archivedSourcePaths.contains(uploadedFile.getPath()))
+                .collect(Collectors.toList());
 
-        LOGGER.info("Moving a file from {} to {}.", sourcePath, String.join(FILE_SEPARATOR, webinFolderPath, activeProfile, relativeFilePath));
+        final Map<String, Long> sizesBySourcePath = new HashMap<>();
+        uploadedFiles.forEach(uploadedFile -> sizesBySourcePath.put(uploadedFile.getPath(), Math.max(0, sizeOf(uploadedFile))));
 
-        String[] moveCommandToExecute= {
-                "ssh",
-                remoteLogin(),
-                fileMoveCommand(relativeFilePath, sourceBasePath)
-        };
+        Map<String, List<UploadedFile>> filesByBasePath = new LinkedHashMap<>();
+        uploadedFiles.forEach(uploadedFile -> filesByBasePath
+                .computeIfAbsent(getSourceBasePath(uploadedFile.getPath()), basePath -> new ArrayList<>())
+                .add(uploadedFile));
 
-        LOGGER.info("Executing the following command: {}.", Arrays.toString(moveCommandToExecute));
+        Map<String, CompletableFuture<FileMoveResult>> movesBySourcePath = new HashMap<>();
 
-        executeFileMoveCommand(sourcePath, moveCommandToExecute);
-    }
+        if (!filesByBasePath.isEmpty()) {
+            final long bytes = sizesBySourcePath.values().stream().mapToLong(Long::longValue).sum();
+            fileMoveAdmissionController.admit(bytes, uploadedFiles.size());
+            try {
+                fileMoveTransport.prepare();
+
+                filesByBasePath.forEach((sourceBasePath, files) -> batches(files).forEach(batch -> {
+                    final CompletableFuture<Map<String, FileMoveResult>> batchMove = verifyAndMoveBatch(sourceBasePath, batch);
+
+                    batch.forEach(uploadedFile -> movesBySourcePath.put(uploadedFile.getPath(),
+                            batchMove.thenApply(results -> results.get(uploadedFile.getPath()))));
+                }));
+            } catch (RuntimeException e) {
+                fileMoveAdmissionController.release(bytes, uploadedFiles.size());
+                throw e;
+            }
+        }
+
+        uploadedFiles.forEach(uploadedFile -> movesBySourcePath.put(uploadedFile.getPath(), movesBySourcePath.get(uploadedFile.getPath())
+                .whenComplete((result, e) -> {
+                    fileMoveAdmissionController.release(sizesBySourcePath.get(uploadedFile.getPath()), 1);
+                    if (result != null && result.isSuccessful()) {
+                        archivedFileCache.add(uploadedFile.getChecksum(), getRelativeFilePath(uploadedFile.getPath()));
+                    }
+                })));
+        archivedSourcePaths.forEach(sourcePath ->
+                movesBySourcePath.put(sourcePath, CompletableFuture.completedFuture(FileMoveResult.succeeded(sourcePath))));
+
+        Map<String, CompletableFuture<FileMoveResult>> fileMoves = new LinkedHashMap<>();
+        allUploadedFiles.forEach(uploadedFile -> {
+            final String movedSourcePath = filesByArchiveKey.get(archiveKey(uploadedFile)).getPath();
+            final CompletableFuture<FileMoveResult> fileMove = movesBySourcePath.get(movedSourcePath);
+            fileMoves.put(uploadedFile.getPath(), movedSourcePath.equals(uploadedFile.getPath())
+                    ? fileMove
+                    : fileMove.thenApply(result -> result.isSuccessful()
+                            ? FileMoveResult.succeeded(uploadedFile.getPath())
+                            : FileMoveResult.failed(uploadedFile.getPath(), result.getMessage())));
+        });
+
+        if (!uploadedFiles.isEmpty()) {
+            LOGGER.info("Moving {} files, all file moves expected to finish by {}.",
+                    uploadedFiles.size(), fileMoveScheduler.getExpectedFinishTime());
+        }
 
-    private void executeFileMoveCommand(String sourcePath, String[] moveCommandToExecute) {
-        int exitValue;
+        return fileMoves;
+    }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(moveCommandToExecute);
+    /**
+     * Checks which of the files the archived file cache knows are still in the 'webin' folder, all with one call to the transport.
+     * The ones that are not there any more are dropped from the cache and moved as usual.
+     * If the check can not be made, they are all moved as usual but kept in the cache.
+     *
+     * @return the source paths of the files that do not need moving
+     */
+    private Set<String> findArchivedFiles(Collection<UploadedFile> uploadedFiles) {
+        final Map<String, UploadedFile> cachedFilesByRelativePath = new HashMap<>();
+        uploadedFiles.forEach(uploadedFile -> {
+            final String relativeFilePath = getRelativeFilePath(uploadedFile.getPath());
+            if (archivedFileCache.contains(uploadedFile.getChecksum(), relativeFilePath)) {
+                cachedFilesByRelativePath.put(relativeFilePath, uploadedFile);
+            }
+        });
+        if (cachedFilesByRelativePath.isEmpty()) {
+            return Collections.emptySet();
+        }
 
+        final Set<String> archivedRelativePaths;
         try {
-            File logFile = new File(logFilePath);
-            processBuilder.redirectErrorStream(true);
-            processBuilder.redirectOutput(redirectOutput(logFile));
-            Process process = processBuilder.start();
-            process.waitFor();
-            exitValue = process.exitValue();
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    String.format("The file move command went wrong with file: %s.", sourcePath));
+            fileMoveTransport.prepare();
+            archivedRelativePaths = fileMoveTransport.findArchivedFiles(cachedFilesByRelativePath.keySet());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not check which files are in the 'webin' folder already, moving them all: {}.", e.toString());
+            return Collections.emptySet();
         }
 
-        if (exitValue != 0) {
-            throw new RuntimeException(
-                    String.format("The file move command went wrong with file: %s.", sourcePath));
+        final Set<String> archivedSourcePaths = new HashSet<>();
+        for (Map.Entry<String, UploadedFile> cachedFile : cachedFilesByRelativePath.entrySet()) {
+            if (archivedRelativePaths.contains(cachedFile.getKey())) {
+                archivedSourcePaths.add(cachedFile.getValue().getPath());
+            } else {
+                archivedFileCache.remove(cachedFile.getValue().getChecksum(), cachedFile.getKey());
+            }
         }
+
+        if (!archivedSourcePaths.isEmpty()) {
+            LOGGER.info("Skipping {} files that are in the 'webin' folder already.", archivedSourcePaths.size());
+            enaAgentMetrics.recordFileMoveSkips(archivedSourcePaths.size());
+        }
+
+        return archivedSourcePaths;
     }
 
-    private ProcessBuilder.Redirect redirectOutput(File logFile) {
-        return ProcessBuilder.Redirect.appendTo(logFile);
+    private String archiveKey(UploadedFile uploadedFile) {
+        return uploadedFile.getChecksum() + FILE_SEPARATOR + getRelativeFilePath(uploadedFile.getPath());
+    }
+
+    /**
+     * Checks the checksums of the files of the batch, then moves the files that match them.
+     * The files that do not match are reported as failed straight away, without being moved or retried.
+     */
+    private CompletableFuture<Map<String, FileMoveResult>> verifyAndMoveBatch(String sourceBasePath, List<UploadedFile> batch) {
+        return checksumVerifier.verify(batch).thenCompose(checksumMismatches -> {
+            if (checksumMismatches.isEmpty()) {
+                return moveBatchWithRetries(sourceBasePath, batch, 1, 0);
+            }
+
+            final List<UploadedFile> verifiedFiles = batch.stream()
+                    .filter(uploadedFile -> !checksumMismatches.containsKey(uploadedFile.getPath()))
+                    .collect(Collectors.toList());
+            final CompletableFuture<Map<String, FileMoveResult>> verifiedFileMoves = verifiedFiles.isEmpty()
+                    ? CompletableFuture.completedFuture(new LinkedHashMap<>())
+                    : moveBatchWithRetries(sourceBasePath, verifiedFiles, 1, 0);
+
+            return verifiedFileMoves.thenApply(results -> {
+                checksumMismatches.forEach((sourcePath, message) -> results.put(sourcePath, FileMoveResult.failed(sourcePath, message)));
+                return results;
+            });
+        });
     }
 
-    private String remoteLogin() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(fileMoveUsername);
-        sb.append("@");
-        sb.append(remoteHostName);
+    /**
+     * Moves the batch, then moves the files that failed again as a smaller batch after a backoff delay,
+     * until every file has moved or has used up its attempts.
+     * The delay is left to a delayed executor, so no thread waits for a retry, and the retry then queues up for a slot
+     * like any other batch. A retry gets the transport ready again first, e.g. reopens the SSH master connection if it has dropped.
+     */
+    private CompletableFuture<Map<String, FileMoveResult>> moveBatchWithRetries(String sourceBasePath, List<UploadedFile> batch,
+                                                                              int attempt, long delayMillis) {
+        final Supplier<CompletableFuture<List<FileMoveResult>>> scheduledMove = () -> fileMoveScheduler.submit(
+                queueKey(batch), batchBytes(batch), () -> {
+                    if (attempt > 1) {
+                        fileMoveTransport.prepare();
+                    }
+                    return moveBatch(sourceBasePath, batch);
+                });
+        final CompletableFuture<List<FileMoveResult>> batchMove = delayMillis == 0
+                ? scheduledMove.get()
+                : CompletableFuture.supplyAsync(scheduledMove, CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS))
+                        .thenCompose(move -> move);
+
+        return batchMove
+                .exceptionally(e -> failedBatch(batch, e))
+                .thenCompose(results -> {
+                    final Map<String, FileMoveResult> resultsBySourcePath = results.stream().collect(Collectors.toMap(
+                            FileMoveResult::getSourcePath, result -> result, (first, second) -> first, LinkedHashMap::new));
+                    final List<UploadedFile> failedFiles = batch.stream()
+                            .filter(uploadedFile -> !resultsBySourcePath.get(uploadedFile.getPath()).isSuccessful())
+                            .collect(Collectors.toList());
+
+                    if (failedFiles.isEmpty() || attempt >= retryMaxAttempts) {
+                        return CompletableFuture.completedFuture(resultsBySourcePath);
+                    }
+
+                    final long retryDelayMillis = retryDelayMillis(attempt);
+                    LOGGER.warn("Moving {} files again in {} ms, attempt {} of {}.",
+                            failedFiles.size(), retryDelayMillis, attempt + 1, retryMaxAttempts);
+                    enaAgentMetrics.recordFileMoveRetries(failedFiles.size());
+
+                    return moveBatchWithRetries(sourceBasePath, failedFiles, attempt + 1, retryDelayMillis)
+                            .thenApply(retriedResults -> {
+                                resultsBySourcePath.putAll(retriedResults);
+                                return resultsBySourcePath;
+                            });
+                });
+    }
+
+    /**
+     * @return the delay before the given retry: exponential backoff, capped, with jitter over its upper half,
+     * so the files of batches that failed together do not all come back at the same time
+     */
+    long retryDelayMillis(int attempt) {
+        final double backoffMillis = retryInitialDelayMillis * Math.pow(2, attempt - 1);
+        final long cappedMillis = (long) Math.min(retryMaxDelayMillis, backoffMillis);
+
+        return cappedMillis / 2 + ThreadLocalRandom.current().nextLong(cappedMillis / 2 + 1);
+    }
+
+    /**
+     * Splits the files of a base path into batches, either packed largest file first or,
+     * when ena.file_move.largestFirst is off, in contiguous runs of the files in the order they were given.
+     * Either way a batch is cut once it has as many bytes as a move is expected to move in ena.file_move.maxBatchSeconds.
+     */
+    private List<List<UploadedFile>> batches(List<UploadedFile> files) {
+        final int parallelMoves = parallelMoves();
+        final long maxBatchBytes = maxBatchSeconds > 0
+                ? (long) Math.max(1, fileMoveScheduler.getThroughputBytesPerSecond() * maxBatchSeconds)
+                : 0;
+
+        if (largestFirst) {
+            return FileMoveScheduler.packLargestFirst(files, parallelMoves, batchSize, maxBatchBytes, this::sizeOf);
+        }
+
+        final int filesPerParallelMove = (files.size() + parallelMoves - 1) / parallelMoves;
+        final int chunkSize = Math.max(1, Math.min(batchSize, filesPerParallelMove));
+
+        final List<List<UploadedFile>> batches = new ArrayList<>();
+        List<UploadedFile> batch = new ArrayList<>();
+        long bytes = 0;
+        for (UploadedFile file : files) {
+            final long size = Math.max(0, sizeOf(file));
+            if (!batch.isEmpty() && (batch.size() >= chunkSize || (maxBatchBytes > 0 && bytes + size > maxBatchBytes))) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                bytes = 0;
+            }
+            batch.add(file);
+            bytes += size;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * @return how many batches may move at once: all the batches go to the one file move host of the transport
+     */
+    private int parallelMoves() {
+        return Math.max(1, Math.min(maxConcurrentMoves, maxConcurrentMovesPerHost));
+    }
+
+    /**
+     * @return the size of the file as uploaded, or as found on disk when the upload area is mounted on this node,
+     * or -1 if it is not known
+     */
+    long sizeOf(UploadedFile uploadedFile) {
+        if (uploadedFile.getTotalSize() != null) {
+            return uploadedFile.getTotalSize();
+        }
+
+        try {
+            return Files.size(Paths.get(uploadedFile.getPath()));
+        } catch (IOException | InvalidPathException e) {
+            return -1;
+        }
+    }
+
+    private long batchBytes(List<UploadedFile> batch) {
+        return batch.stream().mapToLong(this::sizeOf).filter(size -> size > 0).sum();
+    }
+
+    /**
+     * @return the scheduler queue of the batch: the batches of the same submission queue up behind each other
+     */
+    private static String queueKey(List<UploadedFile> batch) {
+        final String submissionId = batch.get(0).getSubmissionId();
+        return submissionId != null ? submissionId : "";
+    }
+
+    private List<FileMoveResult> failedBatch(List<UploadedFile> uploadedFiles, Throwable cause) {
+        final List<String> sourcePaths = uploadedFiles.stream().map(UploadedFile::getPath).collect(Collectors.toList());
+        LOGGER.error("The file move command went wrong with files: {}.", sourcePaths, cause);
+        enaAgentMetrics.recordFileMoveFailures(sourcePaths.size());
+
+        return sourcePaths.stream()
+                .map(sourcePath -> FileMoveResult.failed(sourcePath,
+                        String.format("The file move command went wrong with file: %s.", sourcePath)))
+                .collect(Collectors.toList());
+    }
+
+    private List<FileMoveResult> moveBatch(String sourceBasePath, List<UploadedFile> uploadedFiles) {
+        Map<String, UploadedFile> fileByRelativePath = new LinkedHashMap<>();
+        uploadedFiles.forEach(uploadedFile -> {
+            final String relativeFilePath = getRelativeFilePath(uploadedFile.getPath());
+            fileByRelativePath.put(relativeFilePath, uploadedFile);
+
+            LOGGER.info("Moving a file from {} to {}.", uploadedFile.getPath(), String.join(FILE_SEPARATOR, webinFolderPath, activeProfile, relativeFilePath));
+        });
+
+        final List<FileMoveResult> results = fileMoveTransport.moveBatch(sourceBasePath, fileByRelativePath);
+
+        results.stream().filter(result -> !result.isSuccessful()).forEach(result -> {
+            LOGGER.error("The file move command went wrong with file: {}.", result.getSourcePath());
+            enaAgentMetrics.recordFileMoveFailures(1);
+        });
 
-        return sb.toString();
+        return results;
     }
 
-    private String fileMoveCommand(String relativeFilePath, String sourceBasePath) {
-        return String.join(" ",
-                String.join(FILE_SEPARATOR, scriptPath, "move_file_to_archive_storage.sh"),
-                relativeFilePath,
-                sourceBasePath,
-                webinFolderPath,
-                activeProfile
-        );
+    private String getSourceBasePath(String sourcePath) {
+        return sourcePath.substring(0, sourcePath.indexOf(sourceBaseFolder) + sourceBaseFolder.length());
     }
 }
@@ -0,0 +1,134 @@
+package uk.ac.ebi.subs.ena;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends submissions to ENA, splitting the large ones into partitions that go to ENA concurrently.
+ *
+ * When ena.partitioning.enabled is on and a submission has more than ena.partitioning.partitionSize
+ * assay data and analyses, its studies, samples, assays and projects go to ENA first, as one submission.
+ * If ENA accepts them, the assay data and analyses follow in partitions of up to ena.partitioning.partitionSize,
+ * ena.partitioning.concurrency of them at a time. Otherwise the submission goes to ENA whole, as it always did.
+ * Each call to ENA is timed on its own, see {@link EnaAgentMetrics#recordEnaCall(long)}.
+ */
+@Component
+public class PartitionedEnaProcessor implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedEnaProcessor.class);
+
+    @Value("${ena.partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ena.partitioning.partitionSize:500}")
+    private int partitionSize;
+
+    @Value("${ena.partitioning.concurrency:4}")
+    private int concurrency;
+
+    private final ENAProcessor enaProcessor;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private ExecutorService partitionExecutor;
+
+    @Autowired
+    public PartitionedEnaProcessor(ENAProcessor enaProcessor, EnaAgentMetrics enaAgentMetrics) {
+        this.enaProcessor = enaProcessor;
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            partitionExecutor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("ena-partition-"));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (partitionExecutor != null) {
+            partitionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends the submission to ENA, in partitions if it is large enough.
+     * The results of each part are handed to the consumer on the calling thread, together with the envelope of that part,
+     * in the order the parts were sent, so what ENA did accept is recorded even if another part fails.
+     *
+     * @throws RuntimeException the first failure of the parts, once all the others have been handed over
+     */
+    public void process(SubmissionEnvelope submissionEnvelope,
+                        BiConsumer<SubmissionEnvelope, List<SingleValidationResult>> resultConsumer) {
+        final long fileDependentSubmittables = SubmissionEnvelopes.fileDependentSubmittables(submissionEnvelope).count();
+        if (!enabled || fileDependentSubmittables <= partitionSize) {
+            resultConsumer.accept(submissionEnvelope, callEna(submissionEnvelope));
+            return;
+        }
+
+        final SubmissionEnvelope parentEnvelope = SubmissionEnvelopes.withoutFileDependentSubmittables(submissionEnvelope);
+        if (parentEnvelope.allSubmissionItemsStream().findAny().isPresent()) {
+            final List<SingleValidationResult> validationResults = callEna(parentEnvelope);
+            resultConsumer.accept(parentEnvelope, validationResults);
+            if (!validationResults.isEmpty()) {
+                LOGGER.warn("ENA did not accept the parents of the {} assay data and analyses of submission {}, which are not sent.",
+                        fileDependentSubmittables, submissionEnvelope.getSubmission().getId());
+                return;
+            }
+        }
+
+        final List<SubmissionEnvelope> partitions =
+                SubmissionEnvelopes.fileDependentPartitions(submissionEnvelope, partitionSize);
+        LOGGER.info("Sending the {} assay data and analyses of submission {} to ENA in {} partitions.",
+                fileDependentSubmittables, submissionEnvelope.getSubmission().getId(), partitions.size());
+
+        final List<CompletableFuture<List<SingleValidationResult>>> partitionResults = new ArrayList<>();
+        partitions.forEach(partition -> partitionResults.add(
+                CompletableFuture.supplyAsync(() -> callEna(partition), partitionExecutor)));
+
+        RuntimeException failure = null;
+        for (int i = 0; i < partitions.size(); i++) {
+            try {
+                resultConsumer.accept(partitions.get(i), partitionResults.get(i).join());
+            } catch (CompletionException e) {
+                LOGGER.error("Could not send partition {} of submission {} to ENA.",
+                        i, submissionEnvelope.getSubmission().getId(), e.getCause());
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private List<SingleValidationResult> callEna(SubmissionEnvelope submissionEnvelope) {
+        final long callStart = enaAgentMetrics.start();
+        try {
+            return enaProcessor.process(submissionEnvelope);
+        } finally {
+            enaAgentMetrics.recordEnaCall(callStart);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.subs.ena;
+
+import uk.ac.ebi.subs.data.component.File;
+import uk.ac.ebi.subs.data.submittable.Analysis;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.data.submittable.Submittable;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds sub-envelopes of a submission, so that parts of it can go to ENA separately.
+ * The sub-envelopes share the submittables of the original envelope,
+ * so the accessions ENA gives them end up in the original envelope too.
+ */
+final class SubmissionEnvelopes {
+
+    private SubmissionEnvelopes() {
+    }
+
+    /**
+     * @return the assay data and analyses of the submission, which refer to uploaded files
+     * and so can only go to ENA once their files have been moved
+     */
+    static Stream<Submittable> fileDependentSubmittables(SubmissionEnvelope submissionEnvelope) {
+        return Stream.concat(submissionEnvelope.getAssayData().stream(), submissionEnvelope.getAnalyses().stream());
+    }
+
+    static List<File> filesOf(Submittable submittable) {
+        if (submittable instanceof AssayData) {
+            return ((AssayData) submittable).getFiles();
+        }
+        if (submittable instanceof Analysis) {
+            return ((Analysis) submittable).getFiles();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return an envelope with the studies, samples, assays and projects of the submission,
+     * which ENA can accept before the files of the submission have been moved
+     */
+    static SubmissionEnvelope withoutFileDependentSubmittables(SubmissionEnvelope submissionEnvelope) {
+        SubmissionEnvelope subEnvelope = emptyCopy(submissionEnvelope);
+        subEnvelope.getStudies().addAll(submissionEnvelope.getStudies());
+        subEnvelope.getSamples().addAll(submissionEnvelope.getSamples());
+        subEnvelope.getAssays().addAll(submissionEnvelope.getAssays());
+        subEnvelope.getProjects().addAll(submissionEnvelope.getProjects());
+
+        return subEnvelope;
+    }
+
+    /**
+     * @return an envelope with the given assay data and analyses of the submission, and all its uploaded files
+     */
+    static SubmissionEnvelope withFileDependentSubmittables(SubmissionEnvelope submissionEnvelope,
+                                                            Collection<? extends Submittable> submittables) {
+        SubmissionEnvelope subEnvelope = emptyCopy(submissionEnvelope);
+        subEnvelope.getUploadedFiles().addAll(submissionEnvelope.getUploadedFiles());
+
+        submittables.forEach(submittable -> {
+            if (submittable instanceof AssayData) {
+                subEnvelope.getAssayData().add((AssayData) submittable);
+            } else if (submittable instanceof Analysis) {
+                subEnvelope.getAnalyses().add((Analysis) submittable);
+            }
+        });
+
+        return subEnvelope;
+    }
+
+    /**
+     * @return envelopes with the assay data and analyses of the submission, at most partitionSize of them in each,
+     * and all its uploaded files
+     */
+    static List<SubmissionEnvelope> fileDependentPartitions(SubmissionEnvelope submissionEnvelope, int partitionSize) {
+        final List<Submittable> submittables = fileDependentSubmittables(submissionEnvelope).collect(Collectors.toList());
+        final List<SubmissionEnvelope> partitions = new ArrayList<>();
+        for (int from = 0; from < submittables.size(); from += partitionSize) {
+            partitions.add(withFileDependentSubmittables(submissionEnvelope,
+                    submittables.subList(from, Math.min(from + partitionSize, submittables.size()))));
+        }
+
+        return partitions;
+    }
+
+    /**
+     * @return an envelope with the studies, samples, assays, projects, assay data, analyses and uploaded files
+     * of the submission, except the submittables matching the given predicate
+     */
+    static SubmissionEnvelope without(SubmissionEnvelope submissionEnvelope, Predicate<Submittable> excluded) {
+        SubmissionEnvelope subEnvelope = emptyCopy(submissionEnvelope);
+        subEnvelope.getUploadedFiles().addAll(submissionEnvelope.getUploadedFiles());
+        copy(submissionEnvelope.getStudies(), subEnvelope.getStudies(), excluded);
+        copy(submissionEnvelope.getSamples(), subEnvelope.getSamples(), excluded);
+        copy(submissionEnvelope.getAssays(), subEnvelope.getAssays(), excluded);
+        copy(submissionEnvelope.getProjects(), subEnvelope.getProjects(), excluded);
+        copy(submissionEnvelope.getAssayData(), subEnvelope.getAssayData(), excluded);
+        copy(submissionEnvelope.getAnalyses(), subEnvelope.getAnalyses(), excluded);
+
+        return subEnvelope;
+    }
+
+    private static <T extends Submittable> void copy(List<T> from, List<T> to, Predicate<Submittable> excluded) {
+        from.stream().filter(excluded.negate()).forEach(to::add);
+    }
+
+    private static SubmissionEnvelope emptyCopy(SubmissionEnvelope submissionEnvelope) {
+        SubmissionEnvelope subEnvelope = new SubmissionEnvelope(submissionEnvelope.getSubmission());
+        subEnvelope.setJWTToken(submissionEnvelope.getJWTToken());
+
+        return subEnvelope;
+    }
+}
@@ -0,0 +1,248 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import uk.ac.ebi.subs.data.submittable.Submittable;
+import uk.ac.ebi.subs.processing.ProcessingCertificate;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The progress of a submission: the stages it has completed and what they produced,
+ * i.e. the submittables ENA has processed, the accessions and errors ENA gave them,
+ * the submittables left out because their files could not be moved, the errors that are about the whole submission,
+ * and the certificates built from those.
+ * It holds the certificates but not the envelope they are sent in, as that carries the token of the delivery,
+ * which is taken from the delivery being processed instead.
+ */
+public class SubmissionCheckpoint {
+
+    private String submissionId;
+
+    private Set<SubmissionStage> completedStages = EnumSet.noneOf(SubmissionStage.class);
+
+    private SubmittableResults submittableResults = new SubmittableResults();
+
+    private int errorCount;
+
+    private List<String> submissionErrors = new ArrayList<>();
+
+    private final Set<String> unsavedSubmittableIds = new LinkedHashSet<>();
+
+    private int savedErrorCount;
+
+    private List<ProcessingCertificate> processingCertificates;
+
+    private long updatedAt;
+
+    public SubmissionCheckpoint() {
+    }
+
+    public SubmissionCheckpoint(String submissionId) {
+        this.submissionId = submissionId;
+    }
+
+    public boolean isCompleted(SubmissionStage stage) {
+        return completedStages.contains(stage);
+    }
+
+    public void complete(SubmissionStage stage) {
+        completedStages.add(stage);
+    }
+
+    public boolean isProcessed(Submittable submittable) {
+        return submittableResults.isProcessed(submittable.getId());
+    }
+
+    public boolean hasProcessedSubmittables() {
+        return submittableResults.getProcessedCount() > 0;
+    }
+
+    /**
+     * Records what ENA returned for the given submittables: their accessions and the errors of the validation results.
+     */
+    public void recordEnaResults(Stream<? extends Submittable> submittables, List<SingleValidationResult> validationResults) {
+        submittables.forEach(submittable -> {
+            submittableResults.recordProcessed(submittable.getId(), submittable.isAccessioned() ? submittable.getAccession() : null);
+            markUnsaved(submittable.getId());
+        });
+
+        errorCount += validationResults.size();
+        validationResults.stream()
+                .filter(validationResult -> validationResult.getEntityUuid() != null)
+                .forEach(validationResult -> {
+                    submittableResults.recordEnaError(validationResult.getEntityUuid(), validationResult.getMessage());
+                    markUnsaved(validationResult.getEntityUuid());
+                });
+    }
+
+    /**
+     * Gives the submittables of the envelope the accessions ENA gave them on an earlier delivery of the submission.
+     */
+    public void restoreAccessions(SubmissionEnvelope submissionEnvelope) {
+        submissionEnvelope.allSubmissionItemsStream()
+                .filter(submittable -> !submittable.isAccessioned())
+                .forEach(submittable -> {
+                    final String accession = submittableResults.getAccession(submittable.getId());
+                    if (accession != null) {
+                        submittable.setAccession(accession);
+                    }
+                });
+    }
+
+    /**
+     * @return the accession ENA gave the submittable, or null if it has none
+     */
+    public String getAccession(Submittable submittable) {
+        return submittableResults.getAccession(submittable.getId());
+    }
+
+    /**
+     * @return the error ENA gave the submittable or, if it has none, the reason its files could not be moved, or null
+     */
+    public String getMessage(Submittable submittable) {
+        return submittableResults.getMessage(submittable.getId());
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * Records that the given submittable can not go to ENA, as some of its files could not be moved.
+     */
+    public void recordFileMoveError(Submittable submittable, String message) {
+        submittableResults.recordFileMoveError(submittable.getId(), message);
+        markUnsaved(submittable.getId());
+    }
+
+    public boolean hasFileMoveError(Submittable submittable) {
+        return submittableResults.hasFileMoveError(submittable.getId());
+    }
+
+    public boolean hasFileMoveErrors() {
+        return submittableResults.getFileMoveErrorCount() > 0;
+    }
+
+    /**
+     * Records an error that is not about any of the submittables, such as a file none of them refers to that could not be moved.
+     * It makes the whole submission fail.
+     */
+    public void recordSubmissionError(String message) {
+        submissionErrors.add(message);
+        errorCount++;
+    }
+
+    /**
+     * @return the errors about the whole submission, joined into one message, or null if there are none
+     */
+    public String getSubmissionMessage() {
+        return submissionErrors.isEmpty() ? null : String.join(" ", submissionErrors);
+    }
+
+    /**
+     * @return whether results were recorded since the checkpoint was last written or its results last appended
+     */
+    boolean hasUnsavedResults() {
+        return !unsavedSubmittableIds.isEmpty() || errorCount != savedErrorCount;
+    }
+
+    /**
+     * @return the results recorded since the checkpoint was last written or its results last appended,
+     * which then count as saved
+     */
+    SubmissionCheckpointDelta takeUnsavedResults() {
+        final List<SubmittableResult> submittables = unsavedSubmittableIds.stream()
+                .map(submittableResults::get)
+                .collect(Collectors.toList());
+        markSaved();
+        return new SubmissionCheckpointDelta(errorCount, submittables);
+    }
+
+    /**
+     * Applies results appended to the results log after the checkpoint was last written.
+     */
+    void apply(SubmissionCheckpointDelta delta) {
+        delta.getSubmittables().forEach(submittableResults::add);
+        errorCount = Math.max(errorCount, delta.getErrorCount());
+        savedErrorCount = errorCount;
+    }
+
+    void markSaved() {
+        unsavedSubmittableIds.clear();
+        savedErrorCount = errorCount;
+    }
+
+    private void markUnsaved(String submittableId) {
+        if (submittableId != null) {
+            unsavedSubmittableIds.add(submittableId);
+        }
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public void setSubmissionId(String submissionId) {
+        this.submissionId = submissionId;
+    }
+
+    public Set<SubmissionStage> getCompletedStages() {
+        return completedStages;
+    }
+
+    public void setCompletedStages(Set<SubmissionStage> completedStages) {
+        this.completedStages = completedStages.isEmpty() ? EnumSet.noneOf(SubmissionStage.class) : EnumSet.copyOf(completedStages);
+    }
+
+    /**
+     * @return a record of each submittable, as written to the checkpoint file
+     */
+    public List<SubmittableResult> getSubmittables() {
+        return submittableResults.toList();
+    }
+
+    public void setSubmittables(List<SubmittableResult> submittables) {
+        submittableResults = new SubmittableResults();
+        submittables.forEach(submittableResults::add);
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(int errorCount) {
+        this.errorCount = errorCount;
+        this.savedErrorCount = errorCount;
+    }
+
+    public List<String> getSubmissionErrors() {
+        return submissionErrors;
+    }
+
+    public void setSubmissionErrors(List<String> submissionErrors) {
+        this.submissionErrors = new ArrayList<>(submissionErrors);
+    }
+
+    public List<ProcessingCertificate> getProcessingCertificates() {
+        return processingCertificates;
+    }
+
+    public void setProcessingCertificates(List<ProcessingCertificate> processingCertificates) {
+        this.processingCertificates = processingCertificates;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,40 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results a {@link SubmissionCheckpoint} recorded since it was last written, as appended to its results log:
+ * the records of the submittables that changed and the number of errors ENA has given the submission so far.
+ * The error count is the total rather than the change, so applying the same delta twice does not count its errors twice.
+ */
+public class SubmissionCheckpointDelta {
+
+    private int errorCount;
+
+    private List<SubmittableResult> submittables = new ArrayList<>();
+
+    public SubmissionCheckpointDelta() {
+    }
+
+    public SubmissionCheckpointDelta(int errorCount, List<SubmittableResult> submittables) {
+        this.errorCount = errorCount;
+        this.submittables = submittables;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(int errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public List<SubmittableResult> getSubmittables() {
+        return submittables;
+    }
+
+    public void setSubmittables(List<SubmittableResult> submittables) {
+        this.submittables = submittables;
+    }
+}
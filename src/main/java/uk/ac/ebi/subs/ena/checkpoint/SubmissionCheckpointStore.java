@@ -0,0 +1,205 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link SubmissionCheckpoint} of each submission as a JSON file in a local folder.
+ * A checkpoint is written to a temporary file first and then moved over the previous one,
+ * so a crash leaves either the old or the new checkpoint behind, never a partial one.
+ * The checkpoint is written at the stage boundaries only. In between, what ENA returns for each partition
+ * is appended to a results log next to it, one JSON line per partition, and synced like the file move journal,
+ * so saving a partition costs the size of the partition rather than of the whole submission.
+ * Loading a checkpoint applies its results log, up to the first line cut short by a crash,
+ * and writing the checkpoint removes the log, whose results it then holds.
+ * A checkpoint is deleted once the results of its submission have been sent, so a later delivery of the submission,
+ * e.g. one sent again after an error, is processed afresh.
+ * Checkpoints older than the retention period, i.e. of submissions that were never finished, are removed at startup.
+ */
+@Component
+public class SubmissionCheckpointStore implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionCheckpointStore.class);
+
+    private static final String CHECKPOINT_SUFFIX = ".json";
+    private static final String RESULTS_LOG_SUFFIX = ".results";
+
+    @Value("${ena.checkpoint.directory:${java.io.tmpdir}/ena-agent/checkpoints}")
+    private String directory;
+
+    @Value("${ena.checkpoint.retentionDays:30}")
+    private int retentionDays;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Files.createDirectories(Paths.get(directory));
+        removeExpiredCheckpoints();
+    }
+
+    /**
+     * @return the checkpoint of the given submission, or a new one if the submission has none or it can not be read
+     */
+    public SubmissionCheckpoint load(String submissionId) {
+        if (submissionId == null) {
+            return new SubmissionCheckpoint();
+        }
+
+        SubmissionCheckpoint checkpoint = new SubmissionCheckpoint(submissionId);
+        final Path path = checkpointPath(submissionId);
+        if (Files.exists(path)) {
+            try {
+                checkpoint = objectMapper.readValue(path.toFile(), SubmissionCheckpoint.class);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read the checkpoint {} of submission {}, starting it again: {}.",
+                        path, submissionId, e.getMessage());
+                return new SubmissionCheckpoint(submissionId);
+            }
+        }
+
+        applyResultsLog(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Writes the whole checkpoint, e.g. once a stage is completed, and removes its results log.
+     */
+    public void save(SubmissionCheckpoint checkpoint) {
+        if (checkpoint.getSubmissionId() == null) {
+            return;
+        }
+
+        final Path path = checkpointPath(checkpoint.getSubmissionId());
+        final Path temporaryPath = Paths.get(path + ".tmp");
+        checkpoint.setUpdatedAt(System.currentTimeMillis());
+
+        try {
+            objectMapper.writeValue(temporaryPath.toFile(), checkpoint);
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(resultsLogPath(checkpoint.getSubmissionId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    String.format("Could not save the checkpoint of submission %s.", checkpoint.getSubmissionId()), e);
+        }
+        checkpoint.markSaved();
+    }
+
+    /**
+     * Appends the results the checkpoint recorded since it was last saved to its results log,
+     * e.g. once ENA has answered for a partition of the submission.
+     */
+    public void appendResults(SubmissionCheckpoint checkpoint) {
+        if (checkpoint.getSubmissionId() == null || !checkpoint.hasUnsavedResults()) {
+            return;
+        }
+
+        final Path path = resultsLogPath(checkpoint.getSubmissionId());
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            final byte[] line = objectMapper.writeValueAsBytes(checkpoint.takeUnsavedResults());
+            final ByteBuffer buffer = ByteBuffer.allocate(line.length + 1);
+            buffer.put(line).put((byte) '\n').flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    String.format("Could not append the results of submission %s to %s.", checkpoint.getSubmissionId(), path), e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint of the given submission, whose results have been sent.
+     */
+    public void delete(String submissionId) {
+        if (submissionId == null) {
+            return;
+        }
+
+        final Path path = checkpointPath(submissionId);
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(resultsLogPath(submissionId));
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete the checkpoint {} of submission {}, it will be removed once it expires: {}.",
+                    path, submissionId, e.getMessage());
+        }
+    }
+
+    void removeExpiredCheckpoints() throws IOException {
+        final long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        int removed = 0;
+
+        try (DirectoryStream<Path> checkpoints = Files.newDirectoryStream(Paths.get(directory),
+                "*{" + CHECKPOINT_SUFFIX + "," + RESULTS_LOG_SUFFIX + "}")) {
+            for (Path checkpoint : checkpoints) {
+                if (Files.getLastModifiedTime(checkpoint).toMillis() < expiry) {
+                    Files.deleteIfExists(checkpoint);
+                    removed++;
+                }
+            }
+        }
+
+        LOGGER.info("Removed {} expired submission checkpoints from {}.", removed, directory);
+    }
+
+    private void applyResultsLog(SubmissionCheckpoint checkpoint) {
+        final Path path = resultsLogPath(checkpoint.getSubmissionId());
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    checkpoint.apply(objectMapper.readValue(line, SubmissionCheckpointDelta.class));
+                } catch (IOException e) {
+                    LOGGER.warn("Could not read the results log {} of submission {} past a line cut short, "
+                            + "the submittables of that partition will be sent again: {}.", path, checkpoint.getSubmissionId(), e.getMessage());
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read the results log {} of submission {}, the submittables in it will be sent again: {}.",
+                    path, checkpoint.getSubmissionId(), e.getMessage());
+        }
+    }
+
+    private Path checkpointPath(String submissionId) {
+        return Paths.get(directory, fileName(submissionId) + CHECKPOINT_SUFFIX);
+    }
+
+    private Path resultsLogPath(String submissionId) {
+        return Paths.get(directory, fileName(submissionId) + RESULTS_LOG_SUFFIX);
+    }
+
+    private static String fileName(String submissionId) {
+        return submissionId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
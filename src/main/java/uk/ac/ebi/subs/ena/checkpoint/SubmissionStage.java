@@ -0,0 +1,12 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+/**
+ * The stages of processing a submission that are recorded in its {@link SubmissionCheckpoint}.
+ */
+public enum SubmissionStage {
+
+    FILES_MOVED,
+    PATHS_INJECTED,
+    ENA_PROCESSED,
+    CERTIFICATES_BUILT
+}
@@ -0,0 +1,80 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+/**
+ * What is known about one submittable of a submission, as written in its checkpoint, see {@link SubmittableResults}.
+ */
+public class SubmittableResult {
+
+    private String id;
+
+    private String accession;
+
+    private String message;
+
+    private boolean processed;
+
+    private boolean enaError;
+
+    private boolean fileMoveError;
+
+    public SubmittableResult() {
+    }
+
+    public SubmittableResult(String id, String accession, String message,
+                             boolean processed, boolean enaError, boolean fileMoveError) {
+        this.id = id;
+        this.accession = accession;
+        this.message = message;
+        this.processed = processed;
+        this.enaError = enaError;
+        this.fileMoveError = fileMoveError;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public void setAccession(String accession) {
+        this.accession = accession;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public boolean isProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(boolean processed) {
+        this.processed = processed;
+    }
+
+    public boolean isEnaError() {
+        return enaError;
+    }
+
+    public void setEnaError(boolean enaError) {
+        this.enaError = enaError;
+    }
+
+    public boolean isFileMoveError() {
+        return fileMoveError;
+    }
+
+    public void setFileMoveError(boolean fileMoveError) {
+        this.fileMoveError = fileMoveError;
+    }
+}
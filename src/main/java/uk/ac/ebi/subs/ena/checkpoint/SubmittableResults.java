@@ -0,0 +1,151 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the processing of a submission found out about each of its submittables:
+ * whether ENA has processed it, the accession ENA gave it, and the error ENA gave it or the reason its files could not be moved.
+ *
+ * The submittables are kept in one map of {@link SubmittableResult} by submittable ID, in the order they were first recorded,
+ * with counts of the processed ones and of the ones whose files could not be moved kept alongside.
+ * Submittables without an ID are not recorded.
+ */
+public final class SubmittableResults {
+
+    private final Map<String, SubmittableResult> resultsById = new LinkedHashMap<>();
+
+    private int processedCount;
+
+    private int fileMoveErrorCount;
+
+    /**
+     * Records that ENA has processed the submittable, with the accession it gave it, if any.
+     */
+    public void recordProcessed(String submittableId, String accession) {
+        final SubmittableResult result = resultFor(submittableId);
+        if (result == null) {
+            return;
+        }
+        if (accession != null) {
+            result.setAccession(accession);
+        }
+        if (!result.isProcessed()) {
+            result.setProcessed(true);
+            processedCount++;
+        }
+    }
+
+    /**
+     * Records the error ENA gave the submittable, which becomes its message.
+     */
+    public void recordEnaError(String submittableId, String message) {
+        final SubmittableResult result = resultFor(submittableId);
+        if (result == null) {
+            return;
+        }
+        result.setMessage(message);
+        result.setEnaError(true);
+    }
+
+    /**
+     * Records that the files of the submittable could not be moved.
+     * The reason becomes its message unless ENA gave it an error.
+     */
+    public void recordFileMoveError(String submittableId, String message) {
+        final SubmittableResult result = resultFor(submittableId);
+        if (result == null) {
+            return;
+        }
+        if (!result.isEnaError()) {
+            result.setMessage(message);
+        }
+        if (!result.isFileMoveError()) {
+            result.setFileMoveError(true);
+            fileMoveErrorCount++;
+        }
+    }
+
+    public boolean isProcessed(String submittableId) {
+        final SubmittableResult result = get(submittableId);
+        return result != null && result.isProcessed();
+    }
+
+    public boolean hasFileMoveError(String submittableId) {
+        final SubmittableResult result = get(submittableId);
+        return result != null && result.isFileMoveError();
+    }
+
+    /**
+     * @return the accession ENA gave the submittable, or null if it has none
+     */
+    public String getAccession(String submittableId) {
+        final SubmittableResult result = get(submittableId);
+        return result == null ? null : result.getAccession();
+    }
+
+    /**
+     * @return the error ENA gave the submittable or, if it has none, the reason its files could not be moved, or null
+     */
+    public String getMessage(String submittableId) {
+        final SubmittableResult result = get(submittableId);
+        return result == null ? null : result.getMessage();
+    }
+
+    public int size() {
+        return resultsById.size();
+    }
+
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    public int getFileMoveErrorCount() {
+        return fileMoveErrorCount;
+    }
+
+    /**
+     * @return the record of the given submittable, to write its results out, or null if nothing is known about it
+     */
+    public SubmittableResult get(String submittableId) {
+        return submittableId == null ? null : resultsById.get(submittableId);
+    }
+
+    /**
+     * @return the record of each submittable, to write the results out
+     */
+    public List<SubmittableResult> toList() {
+        return new ArrayList<>(resultsById.values());
+    }
+
+    /**
+     * Adds a record written out by {@link #toList()}.
+     */
+    public void add(SubmittableResult result) {
+        if (result.isProcessed()) {
+            recordProcessed(result.getId(), result.getAccession());
+        }
+        if (result.isEnaError()) {
+            recordEnaError(result.getId(), result.getMessage());
+        }
+        if (result.isFileMoveError()) {
+            recordFileMoveError(result.getId(), result.getMessage());
+        }
+    }
+
+    /**
+     * @return the record of the submittable, added if it is not there yet, or null if it has no ID
+     */
+    private SubmittableResult resultFor(String submittableId) {
+        if (submittableId == null) {
+            return null;
+        }
+        return resultsById.computeIfAbsent(submittableId, id -> {
+            final SubmittableResult result = new SubmittableResult();
+            result.setId(id);
+            return result;
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package uk.ac.ebi.subs.ena.checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks the MD5 checksum of uploaded files against the actual bytes before they are moved,
+ * so that a corrupted upload is reported straight away rather than by ENA much later.
+ * It needs the upload area to be mounted on this node, and is only on when ena.checksum.verify is.
+ *
+ * Files are hashed in parallel, each one read sequentially into a large direct buffer of its hashing thread.
+ * Direct buffers are used rather than memory maps, which would stay mapped until garbage collected
+ * and add up to hundreds of gigabytes of address space on large submissions.
+ * The checksums are cached by path, size and modification time, so redeliveries of a submission do not hash its files again.
+ */
+@Component
+public class ChecksumVerifier implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumVerifier.class);
+
+    @Value("${ena.checksum.verify:false}")
+    private boolean enabled;
+
+    @Value("${ena.checksum.threads:4}")
+    private int threads;
+
+    @Value("${ena.checksum.bufferSizeBytes:8388608}")
+    private int bufferSizeBytes;
+
+    @Value("${ena.checksum.cacheSize:100000}")
+    private int cacheSize;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private ExecutorService hashExecutor;
+
+    private ThreadLocal<ByteBuffer> buffers;
+
+    private Map<String, String> checksumCache;
+
+    @Autowired
+    public ChecksumVerifier(EnaAgentMetrics enaAgentMetrics) {
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) {
+            return;
+        }
+
+        hashExecutor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("checksum-"));
+        buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bufferSizeBytes));
+        checksumCache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (hashExecutor != null) {
+            hashExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts checking the checksums of the given files, several files at a time.
+     *
+     * @return the pending reason each file that does not match its checksum failed, keyed by the path of the file,
+     * or an empty map straight away when the verification is off
+     */
+    public CompletableFuture<Map<String, String>> verify(List<UploadedFile> uploadedFiles) {
+        if (!enabled || uploadedFiles.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        final Map<String, CompletableFuture<String>> mismatches = new LinkedHashMap<>();
+        uploadedFiles.forEach(uploadedFile -> mismatches.put(uploadedFile.getPath(),
+                CompletableFuture.supplyAsync(() -> mismatch(uploadedFile), hashExecutor)));
+
+        return CompletableFuture.allOf(mismatches.values().toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    final Map<String, String> mismatchesByPath = new LinkedHashMap<>();
+                    mismatches.forEach((path, mismatch) -> {
+                        if (mismatch.join() != null) {
+                            mismatchesByPath.put(path, mismatch.join());
+                        }
+                    });
+                    enaAgentMetrics.recordChecksumMismatches(mismatchesByPath.size());
+                    return mismatchesByPath;
+                });
+    }
+
+    /**
+     * @return why the file does not match its checksum, or null if it does or has no checksum to check
+     */
+    String mismatch(UploadedFile uploadedFile) {
+        if (uploadedFile.getChecksum() == null) {
+            LOGGER.warn("The file {} has no checksum to verify.", uploadedFile.getPath());
+            return null;
+        }
+
+        try {
+            final String checksum = md5(Paths.get(uploadedFile.getPath()));
+            if (checksum.equalsIgnoreCase(uploadedFile.getChecksum())) {
+                return null;
+            }
+
+            LOGGER.error("The checksum of the file {} is {}, not {}.", uploadedFile.getPath(), checksum, uploadedFile.getChecksum());
+            return String.format("The checksum of file %s does not match: it is %s, not %s.",
+                    uploadedFile.getPath(), checksum, uploadedFile.getChecksum());
+        } catch (IOException e) {
+            LOGGER.error("Could not verify the checksum of the file {}: {}.", uploadedFile.getPath(), e.toString());
+            return String.format("Could not verify the checksum of file %s: %s.", uploadedFile.getPath(), e);
+        }
+    }
+
+    String md5(Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final String cacheKey = String.join("\t",
+                path.toString(), Long.toString(attributes.size()), Long.toString(attributes.lastModifiedTime().toMillis()));
+
+        final String cachedChecksum = checksumCache.get(cacheKey);
+        if (cachedChecksum != null) {
+            return cachedChecksum;
+        }
+
+        final MessageDigest md5 = md5Digest();
+        final ByteBuffer buffer = buffers.get();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md5.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        final String checksum = String.format("%032x", new BigInteger(1, md5.digest()));
+        checksumCache.put(cacheKey, checksum);
+
+        return checksum;
+    }
+
+    private static MessageDigest md5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available.", e);
+        }
+    }
+}
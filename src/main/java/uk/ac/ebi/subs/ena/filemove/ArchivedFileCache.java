@@ -0,0 +1,247 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The files known to be in ENA's 'webin' folder already, keyed by checksum and path relative to the source base folder,
+ * so that a file sent again by a resubmission or a correction is not moved a second time.
+ * It holds up to ena.file_move.archivedFileCache.maxEntries files, forgetting the least recently used ones first.
+ * A file found in the cache is only skipped once the transport confirms it is still in the 'webin' folder.
+ *
+ * The journal only keeps the files of the submissions still in progress once it is compacted,
+ * so the cache keeps its own append-only file, with a record for each file added to or removed from it as it happens,
+ * which a crash does not lose. The file is read back when the agent starts, before the files of the journal are added,
+ * and is rewritten with only the files the cache holds then, when the agent starts and stops
+ * and whenever it has grown to twice its size after the last rewrite.
+ * It is ena.file_move.archivedFileCache.path, or archived-files.cache next to the file move journal by default.
+ */
+@Component
+public class ArchivedFileCache implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchivedFileCache.class);
+
+    private static final String KEY_SEPARATOR = "\t";
+
+    private static final String ADDED = "ADDED";
+
+    private static final String REMOVED = "REMOVED";
+
+    private static final String DEFAULT_FILE_NAME = "archived-files.cache";
+
+    private static final long COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+
+    @Value("${ena.file_move.archivedFileCache.maxEntries:100000}")
+    private int maxEntries;
+
+    @Value("${ena.file_move.archivedFileCache.path:}")
+    private String cachePath;
+
+    private final FileMoveJournal fileMoveJournal;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private final Map<String, Boolean> archivedFiles = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private FileChannel cacheFile;
+
+    private long sizeAfterCompaction;
+
+    @Autowired
+    public ArchivedFileCache(FileMoveJournal fileMoveJournal, EnaAgentMetrics enaAgentMetrics) {
+        this.fileMoveJournal = fileMoveJournal;
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if ((cachePath == null || cachePath.isEmpty()) && fileMoveJournal.getJournalPath() != null) {
+            cachePath = Paths.get(fileMoveJournal.getJournalPath()).resolveSibling(DEFAULT_FILE_NAME).toString();
+        }
+        enaAgentMetrics.registerArchivedFileCache(this);
+    }
+
+    /**
+     * Rewrites the cache file with the files the cache holds, so the next start of the agent reads no more than it needs to.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (cacheFile == null) {
+            return;
+        }
+
+        compact();
+        try {
+            cacheFile.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close the archived file cache {}: {}.", cachePath, e.getMessage());
+        }
+        cacheFile = null;
+    }
+
+    /**
+     * Adds the files the cache file has a record of, then the files the journal has a record of being moved,
+     * and rewrites the cache file with them.
+     *
+     * @param relativeFilePath gives the path of a file relative to the source base folder from its source path
+     */
+    public void seed(Function<String, String> relativeFilePath) {
+        final int filesFromCacheFile = load();
+        fileMoveJournal.forEachMovedFile((checksum, sourcePath) -> add(checksum, relativeFilePath.apply(sourcePath)));
+        synchronized (this) {
+            compact();
+        }
+        LOGGER.info("Seeded the archived file cache with {} files, {} of them from {} and the rest from the file move journal.",
+                size(), filesFromCacheFile, cachePath);
+    }
+
+    public synchronized boolean contains(String checksum, String relativeFilePath) {
+        return checksum != null && archivedFiles.get(key(checksum, relativeFilePath)) != null;
+    }
+
+    public synchronized void add(String checksum, String relativeFilePath) {
+        if (checksum != null) {
+            final String key = key(checksum, relativeFilePath);
+            archivedFiles.put(key, Boolean.TRUE);
+            append(ADDED + KEY_SEPARATOR + key);
+        }
+    }
+
+    public synchronized void remove(String checksum, String relativeFilePath) {
+        final String key = key(checksum, relativeFilePath);
+        if (archivedFiles.remove(key) != null) {
+            append(REMOVED + KEY_SEPARATOR + key);
+        }
+    }
+
+    public synchronized int size() {
+        return archivedFiles.size();
+    }
+
+    /**
+     * Appends the record to the cache file, once it has been opened by {@link #seed(Function)}.
+     * The cache only saves file moves, so a record that can not be written is logged rather than failing the move.
+     */
+    private void append(String record) {
+        if (cacheFile == null) {
+            return;
+        }
+
+        try {
+            final ByteBuffer buffer = StandardCharsets.UTF_8.encode(record + "\n");
+            while (buffer.hasRemaining()) {
+                cacheFile.write(buffer);
+            }
+
+            if (cacheFile.size() > Math.max(COMPACTION_THRESHOLD_BYTES, 2 * sizeAfterCompaction)) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not write to the archived file cache {}: {}.", cachePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the cache file with a record for each file the cache holds, least recently used first,
+     * and opens it for the records that follow.
+     */
+    private void compact() {
+        if (!hasCacheFile()) {
+            return;
+        }
+
+        final Path path = Paths.get(cachePath);
+        final Path compactedPath = Paths.get(cachePath + ".compacting");
+
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(compactedPath, StandardCharsets.UTF_8)) {
+                for (String key : archivedFiles.keySet()) {
+                    writer.write(ADDED + KEY_SEPARATOR + key);
+                    writer.newLine();
+                }
+            }
+
+            if (cacheFile != null) {
+                cacheFile.close();
+                cacheFile = null;
+            }
+            try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.WRITE)) {
+                compacted.force(true);
+            }
+            Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            cacheFile = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            sizeAfterCompaction = cacheFile.size();
+        } catch (IOException e) {
+            LOGGER.warn("Could not rewrite the archived file cache {}, the next start will only know the files of the journal: {}.",
+                    cachePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Replays the records of the cache file, in the order they were written.
+     *
+     * @return the number of files the cache holds once they have been read
+     */
+    private synchronized int load() {
+        if (!hasCacheFile() || !Files.exists(Paths.get(cachePath))) {
+            return 0;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(cachePath), StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                final String[] fields = record.split(KEY_SEPARATOR, 2);
+                if (fields.length < 2 || !fields[1].contains(KEY_SEPARATOR)) {
+                    continue;
+                }
+                if (ADDED.equals(fields[0])) {
+                    archivedFiles.put(fields[1], Boolean.TRUE);
+                } else if (REMOVED.equals(fields[0])) {
+                    archivedFiles.remove(fields[1]);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read the archived file cache {}, going on with the {} files read: {}.",
+                    cachePath, archivedFiles.size(), e.getMessage());
+        }
+        return archivedFiles.size();
+    }
+
+    private boolean hasCacheFile() {
+        return cachePath != null && !cachePath.isEmpty();
+    }
+
+    private static String key(String checksum, String relativeFilePath) {
+        return checksum + KEY_SEPARATOR + relativeFilePath;
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the bytes and the number of files being moved at once, across all the submissions the agent is processing,
+ * so that peaks of large submissions share the link to the file move host and the staging file system
+ * rather than all starting at once and slowing each other down.
+ *
+ * A submission takes its share of the budget before it starts moving its files, and gives it back file by file.
+ * The submissions waiting for budget are admitted in the order they asked for it,
+ * and a submission larger than the whole budget is admitted on its own once nothing else is moving.
+ */
+@Component
+public class FileMoveAdmissionController implements InitializingBean {
+
+    @Value("${ena.file_move.admission.maxInFlightBytes:214748364800}")
+    private long maxInFlightBytes;
+
+    @Value("${ena.file_move.admission.maxInFlightMoves:20000}")
+    private int maxInFlightMoves;
+
+    @Value("${ena.file_move.admission.waitMillis:30000}")
+    private long waitMillis;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private final Deque<Object> waiting = new ArrayDeque<>();
+
+    private long inFlightBytes;
+
+    private int inFlightMoves;
+
+    @Autowired
+    public FileMoveAdmissionController(EnaAgentMetrics enaAgentMetrics) {
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        enaAgentMetrics.registerFileMoveAdmission(this);
+    }
+
+    /**
+     * Waits up to ena.file_move.admission.waitMillis for the given files to fit in the budget, and takes them out of it.
+     *
+     * @param bytes the bytes the files are expected to move
+     * @param moves the number of files
+     * @throws FileMoveAdmissionException if they do not fit in time, so the submission should be tried again later
+     */
+    public synchronized void admit(long bytes, int moves) {
+        final Object turn = new Object();
+        waiting.addLast(turn);
+
+        try {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            while (waiting.peekFirst() != turn || !fits(bytes, moves)) {
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    enaAgentMetrics.recordFileMoveAdmissionDenials(1);
+                    throw new FileMoveAdmissionException(String.format(
+                            "%d files of %d bytes did not fit in the file move budget within %d ms: %d files of %d bytes are being moved.",
+                            moves, bytes, waitMillis, inFlightMoves, inFlightBytes));
+                }
+                wait(remainingMillis);
+            }
+
+            inFlightBytes += bytes;
+            inFlightMoves += moves;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileMoveAdmissionException("Interrupted while waiting for the file move budget.", e);
+        } finally {
+            waiting.remove(turn);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gives back the share of the budget of files that have finished moving, whether they moved or not.
+     */
+    public synchronized void release(long bytes, int moves) {
+        inFlightBytes = Math.max(0, inFlightBytes - bytes);
+        inFlightMoves = Math.max(0, inFlightMoves - moves);
+        notifyAll();
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public int getMaxInFlightMoves() {
+        return maxInFlightMoves;
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getInFlightMoves() {
+        return inFlightMoves;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private boolean fits(long bytes, int moves) {
+        return inFlightMoves == 0
+                || (inFlightBytes + bytes <= maxInFlightBytes && inFlightMoves + moves <= maxInFlightMoves);
+    }
+}
@@ -0,0 +1,16 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+/**
+ * Thrown when the files of a submission do not fit in the file move budget in time.
+ * Nothing has been moved yet, so the submission can simply be delivered again later.
+ */
+public class FileMoveAdmissionException extends RuntimeException {
+
+    public FileMoveAdmissionException(String message) {
+        super(message);
+    }
+
+    public FileMoveAdmissionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,236 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A local, append-only journal of the files that have been moved to ENA's 'webin' folder,
+ * keyed by submission ID, file path and checksum.
+ * When a submission is redelivered, the files it already moved are found in the journal and not moved again.
+ *
+ * The journal is a text file with one record per line: a move record for each moved file
+ * and a completion record once the results of a submission have been sent.
+ * Once the file grows past the compaction threshold (or twice its size after the last compaction, whichever is larger),
+ * it is rewritten without the records of completed submissions and without the records older than the retention period.
+ */
+@Component
+public class FileMoveJournal implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileMoveJournal.class);
+
+    private static final String MOVED = "M";
+    private static final String COMPLETED = "C";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String NO_CHECKSUM = "null";
+
+    @Value("${ena.file_move.journalPath:${java.io.tmpdir}/ena-agent/filemove.journal}")
+    private String journalPath;
+
+    @Value("${ena.file_move.journalCompactionThresholdBytes:67108864}")
+    private long compactionThresholdBytes;
+
+    @Value("${ena.file_move.journalRetentionDays:30}")
+    private int retentionDays;
+
+    private final Map<String, SubmissionMoves> movesBySubmission = new ConcurrentHashMap<>();
+
+    private FileChannel journal;
+
+    private long sizeAfterCompaction;
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        final Path path = Paths.get(journalPath);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            load(path);
+        }
+
+        compact();
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        if (journal != null) {
+            journal.force(false);
+            journal.close();
+        }
+    }
+
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * @return true if the journal has a record of the given file of the given submission being moved
+     */
+    public boolean isMoved(String submissionId, UploadedFile uploadedFile) {
+        final SubmissionMoves submissionMoves = submissionId == null ? null : movesBySubmission.get(submissionId);
+
+        return submissionMoves != null && submissionMoves.movedFiles.containsKey(fileKey(uploadedFile));
+    }
+
+    /**
+     * Records that the given file of the given submission has been moved.
+     * The record reaches the disk at the latest on the next call of {@link #sync()}.
+     */
+    public void recordMoved(String submissionId, UploadedFile uploadedFile) {
+        if (submissionId == null) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final String fileKey = fileKey(uploadedFile);
+        movesBySubmission.computeIfAbsent(submissionId, id -> new SubmissionMoves()).movedFiles.put(fileKey, now);
+
+        append(String.join(FIELD_SEPARATOR, MOVED, Long.toString(now), submissionId, fileKey));
+    }
+
+    /**
+     * Hands the checksum and source path of each file the journal has a record of being moved to the consumer.
+     */
+    public void forEachMovedFile(BiConsumer<String, String> consumer) {
+        movesBySubmission.values().forEach(submissionMoves -> submissionMoves.movedFiles.keySet().forEach(fileKey -> {
+            final String[] fields = fileKey.split(FIELD_SEPARATOR, 2);
+            consumer.accept(NO_CHECKSUM.equals(fields[0]) ? null : fields[0], fields[1]);
+        }));
+    }
+
+    /**
+     * Records that the results of the given submission have been sent, so its records can go at the next compaction.
+     */
+    public void markSubmissionCompleted(String submissionId) {
+        final SubmissionMoves submissionMoves = submissionId == null ? null : movesBySubmission.get(submissionId);
+        if (submissionMoves == null) {
+            return;
+        }
+
+        submissionMoves.completed = true;
+
+        append(String.join(FIELD_SEPARATOR, COMPLETED, Long.toString(System.currentTimeMillis()), submissionId));
+        sync();
+    }
+
+    public synchronized void sync() {
+        try {
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the file move journal " + journalPath, e);
+        }
+    }
+
+    private synchronized void append(String record) {
+        try {
+            final ByteBuffer buffer = StandardCharsets.UTF_8.encode(record + "\n");
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+
+            if (journal.size() > Math.max(compactionThresholdBytes, 2 * sizeAfterCompaction)) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the file move journal " + journalPath, e);
+        }
+    }
+
+    /**
+     * Rewrites the journal with the records of the submissions that are neither completed nor expired.
+     */
+    synchronized void compact() throws IOException {
+        final Path path = Paths.get(journalPath);
+        final Path compactedPath = Paths.get(journalPath + ".compacting");
+        final long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+
+        movesBySubmission.values().forEach(submissionMoves ->
+                submissionMoves.movedFiles.values().removeIf(movedAt -> movedAt < expiry));
+        movesBySubmission.values().removeIf(submissionMoves -> submissionMoves.completed || submissionMoves.movedFiles.isEmpty());
+
+        try (BufferedWriter writer = Files.newBufferedWriter(compactedPath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, SubmissionMoves> submission : movesBySubmission.entrySet()) {
+                for (Map.Entry<String, Long> movedFile : submission.getValue().movedFiles.entrySet()) {
+                    writer.write(String.join(FIELD_SEPARATOR,
+                            MOVED, Long.toString(movedFile.getValue()), submission.getKey(), movedFile.getKey()));
+                    writer.newLine();
+                }
+            }
+        }
+
+        if (journal != null) {
+            journal.close();
+        }
+        try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.WRITE)) {
+            compacted.force(true);
+        }
+        Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        sizeAfterCompaction = journal.size();
+
+        LOGGER.info("Compacted the file move journal {}: {} submissions with moved files.", journalPath, movesBySubmission.size());
+    }
+
+    private void load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                final String[] fields = record.split(FIELD_SEPARATOR, 5);
+
+                if (fields.length == 5 && MOVED.equals(fields[0]) && isTimestamp(fields[1])) {
+                    movesBySubmission.computeIfAbsent(fields[2], id -> new SubmissionMoves())
+                            .movedFiles.put(fileKey(fields[3], fields[4]), Long.parseLong(fields[1]));
+                } else if (fields.length == 3 && COMPLETED.equals(fields[0])) {
+                    final SubmissionMoves submissionMoves = movesBySubmission.get(fields[2]);
+                    if (submissionMoves != null) {
+                        submissionMoves.completed = true;
+                    }
+                } else {
+                    LOGGER.warn("Skipping an unreadable record of the file move journal {}: {}.", journalPath, record);
+                }
+            }
+        }
+    }
+
+    private static boolean isTimestamp(String field) {
+        return !field.isEmpty() && field.chars().allMatch(Character::isDigit);
+    }
+
+    private static String fileKey(UploadedFile uploadedFile) {
+        return fileKey(uploadedFile.getChecksum(), uploadedFile.getPath());
+    }
+
+    private static String fileKey(String checksum, String path) {
+        return String.join(FIELD_SEPARATOR, String.valueOf(checksum), path);
+    }
+
+    private static class SubmissionMoves {
+
+        private final Map<String, Long> movedFiles = new ConcurrentHashMap<>();
+
+        private volatile boolean completed;
+    }
+}
@@ -0,0 +1,44 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+/**
+ * The outcome of moving a single uploaded file to ENA's 'webin' folder.
+ */
+public class FileMoveResult {
+
+    private final String sourcePath;
+    private final boolean successful;
+    private final String message;
+
+    private FileMoveResult(String sourcePath, boolean successful, String message) {
+        this.sourcePath = sourcePath;
+        this.successful = successful;
+        this.message = message;
+    }
+
+    public static FileMoveResult succeeded(String sourcePath) {
+        return new FileMoveResult(sourcePath, true, null);
+    }
+
+    public static FileMoveResult failed(String sourcePath, String message) {
+        return new FileMoveResult(sourcePath, false, message);
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return successful
+                ? String.format("FileMoveResult{sourcePath='%s', successful=true}", sourcePath)
+                : String.format("FileMoveResult{sourcePath='%s', successful=false, message='%s'}", sourcePath, message);
+    }
+}
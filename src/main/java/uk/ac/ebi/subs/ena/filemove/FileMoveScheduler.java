@@ -0,0 +1,239 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Runs file moves on a fixed number of slots.
+ *
+ * The moves of a submission wait in a queue of their own, largest first,
+ * and a slot that frees up takes the next move of each queue in turn,
+ * so a submission with hundreds of files does not hold up one with a couple of files that came in after it.
+ * The scheduler also estimates when the moves it holds will be finished,
+ * from the bytes left to move and the throughput of the moves that have finished.
+ */
+public class FileMoveScheduler {
+
+    private static final double THROUGHPUT_SMOOTHING = 0.2;
+
+    private static final Comparator<ScheduledMove<?>> LARGEST_FIRST =
+            Comparator.<ScheduledMove<?>>comparingLong(move -> move.bytes).reversed()
+                    .thenComparingLong(move -> move.sequence);
+
+    private final int slots;
+
+    private final ExecutorService slotExecutor;
+
+    private final Map<String, PriorityQueue<ScheduledMove<?>>> queuesByKey = new HashMap<>();
+
+    private final Deque<String> keysInTurn = new ArrayDeque<>();
+
+    private int freeSlots;
+
+    private long sequence;
+
+    private long queuedBytes;
+
+    private long inFlightBytes;
+
+    private double throughputBytesPerSecond;
+
+    public FileMoveScheduler(int slots, long initialThroughputBytesPerSecond, String threadNamePrefix) {
+        if (slots < 1) {
+            throw new IllegalArgumentException(String.format("The number of slots must be at least 1, not %d.", slots));
+        }
+
+        this.slots = slots;
+        this.freeSlots = slots;
+        this.throughputBytesPerSecond = Math.max(1, initialThroughputBytesPerSecond);
+        this.slotExecutor = Executors.newFixedThreadPool(slots, new CustomizableThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * Queues a move behind the other moves of the same key, e.g. of the same submission.
+     *
+     * @param key the key of the queue of the move
+     * @param bytes how many bytes the move is expected to move
+     * @param move the move itself, run on a slot
+     * @return the pending result of the move
+     */
+    public <T> CompletableFuture<T> submit(String key, long bytes, Supplier<T> move) {
+        final ScheduledMove<T> scheduledMove;
+
+        synchronized (this) {
+            scheduledMove = new ScheduledMove<>(Math.max(0, bytes), sequence++, move);
+            queuesByKey.computeIfAbsent(key, queueKey -> {
+                keysInTurn.addLast(queueKey);
+                return new PriorityQueue<>(LARGEST_FIRST);
+            }).add(scheduledMove);
+            queuedBytes += scheduledMove.bytes;
+        }
+        dispatch();
+
+        return scheduledMove.result;
+    }
+
+    /**
+     * @return how long the moves queued or in flight are expected to take, spread over all the slots
+     */
+    public synchronized long getExpectedRemainingMillis() {
+        return (long) ((queuedBytes + inFlightBytes) * 1000.0 / slots / throughputBytesPerSecond);
+    }
+
+    public Instant getExpectedFinishTime() {
+        return Instant.now().plusMillis(getExpectedRemainingMillis());
+    }
+
+    public void shutdown() {
+        slotExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the throughput of a single move, as measured on the moves that have finished so far
+     */
+    public synchronized double getThroughputBytesPerSecond() {
+        return throughputBytesPerSecond;
+    }
+
+    /**
+     * Splits the files into batches of similar total size, placing the files largest first,
+     * each one into the batch with the fewest bytes so far (longest processing time first).
+     * There are as many batches as there are slots to run them, or more if the batches would otherwise
+     * exceed the batch size or the given number of bytes, which bounds how long a batch holds its slot.
+     * Files of unknown size count as the average size of the others.
+     *
+     * @return the batches, largest first, each with its files largest first
+     */
+    public static List<List<UploadedFile>> packLargestFirst(List<UploadedFile> files, int parallelMoves, int batchSize,
+                                                            long maxBatchBytes, ToLongFunction<UploadedFile> sizeOf) {
+        final Map<UploadedFile, Long> sizes = estimatedSizes(files, sizeOf);
+        final int maxBatchSize = Math.max(1, batchSize);
+        final long totalBytes = sizes.values().stream().mapToLong(Long::longValue).sum();
+        final long batchesByBytes = maxBatchBytes > 0 ? (totalBytes + maxBatchBytes - 1) / maxBatchBytes : 0;
+        final int numberOfBatches = (int) Math.min(files.size(), Math.max(
+                Math.max(Math.min(Math.max(1, parallelMoves), files.size()), (files.size() + maxBatchSize - 1) / maxBatchSize),
+                batchesByBytes));
+
+        final PriorityQueue<Batch> batches = new PriorityQueue<>(Comparator.<Batch>comparingLong(batch -> batch.bytes)
+                .thenComparingInt(batch -> batch.files.size()));
+        for (int i = 0; i < numberOfBatches; i++) {
+            batches.add(new Batch());
+        }
+
+        final List<Batch> fullBatches = new ArrayList<>();
+        files.stream()
+                .sorted(Comparator.comparingLong(sizes::get).reversed())
+                .forEachOrdered(file -> {
+                    final Batch batch = batches.poll();
+                    batch.files.add(file);
+                    batch.bytes += sizes.get(file);
+                    (batch.files.size() < maxBatchSize ? batches : fullBatches).add(batch);
+                });
+        fullBatches.addAll(batches);
+
+        return fullBatches.stream()
+                .filter(batch -> !batch.files.isEmpty())
+                .sorted(Comparator.<Batch>comparingLong(batch -> batch.bytes).reversed())
+                .map(batch -> batch.files)
+                .collect(Collectors.toList());
+    }
+
+    static Map<UploadedFile, Long> estimatedSizes(List<UploadedFile> files, ToLongFunction<UploadedFile> sizeOf) {
+        final Map<UploadedFile, Long> sizes = new IdentityHashMap<>();
+        files.forEach(file -> sizes.put(file, sizeOf.applyAsLong(file)));
+
+        final long averageSize = (long) sizes.values().stream().filter(size -> size >= 0)
+                .mapToLong(Long::longValue).average().orElse(0);
+        sizes.replaceAll((file, size) -> size < 0 ? averageSize : size);
+
+        return sizes;
+    }
+
+    private void dispatch() {
+        final List<ScheduledMove<?>> movesToRun = new ArrayList<>();
+
+        synchronized (this) {
+            while (freeSlots > 0 && !keysInTurn.isEmpty()) {
+                final String key = keysInTurn.pollFirst();
+                final PriorityQueue<ScheduledMove<?>> queue = queuesByKey.get(key);
+                final ScheduledMove<?> move = queue.poll();
+
+                if (queue.isEmpty()) {
+                    queuesByKey.remove(key);
+                } else {
+                    keysInTurn.addLast(key);
+                }
+
+                freeSlots--;
+                queuedBytes -= move.bytes;
+                inFlightBytes += move.bytes;
+                movesToRun.add(move);
+            }
+        }
+
+        movesToRun.forEach(move -> slotExecutor.execute(() -> run(move)));
+    }
+
+    private <T> void run(ScheduledMove<T> move) {
+        final long start = System.nanoTime();
+        try {
+            move.result.complete(move.move.get());
+        } catch (RuntimeException | Error e) {
+            move.result.completeExceptionally(e);
+        } finally {
+            finished(move, System.nanoTime() - start);
+            dispatch();
+        }
+    }
+
+    private synchronized void finished(ScheduledMove<?> move, long elapsedNanos) {
+        freeSlots++;
+        inFlightBytes -= move.bytes;
+
+        if (move.bytes > 0 && elapsedNanos > 0) {
+            final double moveThroughput = move.bytes * 1e9 / elapsedNanos;
+            throughputBytesPerSecond += THROUGHPUT_SMOOTHING * (moveThroughput - throughputBytesPerSecond);
+        }
+    }
+
+    private static class ScheduledMove<T> {
+
+        private final long bytes;
+
+        private final long sequence;
+
+        private final Supplier<T> move;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private ScheduledMove(long bytes, long sequence, Supplier<T> move) {
+            this.bytes = bytes;
+            this.sequence = sequence;
+            this.move = move;
+        }
+    }
+
+    private static class Batch {
+
+        private final List<UploadedFile> files = new ArrayList<>();
+
+        private long bytes;
+    }
+}
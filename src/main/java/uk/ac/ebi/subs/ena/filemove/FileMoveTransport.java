@@ -0,0 +1,44 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves batches of uploaded files to ENA's 'webin' folder.
+ * The transport in use is chosen by ena.file_move.transport, see {@link FileMoveTransportConfiguration}.
+ */
+public interface FileMoveTransport {
+
+    /**
+     * @return the host the files are moved on, to limit the number of moves running on it at the same time
+     */
+    String getHostName();
+
+    /**
+     * Gets the transport ready to move files, e.g. opens the connection to the host if it has dropped.
+     */
+    void prepare();
+
+    /**
+     * Moves a batch of files from the given source base path to the folder of the active profile in the 'webin' folder,
+     * each keeping its path relative to the source base path.
+     *
+     * @param sourceBasePath the folder the relative paths of the files start from
+     * @param filesByRelativePath the files to move, keyed by their relative path
+     * @return the outcome of the move of each file, in the order of the given files
+     */
+    List<FileMoveResult> moveBatch(String sourceBasePath, Map<String, UploadedFile> filesByRelativePath);
+
+    /**
+     * Checks in one go which of the given files are in the folder of the active profile in the 'webin' folder.
+     *
+     * @param relativeFilePaths the paths of the files relative to the source base path
+     * @return the given paths whose file is there
+     * @throws RuntimeException if the check could not be made
+     */
+    Set<String> findArchivedFiles(Collection<String> relativeFilePaths);
+}
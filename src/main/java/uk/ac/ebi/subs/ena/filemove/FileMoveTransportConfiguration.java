@@ -0,0 +1,55 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Chooses how files are moved, from ena.file_move.transport:
+ * 'ssh' runs ENA's file move script on the file move host, 'local' moves the files with NIO on this node,
+ * and 'auto' moves them locally when the 'webin' folder is mounted on this node, over SSH otherwise.
+ * Only the transports it looks at are created, so with lazy initialization the SSH one is never set up for local moves.
+ */
+@Configuration
+public class FileMoveTransportConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileMoveTransportConfiguration.class);
+
+    static final String SSH = "ssh";
+    static final String LOCAL = "local";
+    static final String AUTO = "auto";
+
+    @Value("${ena.file_move.transport:ssh}")
+    private String transport;
+
+    @Bean
+    @Primary
+    public FileMoveTransport fileMoveTransport(ObjectProvider<SshFileMoveTransport> sshFileMoveTransport,
+                                               ObjectProvider<LocalFileMoveTransport> localFileMoveTransport) {
+        final FileMoveTransport fileMoveTransport;
+
+        switch (transport) {
+            case SSH:
+                fileMoveTransport = sshFileMoveTransport.getObject();
+                break;
+            case LOCAL:
+                fileMoveTransport = localFileMoveTransport.getObject();
+                break;
+            case AUTO:
+                final LocalFileMoveTransport local = localFileMoveTransport.getObject();
+                fileMoveTransport = local.isAvailable() ? local : sshFileMoveTransport.getObject();
+                break;
+            default:
+                throw new IllegalArgumentException(String.format(
+                        "Unknown file move transport: %s. It should be one of %s, %s or %s.", transport, SSH, LOCAL, AUTO));
+        }
+
+        LOGGER.info("Moving files with the {} transport.",
+                fileMoveTransport instanceof LocalFileMoveTransport ? LOCAL : SSH);
+        return fileMoveTransport;
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the file move commands in flight and kills the ones that take too long.
+ *
+ * The file move command of a batch moves its files one after the other,
+ * and each file gets its own timeout: a base timeout plus the time the file takes to move at the minimum expected throughput.
+ * The remote command runs the move of each file under {@code timeout}, see {@link #remoteTimeoutSeconds(UploadedFile)},
+ * so a move that hangs is killed on the file move host, where it runs, and the command goes on with the next file.
+ *
+ * The watchdog is the backstop for a command that hangs anyway, e.g. on a dead connection.
+ * It gives each file ena.file_move.watchdogGraceSeconds more than its timeout, longer than the remote {@code timeout}
+ * takes to kill a move, then kills the whole local process tree of the command.
+ * That only reaches the local ssh client, not the processes on the file move host,
+ * but by then the remote {@code timeout} has killed the move of the file, so a retry can not run alongside it.
+ */
+@Component
+public class FileMoveWatchdog implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileMoveWatchdog.class);
+
+    @Value("${ena.file_move.timeoutBaseSeconds:120}")
+    private long timeoutBaseSeconds;
+
+    @Value("${ena.file_move.minThroughputBytesPerSecond:5242880}")
+    private long minThroughputBytesPerSecond;
+
+    @Value("${ena.file_move.timeoutUnknownSizeSeconds:3600}")
+    private long timeoutUnknownSizeSeconds;
+
+    @Value("${ena.file_move.watchdogIntervalMillis:5000}")
+    private long watchdogIntervalMillis;
+
+    @Value("${ena.file_move.watchdogGraceSeconds:30}")
+    private long watchdogGraceSeconds;
+
+    private final Set<InFlightMove> inFlightMoves = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService sweepExecutor;
+
+    @Override
+    public void afterPropertiesSet() {
+        sweepExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("file-move-watchdog-"));
+        sweepExecutor.scheduleWithFixedDelay(this::sweep, watchdogIntervalMillis, watchdogIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        sweepExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts watching the given file move command, which is about to move the given file.
+     *
+     * @return the in-flight move, to be closed once the command has finished
+     */
+    public InFlightMove watch(Process process, UploadedFile firstFile) {
+        final InFlightMove inFlightMove = new InFlightMove(process);
+        inFlightMove.moving(firstFile);
+        inFlightMoves.add(inFlightMove);
+
+        return inFlightMove;
+    }
+
+    /**
+     * @return how long the given file may take to move
+     */
+    long timeoutMillis(UploadedFile uploadedFile) {
+        final Long size = uploadedFile.getTotalSize();
+        if (size == null) {
+            return TimeUnit.SECONDS.toMillis(timeoutUnknownSizeSeconds);
+        }
+
+        return TimeUnit.SECONDS.toMillis(timeoutBaseSeconds) + size * 1000 / Math.max(1, minThroughputBytesPerSecond);
+    }
+
+    /**
+     * @return how long the move of the given file may run on the file move host, in whole seconds, at least one
+     */
+    public long remoteTimeoutSeconds(UploadedFile uploadedFile) {
+        return Math.max(1, (timeoutMillis(uploadedFile) + 999) / 1000);
+    }
+
+    public int getInFlightMoveCount() {
+        return inFlightMoves.size();
+    }
+
+    /**
+     * Kills every file move command that is past its deadline.
+     */
+    void sweep() {
+        final long now = System.currentTimeMillis();
+
+        inFlightMoves.stream()
+                .filter(inFlightMove -> now > inFlightMove.deadline && !inFlightMove.timedOut)
+                .forEach(InFlightMove::kill);
+    }
+
+    /**
+     * A file move command in flight, with the file it is moving and the deadline of that file.
+     */
+    public final class InFlightMove implements AutoCloseable {
+
+        private final Process process;
+
+        private volatile UploadedFile file;
+
+        private volatile long deadline;
+
+        private volatile long timeoutMillis;
+
+        private volatile boolean timedOut;
+
+        private volatile UploadedFile timedOutFile;
+
+        private volatile long timedOutAfterMillis;
+
+        private InFlightMove(Process process) {
+            this.process = process;
+        }
+
+        /**
+         * Tells the watchdog the command has started moving the given file.
+         */
+        public void moving(UploadedFile uploadedFile) {
+            timeoutMillis = TimeUnit.SECONDS.toMillis(remoteTimeoutSeconds(uploadedFile) + watchdogGraceSeconds);
+            file = uploadedFile;
+            deadline = System.currentTimeMillis() + timeoutMillis;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return the file the command was moving when it was killed, if it was
+         */
+        public UploadedFile getTimedOutFile() {
+            return timedOutFile;
+        }
+
+        public String getTimeoutMessage() {
+            return String.format("The move of file %s timed out after %d seconds.",
+                    timedOutFile.getPath(), TimeUnit.MILLISECONDS.toSeconds(timedOutAfterMillis));
+        }
+
+        /**
+         * Kills the command before its descendants, so it can not go on with the next file in the meantime.
+         */
+        private void kill() {
+            timedOutFile = file;
+            timedOutAfterMillis = timeoutMillis;
+            timedOut = true;
+            LOGGER.error("{} Killing the file move command.", getTimeoutMessage());
+
+            final List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+            process.destroyForcibly();
+            descendants.forEach(ProcessHandle::destroyForcibly);
+        }
+
+        @Override
+        public void close() {
+            inFlightMoves.remove(this);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Moves files with NIO, for the nodes where both the upload area and the 'webin' folder are mounted locally,
+ * at the same paths as on the file move host.
+ * A file is renamed into place when both are on the same file system.
+ * Otherwise it is copied with {@link FileChannel#transferTo}, so the kernel copies the data without it going through the agent,
+ * synced to disk, renamed into place and only then deleted from the upload area.
+ */
+@Component
+public class LocalFileMoveTransport implements FileMoveTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFileMoveTransport.class);
+
+    static final String HOST_NAME = "localhost";
+
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+
+    @Value("${ena.file_move.webinFolderPath}")
+    private String webinFolderPath;
+
+    @Value("${ena.file_move.localSourceBasePath:}")
+    private String localSourceBasePath;
+
+    @Value("${spring.profiles.active:dev}")
+    private String activeProfile;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    @Autowired
+    public LocalFileMoveTransport(EnaAgentMetrics enaAgentMetrics) {
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    /**
+     * Tells whether both ends of the moves are mounted on this node:
+     * the 'webin' folder, writable, and the base folder of the upload area, ena.file_move.localSourceBasePath, readable.
+     *
+     * @return whether this transport can be used
+     */
+    public boolean isAvailable() {
+        final Path webinFolder = Paths.get(webinFolderPath);
+        if (!Files.isDirectory(webinFolder) || !Files.isWritable(webinFolder)) {
+            LOGGER.info("The 'webin' folder {} is not a writable folder on this node.", webinFolderPath);
+            return false;
+        }
+
+        if (localSourceBasePath == null || localSourceBasePath.isEmpty()) {
+            LOGGER.info("ena.file_move.localSourceBasePath is not set, so the upload area can not be checked on this node.");
+            return false;
+        }
+        final Path sourceBaseFolder = Paths.get(localSourceBasePath);
+        if (!Files.isDirectory(sourceBaseFolder) || !Files.isReadable(sourceBaseFolder)) {
+            LOGGER.info("The upload area {} is not a readable folder on this node.", localSourceBasePath);
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String getHostName() {
+        return HOST_NAME;
+    }
+
+    @Override
+    public void prepare() {
+    }
+
+    @Override
+    public List<FileMoveResult> moveBatch(String sourceBasePath, Map<String, UploadedFile> filesByRelativePath) {
+        final Path targetBasePath = Paths.get(webinFolderPath, activeProfile);
+        final List<FileMoveResult> results = new ArrayList<>(filesByRelativePath.size());
+
+        filesByRelativePath.forEach((relativeFilePath, uploadedFile) -> {
+            final long moveStart = System.nanoTime();
+            try {
+                move(Paths.get(uploadedFile.getPath()), targetBasePath.resolve(relativeFilePath));
+                enaAgentMetrics.recordFileMove(uploadedFile, System.nanoTime() - moveStart);
+                results.add(FileMoveResult.succeeded(uploadedFile.getPath()));
+            } catch (IOException e) {
+                LOGGER.error("Could not move the file {}: {}.", uploadedFile.getPath(), e.toString());
+                results.add(FileMoveResult.failed(uploadedFile.getPath(),
+                        String.format("The file move went wrong with file: %s (%s).", uploadedFile.getPath(), e)));
+            }
+        });
+
+        return results;
+    }
+
+    @Override
+    public Set<String> findArchivedFiles(Collection<String> relativeFilePaths) {
+        final Path targetBasePath = Paths.get(webinFolderPath, activeProfile);
+
+        return relativeFilePaths.stream()
+                .filter(relativeFilePath -> Files.isRegularFile(targetBasePath.resolve(relativeFilePath)))
+                .collect(Collectors.toSet());
+    }
+
+    void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            copyAndDelete(source, target);
+        }
+    }
+
+    /**
+     * Copies the file next to its target first, so that a copy cut short never shows up under the target name.
+     */
+    void copyAndDelete(Path source, Path target) throws IOException {
+        final Path partialTarget = target.resolveSibling(target.getFileName() + PARTIAL_FILE_SUFFIX);
+
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(partialTarget,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = sourceChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += sourceChannel.transferTo(position, size - position, targetChannel);
+            }
+            targetChannel.force(true);
+        }
+
+        Files.move(partialTarget, target, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(source);
+    }
+}
@@ -0,0 +1,199 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This component builds the SSH commands used to reach the file move host.
+ * When multiplexing is enabled, all the SSH sessions share one master connection (OpenSSH ControlMaster),
+ * so TCP setup, key exchange and authentication happen once per idle period instead of once per session.
+ * The master connection closes itself after being idle for the configured time,
+ * and a periodic health check tears down a master that stopped responding.
+ * The server limits the sessions of one master connection (sshd's MaxSessions, 10 by default),
+ * so ena.file_move.maxConcurrentMovesPerHost should stay within that limit.
+ */
+@Component
+public class SshConnectionManager implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshConnectionManager.class);
+
+    private static final long CONTROL_COMMAND_TIMEOUT_SECONDS = 30;
+
+    @Value("${ena.file_move.remoteHostName}")
+    private String remoteHostName;
+
+    @Value("${ena.fileMoveProcessUserName}")
+    private String fileMoveUsername;
+
+    @Value("${ena.file_move.logFilePath}")
+    private String logFilePath;
+
+    @Value("${ena.file_move.sshCommand:ssh}")
+    private String sshCommand;
+
+    @Value("${ena.file_move.sshMultiplexing:true}")
+    private boolean multiplexing;
+
+    @Value("${ena.file_move.sshControlDir:${java.io.tmpdir}/ena-agent-ssh}")
+    private String controlDir;
+
+    @Value("${ena.file_move.sshControlPersistSeconds:300}")
+    private int controlPersistSeconds;
+
+    @Value("${ena.file_move.sshHealthCheckIntervalSeconds:60}")
+    private int healthCheckIntervalSeconds;
+
+    private ScheduledExecutorService healthCheckExecutor;
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!multiplexing) {
+            return;
+        }
+
+        Files.createDirectories(Paths.get(controlDir));
+
+        if (healthCheckIntervalSeconds > 0) {
+            healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ssh-health-check-"));
+            healthCheckExecutor.scheduleWithFixedDelay(
+                    this::checkConnection, healthCheckIntervalSeconds, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (healthCheckExecutor != null) {
+            healthCheckExecutor.shutdownNow();
+        }
+        if (multiplexing) {
+            closeConnection();
+        }
+    }
+
+    public String getRemoteHostName() {
+        return remoteHostName;
+    }
+
+    /**
+     * @param remoteCommand the command to run on the remote host
+     * @return the command line that runs the given command on the remote host through the shared connection
+     */
+    public String[] remoteCommand(String remoteCommand) {
+        List<String> command = sshCommandWithOptions();
+        command.add(remoteLogin());
+        command.add(remoteCommand);
+
+        return command.toArray(new String[0]);
+    }
+
+    /**
+     * Opens the master connection unless there is a healthy one already,
+     * so that parallel sessions do not race to become the master.
+     */
+    public synchronized void ensureConnected() {
+        if (!multiplexing || isConnected()) {
+            return;
+        }
+
+        LOGGER.info("Opening the SSH master connection to {}.", remoteHostName);
+
+        if (runCommand(remoteCommand("true")) != 0) {
+            LOGGER.warn("Could not open the SSH master connection to {}.", remoteHostName);
+        }
+    }
+
+    public boolean isConnected() {
+        return multiplexing && runCommand(controlCommand("check")) == 0;
+    }
+
+    /**
+     * Tears down the master connection if it does not answer, so the next session opens a new one.
+     */
+    public synchronized void checkConnection() {
+        if (!isConnected()) {
+            LOGGER.debug("There is no healthy SSH master connection to {}.", remoteHostName);
+            closeConnection();
+        }
+    }
+
+    public synchronized void closeConnection() {
+        runCommand(controlCommand("exit"));
+    }
+
+    private List<String> sshCommandWithOptions() {
+        List<String> command = new ArrayList<>();
+        command.add(sshCommand);
+
+        if (multiplexing) {
+            command.addAll(Arrays.asList(
+                    "-o", "ControlMaster=auto",
+                    "-o", "ControlPath=" + controlPath(),
+                    "-o", "ControlPersist=" + controlPersistSeconds,
+                    "-o", "ServerAliveInterval=30",
+                    "-o", "ServerAliveCountMax=3"
+            ));
+        }
+
+        return command;
+    }
+
+    private String[] controlCommand(String controlOperation) {
+        return new String[]{
+                sshCommand,
+                "-O", controlOperation,
+                "-o", "ControlPath=" + controlPath(),
+                remoteLogin()
+        };
+    }
+
+    private String controlPath() {
+        return String.join(File.separator, controlDir, "%C");
+    }
+
+    private int runCommand(String[] command) {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(new File(logFilePath)));
+
+        try {
+            Process process = processBuilder.start();
+            if (!process.waitFor(CONTROL_COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                LOGGER.warn("The SSH command {} timed out.", Arrays.toString(command));
+                return -1;
+            }
+            return process.exitValue();
+        } catch (IOException e) {
+            LOGGER.warn("The SSH command {} went wrong: {}.", Arrays.toString(command), e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private String remoteLogin() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fileMoveUsername);
+        sb.append("@");
+        sb.append(remoteHostName);
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,319 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves files on the file move host, over SSH, with ENA's file move script.
+ * A single SSH session runs the move script for every file of a batch
+ * and reports back the outcome of each file on its standard output.
+ * The sessions share the SSH connection managed by {@link SshConnectionManager}.
+ */
+@Component
+public class SshFileMoveTransport implements FileMoveTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshFileMoveTransport.class);
+
+    @Value("${ena.file_move.webinFolderPath}")
+    private String webinFolderPath;
+
+    @Value("${ena.file_move.scriptPath}")
+    private String scriptPath;
+
+    @Value("${ena.file_move.logFilePath}")
+    private String logFilePath;
+
+    @Value("${spring.profiles.active:dev}")
+    private String activeProfile;
+
+    @Value("${ena.file_move.archivedFileCheckTimeoutSeconds:60}")
+    private long archivedFileCheckTimeoutSeconds;
+
+    private final SshConnectionManager sshConnectionManager;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private final FileMoveWatchdog fileMoveWatchdog;
+
+    private static final String FILE_SEPARATOR = System.getProperty("file.separator");
+
+    static final String MOVE_SUCCEEDED = "OK";
+    static final String MOVE_FAILED = "FAILED";
+    static final String MOVE_TIMED_OUT = "TIMEDOUT";
+
+    /**
+     * How long the remote {@code timeout} waits for a move to end once it has timed out, before killing it.
+     */
+    static final long REMOTE_KILL_AFTER_SECONDS = 10;
+
+    @Autowired
+    public SshFileMoveTransport(SshConnectionManager sshConnectionManager, EnaAgentMetrics enaAgentMetrics,
+                                FileMoveWatchdog fileMoveWatchdog) {
+        this.sshConnectionManager = sshConnectionManager;
+        this.enaAgentMetrics = enaAgentMetrics;
+        this.fileMoveWatchdog = fileMoveWatchdog;
+    }
+
+    @Override
+    public String getHostName() {
+        return sshConnectionManager.getRemoteHostName();
+    }
+
+    @Override
+    public void prepare() {
+        sshConnectionManager.ensureConnected();
+    }
+
+    @Override
+    public List<FileMoveResult> moveBatch(String sourceBasePath, Map<String, UploadedFile> filesByRelativePath) {
+        String[] moveCommandToExecute = sshConnectionManager.remoteCommand(batchFileMoveCommand(sourceBasePath));
+
+        LOGGER.info("Executing the following command for {} files: {}.", filesByRelativePath.size(), Arrays.toString(moveCommandToExecute));
+
+        return executeFileMoveCommand(filesByRelativePath, moveCommandToExecute);
+    }
+
+    /**
+     * Runs a remote command that reads the relative paths from its standard input and prints back the ones found
+     * under the folder of the active profile in the 'webin' folder, so the files are checked over a single SSH session.
+     * The command is killed if it has not finished within ena.file_move.archivedFileCheckTimeoutSeconds.
+     *
+     * @throws IllegalStateException if the command could not be run, timed out or ended with a non-zero exit code
+     */
+    @Override
+    public Set<String> findArchivedFiles(Collection<String> relativeFilePaths) {
+        final Set<String> archivedFiles = new HashSet<>();
+        final String[] checkCommandToExecute = sshConnectionManager.remoteCommand(archivedFilesCommand());
+        Path fileList = null;
+
+        try {
+            fileList = Files.createTempFile("ena-file-check", ".lst");
+            Files.write(fileList, relativeFilePaths, StandardCharsets.UTF_8);
+
+            ProcessBuilder processBuilder = new ProcessBuilder(checkCommandToExecute);
+            processBuilder.redirectInput(fileList.toFile());
+            processBuilder.redirectError(redirectOutput(new File(logFilePath)));
+            Process process = processBuilder.start();
+
+            final AtomicBoolean timedOut = new AtomicBoolean();
+            CompletableFuture.runAsync(() -> {
+                if (process.isAlive()) {
+                    timedOut.set(true);
+                    process.destroyForcibly();
+                }
+            }, CompletableFuture.delayedExecutor(archivedFileCheckTimeoutSeconds, TimeUnit.SECONDS));
+
+            try (BufferedReader pathReader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String path;
+                while ((path = pathReader.readLine()) != null) {
+                    if (relativeFilePaths.contains(path)) {
+                        archivedFiles.add(path);
+                    }
+                }
+            }
+
+            if (!process.waitFor(archivedFileCheckTimeoutSeconds, TimeUnit.SECONDS)) {
+                timedOut.set(true);
+                process.destroyForcibly();
+            }
+            if (timedOut.get()) {
+                throw new IllegalStateException(String.format(
+                        "The archived file check did not finish within %d seconds.", archivedFileCheckTimeoutSeconds));
+            }
+            if (process.exitValue() != 0) {
+                throw new IllegalStateException(String.format(
+                        "The archived file check ended with exit code %d.", process.exitValue()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("The archived file check went wrong.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The archived file check has been interrupted.", e);
+        } finally {
+            deleteFileList(fileList);
+        }
+
+        return archivedFiles;
+    }
+
+    /**
+     * Runs the batch move command and reads the status line of each file.
+     * The files of a batch are moved one after the other, so the time between two status lines
+     * is the time the second file took to move, and the {@link FileMoveWatchdog} is told which file comes next.
+     * If the watchdog kills the command, the file it was moving is reported as timed out.
+     */
+    private List<FileMoveResult> executeFileMoveCommand(Map<String, UploadedFile> fileByRelativePath, String[] moveCommandToExecute) {
+        Map<String, FileMoveResult> resultsByRelativePath = new LinkedHashMap<>();
+        Path fileList = null;
+
+        try {
+            fileList = Files.createTempFile("ena-file-move", ".lst");
+            final List<String> timedFilePaths = new ArrayList<>(fileByRelativePath.size());
+            fileByRelativePath.forEach((relativeFilePath, uploadedFile) ->
+                    timedFilePaths.add(fileMoveWatchdog.remoteTimeoutSeconds(uploadedFile) + " " + relativeFilePath));
+            Files.write(fileList, timedFilePaths, StandardCharsets.UTF_8);
+
+            ProcessBuilder processBuilder = new ProcessBuilder(moveCommandToExecute);
+            processBuilder.redirectInput(fileList.toFile());
+            processBuilder.redirectError(redirectOutput(new File(logFilePath)));
+            Process process = processBuilder.start();
+            final Iterator<UploadedFile> filesInMoveOrder = fileByRelativePath.values().iterator();
+
+            try (FileMoveWatchdog.InFlightMove inFlightMove = fileMoveWatchdog.watch(process, filesInMoveOrder.next());
+                 BufferedReader statusReader = new BufferedReader(
+                         new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String statusLine;
+                long previousStatusAt = System.nanoTime();
+                while ((statusLine = statusReader.readLine()) != null) {
+                    final UploadedFile uploadedFile = readStatusLine(statusLine, fileByRelativePath, resultsByRelativePath);
+                    final long statusAt = System.nanoTime();
+                    if (uploadedFile != null) {
+                        enaAgentMetrics.recordFileMove(uploadedFile, statusAt - previousStatusAt);
+                        if (filesInMoveOrder.hasNext()) {
+                            inFlightMove.moving(filesInMoveOrder.next());
+                        }
+                    }
+                    previousStatusAt = statusAt;
+                }
+                process.waitFor();
+
+                if (inFlightMove.isTimedOut()) {
+                    final UploadedFile timedOutFile = inFlightMove.getTimedOutFile();
+                    fileByRelativePath.forEach((relativeFilePath, uploadedFile) -> {
+                        final FileMoveResult reportedResult = resultsByRelativePath.get(relativeFilePath);
+                        if (uploadedFile == timedOutFile && (reportedResult == null || !reportedResult.isSuccessful())) {
+                            resultsByRelativePath.put(relativeFilePath,
+                                    FileMoveResult.failed(timedOutFile.getPath(), inFlightMove.getTimeoutMessage()));
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("The file move command went wrong: {}.", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("The file move command has been interrupted.");
+        } finally {
+            deleteFileList(fileList);
+        }
+
+        List<FileMoveResult> results = new ArrayList<>(fileByRelativePath.size());
+        fileByRelativePath.forEach((relativeFilePath, uploadedFile) -> {
+            FileMoveResult result = resultsByRelativePath.get(relativeFilePath);
+            if (result == null) {
+                result = FileMoveResult.failed(uploadedFile.getPath(), "The file move command did not report the outcome of the file.");
+            }
+            results.add(result);
+        });
+
+        return results;
+    }
+
+    /**
+     * @return the file the status line is about, or null if the line is not a status line
+     */
+    private UploadedFile readStatusLine(String statusLine, Map<String, UploadedFile> fileByRelativePath,
+                                        Map<String, FileMoveResult> resultsByRelativePath) {
+        final int separatorIndex = statusLine.indexOf(' ');
+        if (separatorIndex < 0) {
+            LOGGER.warn("Unexpected output from the file move command: {}.", statusLine);
+            return null;
+        }
+
+        final String status = statusLine.substring(0, separatorIndex);
+        final String relativeFilePath = statusLine.substring(separatorIndex + 1);
+        final UploadedFile uploadedFile = fileByRelativePath.get(relativeFilePath);
+
+        if (uploadedFile == null) {
+            LOGGER.warn("Unexpected output from the file move command: {}.", statusLine);
+        } else if (MOVE_SUCCEEDED.equals(status)) {
+            resultsByRelativePath.put(relativeFilePath, FileMoveResult.succeeded(uploadedFile.getPath()));
+        } else if (MOVE_TIMED_OUT.equals(status)) {
+            resultsByRelativePath.put(relativeFilePath, FileMoveResult.failed(uploadedFile.getPath(),
+                    String.format("The move of file %s timed out after %d seconds.",
+                            uploadedFile.getPath(), fileMoveWatchdog.remoteTimeoutSeconds(uploadedFile))));
+        } else {
+            resultsByRelativePath.put(relativeFilePath, FileMoveResult.failed(uploadedFile.getPath(),
+                    String.format("The file move command went wrong with file: %s.", uploadedFile.getPath())));
+        }
+
+        return uploadedFile;
+    }
+
+    private void deleteFileList(Path fileList) {
+        if (fileList == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(fileList);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete the temporary file list {}.", fileList);
+        }
+    }
+
+    private ProcessBuilder.Redirect redirectOutput(File logFile) {
+        return ProcessBuilder.Redirect.appendTo(logFile);
+    }
+
+    /**
+     * Builds the remote command that reads relative file paths from its standard input, one per line,
+     * and prints back the ones that are files under the folder of the active profile in the 'webin' folder.
+     */
+    public String archivedFilesCommand() {
+        return "cd " + String.join(FILE_SEPARATOR, webinFolderPath, activeProfile) + " && "
+                + "while read -r f; do "
+                + "if [ -f \"$f\" ]; then echo \"$f\"; fi; "
+                + "done";
+    }
+
+    /**
+     * Builds the remote command that reads a timeout in seconds and a relative file path from each line of its standard input
+     * and runs the move script for each of them under {@code timeout},
+     * which kills the move script and whatever it started once the file has taken longer than its timeout.
+     * The output of the move script goes to standard error, which ends up in the file move log,
+     * so that standard output only carries one status line per file.
+     */
+    public String batchFileMoveCommand(String sourceBasePath) {
+        final String moveScriptCommand = String.join(" ",
+                "timeout -k " + REMOTE_KILL_AFTER_SECONDS + " \"$t\"",
+                String.join(FILE_SEPARATOR, scriptPath, "move_file_to_archive_storage.sh"),
+                "\"$f\"",
+                sourceBasePath,
+                webinFolderPath,
+                activeProfile
+        );
+
+        return "while read -r t f; do "
+                + moveScriptCommand + " </dev/null 1>&2; s=$?; "
+                + "if [ $s -eq 0 ]; then echo \"" + MOVE_SUCCEEDED + " $f\"; "
+                + "elif [ $s -eq 124 ] || [ $s -eq 137 ]; then echo \"" + MOVE_TIMED_OUT + " $f\"; "
+                + "else echo \"" + MOVE_FAILED + " $f\"; fi; "
+                + "done";
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks in the background so that tasks with the same key run one after the other, in the order they were submitted,
+ * while tasks with different keys never wait for each other.
+ * It keeps the last task of each key with tasks pending, and chains the next task of that key after it;
+ * a key is forgotten once its last task is done.
+ * Tasks run on a fixed number of threads; the tasks ready to run while all of them are busy wait for one to be free.
+ */
+public class KeyedSerialExecutor {
+
+    private static final String NULL_KEY = "";
+
+    private final ConcurrentMap<String, CompletableFuture<?>> lastTasks = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService;
+
+    public KeyedSerialExecutor(int threads, String threadNamePrefix) {
+        executorService = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * Runs the task once the tasks submitted before it with the same key are done, whether they succeeded or not.
+     *
+     * @return the pending result of the task, completed with the exception the task threw, if any
+     */
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+        final String lastTaskKey = key == null ? NULL_KEY : key;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        final CompletableFuture<?> lastTask = lastTasks.compute(lastTaskKey, (k, previousTask) -> previousTask == null
+                ? CompletableFuture.runAsync(() -> run(task, result), executorService)
+                : previousTask.handle((previousResult, e) -> null).thenRunAsync(() -> run(task, result), executorService));
+        lastTask.whenComplete((ignored, e) -> lastTasks.remove(lastTaskKey, lastTask));
+
+        return result;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @return the number of keys with tasks pending
+     */
+    int pendingKeys() {
+        return lastTasks.size();
+    }
+
+    private static <T> void run(Supplier<T> task, CompletableFuture<T> result) {
+        try {
+            result.complete(task.get());
+        } catch (RuntimeException | Error e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
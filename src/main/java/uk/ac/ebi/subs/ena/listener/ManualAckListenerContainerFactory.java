@@ -0,0 +1,48 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.io.IOException;
+
+/**
+ * Makes listener containers that work with listeners acknowledging their messages by hand, i.e. with {@link AcknowledgeMode#MANUAL}.
+ * A container acknowledging by hand leaves a message unacknowledged when its listener throws,
+ * e.g. when the message can not be converted, which would hold up the consumer for good once its prefetch is used up.
+ * So a message whose listener throws is rejected without being requeued, and goes to the dead letter exchange of its queue if it has one.
+ * Listeners must therefore not throw once they have acknowledged their message or sent it back to the queue.
+ */
+public class ManualAckListenerContainerFactory extends SimpleRabbitListenerContainerFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManualAckListenerContainerFactory.class);
+
+    @Override
+    protected void initializeContainer(SimpleMessageListenerContainer instance) {
+        super.initializeContainer(instance);
+
+        if (instance.getAcknowledgeMode() == AcknowledgeMode.MANUAL
+                && instance.getMessageListener() instanceof ChannelAwareMessageListener) {
+            instance.setMessageListener(rejectingOnFailure((ChannelAwareMessageListener) instance.getMessageListener()));
+        }
+    }
+
+    private static ChannelAwareMessageListener rejectingOnFailure(ChannelAwareMessageListener listener) {
+        return (message, channel) -> {
+            try {
+                listener.onMessage(message, channel);
+            } catch (Exception e) {
+                final long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                try {
+                    channel.basicReject(deliveryTag, false);
+                } catch (IOException rejectException) {
+                    LOGGER.error("Could not reject message {}.", deliveryTag, rejectException);
+                }
+                throw e;
+            }
+        };
+    }
+}
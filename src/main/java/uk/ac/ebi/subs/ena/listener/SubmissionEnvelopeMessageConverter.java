@@ -0,0 +1,148 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the submission envelope of a message straight from its body with Jackson's streaming parser,
+ * binding the submittables and uploaded files to their classes as they are read,
+ * with no copy of the body as a string and no tree of the whole document in between.
+ *
+ * A body compressed with gzip or deflate, as given by the content encoding of the message, is decompressed as it is parsed.
+ * Any other content encoding is taken as the charset of the body, like the JSON message converters of Spring AMQP do.
+ */
+public class SubmissionEnvelopeMessageConverter implements MessageConverter {
+
+    public static final String IDENTITY = "identity";
+
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The content encodings the converter reads, the charset of uncompressed bodies counting as identity.
+     */
+    public static final List<String> ENCODINGS = Collections.unmodifiableList(Arrays.asList(IDENTITY, GZIP, DEFLATE));
+
+    private final ObjectReader envelopeReader;
+
+    private final ObjectWriter envelopeWriter;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    public SubmissionEnvelopeMessageConverter(ObjectMapper objectMapper, EnaAgentMetrics enaAgentMetrics) {
+        this.envelopeReader = objectMapper.readerFor(SubmissionEnvelope.class);
+        this.envelopeWriter = objectMapper.writerFor(SubmissionEnvelope.class);
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    /**
+     * Writes the envelope as uncompressed JSON, for the messages the agent sends to itself, e.g. in tests.
+     */
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        try {
+            final byte[] body = envelopeWriter.writeValueAsBytes(object);
+            messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+            messageProperties.setContentLength(body.length);
+            return new Message(body, messageProperties);
+        } catch (JsonProcessingException e) {
+            throw new MessageConversionException("Could not write the submission envelope.", e);
+        }
+    }
+
+    /**
+     * @throws MessageConversionException if the body is not a submission envelope in a content encoding the converter reads,
+     * in which case the message is rejected rather than delivered again, see {@link ManualAckListenerContainerFactory}
+     */
+    @Override
+    public SubmissionEnvelope fromMessage(Message message) {
+        final long start = enaAgentMetrics.start();
+        final String contentEncoding = message.getMessageProperties().getContentEncoding();
+        final String compression = compression(contentEncoding);
+
+        try (InputStream body = decompress(new ByteArrayInputStream(message.getBody()), compression)) {
+            final SubmissionEnvelope submissionEnvelope = IDENTITY.equals(compression) && !isUtf8(contentEncoding)
+                    ? envelopeReader.readValue(new InputStreamReader(body, Charset.forName(contentEncoding.trim())))
+                    : envelopeReader.readValue(body);
+            enaAgentMetrics.recordEnvelopeRead(compression, message.getBody().length, start);
+            return submissionEnvelope;
+        } catch (IOException e) {
+            throw new MessageConversionException(String.format(
+                    "Could not read the submission envelope of a message of %d bytes with content encoding %s.",
+                    message.getBody().length, contentEncoding), e);
+        }
+    }
+
+    /**
+     * @return the compression named by the content encoding, or identity if it names a charset or nothing
+     * @throws MessageConversionException if the content encoding is neither a compression the converter reads nor a charset
+     */
+    static String compression(String contentEncoding) {
+        if (contentEncoding == null || contentEncoding.isEmpty()) {
+            return IDENTITY;
+        }
+
+        final String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (ENCODINGS.contains(encoding)) {
+            return encoding;
+        }
+        if ("x-gzip".equals(encoding)) {
+            return GZIP;
+        }
+        if (isCharset(contentEncoding)) {
+            return IDENTITY;
+        }
+
+        throw new MessageConversionException(String.format(
+                "The content encoding %s is not supported, the submission envelope should come as one of %s.",
+                contentEncoding, ENCODINGS));
+    }
+
+    private static InputStream decompress(InputStream body, String compression) throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(body);
+            case DEFLATE:
+                return new InflaterInputStream(body);
+            default:
+                return body;
+        }
+    }
+
+    private static boolean isCharset(String contentEncoding) {
+        try {
+            return Charset.isSupported(contentEncoding.trim());
+        } catch (IllegalCharsetNameException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUtf8(String contentEncoding) {
+        return contentEncoding == null || contentEncoding.isEmpty() || IDENTITY.equalsIgnoreCase(contentEncoding.trim())
+                || Charset.forName(contentEncoding.trim()).equals(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+/**
+ * Sets up how the agent consumes submissions.
+ * Several consumers take submissions off the queue, each prefetching only a few of them,
+ * so that small submissions are not held up behind a large one that is being processed.
+ * The processing itself runs on a {@link KeyedSerialExecutor} keyed by submission ID,
+ * so a submission that is redelivered while it is still being processed waits for the first delivery to finish.
+ * Submissions are acknowledged by hand once their results are sent, or confirmed when the results are sent with publisher confirms,
+ * see {@link uk.ac.ebi.subs.ena.publisher.CertificatePublisher}, so a submission can be sent back to the queue without an error,
+ * and a message that can not be read is rejected, see {@link ManualAckListenerContainerFactory}.
+ * Unless ena.listener.streamingEnvelopes is off, submission envelopes are read with a {@link SubmissionEnvelopeMessageConverter},
+ * which also takes envelopes compressed with gzip or deflate.
+ * Sample updates have consumers of their own, see {@link uk.ac.ebi.subs.ena.sample.SampleUpdateCoalescer}.
+ */
+@Configuration
+public class SubmissionListenerConfiguration {
+
+    public static final String SUBMISSION_LISTENER_CONTAINER_FACTORY = "submissionListenerContainerFactory";
+
+    public static final String SAMPLE_UPDATE_LISTENER_CONTAINER_FACTORY = "sampleUpdateListenerContainerFactory";
+
+    @Value("${ena.listener.concurrency:4}")
+    private int concurrency;
+
+    @Value("${ena.listener.maxConcurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${ena.listener.prefetch:1}")
+    private int prefetch;
+
+    @Value("${ena.listener.streamingEnvelopes:true}")
+    private boolean streamingEnvelopes;
+
+    @Value("${ena.publisher.confirms:false}")
+    private boolean publisherConfirms;
+
+    @Value("${ena.sample_update.consumers:4}")
+    private int sampleUpdateConsumers;
+
+    @Value("${ena.sample_update.prefetch:250}")
+    private int sampleUpdatePrefetch;
+
+    @Bean(name = SUBMISSION_LISTENER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory submissionListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            ObjectMapper objectMapper, EnaAgentMetrics enaAgentMetrics) {
+        SimpleRabbitListenerContainerFactory factory = new ManualAckListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        if (streamingEnvelopes) {
+            factory.setMessageConverter(new SubmissionEnvelopeMessageConverter(objectMapper, enaAgentMetrics));
+        }
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+
+        return factory;
+    }
+
+    /**
+     * Sample update consumers do not wait for their window of updates to reach ENA:
+     * messages are acknowledged by hand once their samples have been sent,
+     * so the prefetch count of the consumers bounds how many messages a window can gather.
+     */
+    @Bean(name = SAMPLE_UPDATE_LISTENER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory sampleUpdateListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new ManualAckListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(sampleUpdateConsumers);
+        factory.setMaxConcurrentConsumers(sampleUpdateConsumers);
+        factory.setPrefetchCount(sampleUpdatePrefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+
+        return factory;
+    }
+
+    /**
+     * Processes as many submissions at once as the messages the submission listener can hold unacknowledged,
+     * i.e. one per consumer, or up to the prefetch count per consumer when the results are sent with publisher confirms,
+     * as the consumers then do not wait for the processing.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KeyedSerialExecutor submissionSerialExecutor() {
+        final int consumers = Math.max(concurrency, maxConcurrency);
+        return new KeyedSerialExecutor(publisherConfirms ? consumers * Math.max(1, prefetch) : consumers, "submission-");
+    }
+}
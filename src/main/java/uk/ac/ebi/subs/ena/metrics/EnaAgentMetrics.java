@@ -0,0 +1,376 @@
+package uk.ac.ebi.subs.ena.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.filemove.ArchivedFileCache;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionController;
+import uk.ac.ebi.subs.ena.filemove.FileMoveScheduler;
+import uk.ac.ebi.subs.ena.listener.SubmissionEnvelopeMessageConverter;
+import uk.ac.ebi.subs.ena.progress.SubmissionProgressRegistry;
+import uk.ac.ebi.subs.ena.publisher.CertificatePublisher;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The metrics of the agent: how long each stage of processing a submission takes,
+ * how long each file takes to move by file size, and how many file moves and submissions fail.
+ * All the meters are registered up front, so recording a measurement does not allocate.
+ * Besides the Micrometer registry, the metrics are published on the actuator's /metrics endpoint,
+ * where Spring Boot Admin picks them up.
+ */
+@Component
+public class EnaAgentMetrics implements PublicMetrics {
+
+    static final String PREFIX = "ena.agent";
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final long[] FILE_SIZE_BUCKET_LIMITS = {MB, 100 * MB, 1024 * MB, 10 * 1024 * MB};
+    private static final String[] FILE_SIZE_BUCKET_NAMES = {"<1MB", "1MB-100MB", "100MB-1GB", "1GB-10GB", ">10GB"};
+    private static final String UNKNOWN_FILE_SIZE = "unknown";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer fileMoveStage;
+    private final Timer injectPathsStage;
+    private final Timer enaProcessStage;
+    private final Timer certificateBuildStage;
+    private final Timer publishStage;
+
+    private final Timer enaCalls;
+
+    private final Timer[] fileMovesBySize;
+    private final Timer fileMovesOfUnknownSize;
+
+    private final Map<String, Timer> envelopeReadsByEncoding = new HashMap<>();
+    private final Map<String, DistributionSummary> envelopeSizesByEncoding = new HashMap<>();
+
+    private final Counter fileMoveFailures;
+    private final Counter fileMoveRetries;
+    private final Counter fileMoveDeadLetters;
+    private final Counter checksumMismatches;
+    private final Counter fileMoveAdmissionDenials;
+    private final Counter fileMoveSkips;
+    private final Counter certificatePublishNacks;
+
+    private final Counter completedSubmissions;
+    private final Counter erroneousSubmissions;
+    private final Counter failedSubmissions;
+
+    @Autowired
+    public EnaAgentMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        fileMoveStage = stageTimer("file_move");
+        injectPathsStage = stageTimer("inject_paths");
+        enaProcessStage = stageTimer("ena_process");
+        certificateBuildStage = stageTimer("certificate_build");
+        publishStage = stageTimer("publish");
+
+        enaCalls = Timer.builder(PREFIX + ".ena.call")
+                .description("Time taken by each call to ENA, i.e. by a whole submission or by one of its parts")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        fileMovesBySize = new Timer[FILE_SIZE_BUCKET_NAMES.length];
+        for (int i = 0; i < FILE_SIZE_BUCKET_NAMES.length; i++) {
+            fileMovesBySize[i] = fileMoveTimer(FILE_SIZE_BUCKET_NAMES[i]);
+        }
+        fileMovesOfUnknownSize = fileMoveTimer(UNKNOWN_FILE_SIZE);
+
+        for (String encoding : SubmissionEnvelopeMessageConverter.ENCODINGS) {
+            envelopeReadsByEncoding.put(encoding, Timer.builder(PREFIX + ".envelope.read")
+                    .description("Time taken to read a submission envelope from its message, by content encoding")
+                    .tag("encoding", encoding)
+                    .register(meterRegistry));
+            envelopeSizesByEncoding.put(encoding, DistributionSummary.builder(PREFIX + ".envelope.size")
+                    .description("Size of the messages submission envelopes come in, by content encoding")
+                    .baseUnit("bytes")
+                    .tag("encoding", encoding)
+                    .register(meterRegistry));
+        }
+
+        fileMoveFailures = Counter.builder(PREFIX + ".file_move.failures")
+                .description("Files that could not be moved to ENA's 'webin' folder")
+                .register(meterRegistry);
+        fileMoveRetries = Counter.builder(PREFIX + ".file_move.retries")
+                .description("Files moved again after a failed move")
+                .register(meterRegistry);
+        fileMoveDeadLetters = Counter.builder(PREFIX + ".file_move.dead_letters")
+                .description("Files that could not be moved within their attempts and were reported in error")
+                .register(meterRegistry);
+        checksumMismatches = Counter.builder(PREFIX + ".checksum.mismatches")
+                .description("Files whose bytes do not match the checksum they were uploaded with")
+                .register(meterRegistry);
+        fileMoveAdmissionDenials = Counter.builder(PREFIX + ".file_move.admission.denials")
+                .description("Submissions sent back to the queue because their files did not fit in the file move budget")
+                .register(meterRegistry);
+        fileMoveSkips = Counter.builder(PREFIX + ".file_move.skipped")
+                .description("Files not moved as they were already in ENA's 'webin' folder")
+                .register(meterRegistry);
+        certificatePublishNacks = Counter.builder(PREFIX + ".publisher.nacks")
+                .description("Certificate envelopes the broker did not confirm")
+                .register(meterRegistry);
+
+        completedSubmissions = submissionCounter("completed");
+        erroneousSubmissions = submissionCounter("error");
+        failedSubmissions = submissionCounter("failed");
+    }
+
+    /**
+     * @return the current time, to pass to the stage recording methods once the stage is over
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void recordFileMoveStage(long startNanos) {
+        record(fileMoveStage, startNanos);
+    }
+
+    public void recordInjectPathsStage(long startNanos) {
+        record(injectPathsStage, startNanos);
+    }
+
+    /**
+     * Records how long ENA took with a submission, from its first call to ENA to the end of its last one.
+     */
+    public void recordEnaProcessStage(long startNanos) {
+        record(enaProcessStage, startNanos);
+    }
+
+    /**
+     * Records how long a single call to ENA took, of which a submission sent in parts makes several.
+     */
+    public void recordEnaCall(long startNanos) {
+        record(enaCalls, startNanos);
+    }
+
+    public void recordCertificateBuildStage(long startNanos) {
+        record(certificateBuildStage, startNanos);
+    }
+
+    public void recordPublishStage(long startNanos) {
+        record(publishStage, startNanos);
+    }
+
+    /**
+     * Records how long the given file took to move, under the size bucket of the file.
+     */
+    public void recordFileMove(UploadedFile uploadedFile, long durationNanos) {
+        fileMoveTimer(uploadedFile).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records how long a submission envelope took to read from a message of the given size and content encoding.
+     */
+    public void recordEnvelopeRead(String encoding, int messageBytes, long startNanos) {
+        record(envelopeReadsByEncoding.get(encoding), startNanos);
+        envelopeSizesByEncoding.get(encoding).record(messageBytes);
+    }
+
+    public void recordFileMoveFailures(int failures) {
+        fileMoveFailures.increment(failures);
+    }
+
+    public void recordFileMoveRetries(int retries) {
+        fileMoveRetries.increment(retries);
+    }
+
+    public void recordFileMoveDeadLetters(int deadLetters) {
+        fileMoveDeadLetters.increment(deadLetters);
+    }
+
+    public void recordChecksumMismatches(int mismatches) {
+        checksumMismatches.increment(mismatches);
+    }
+
+    public void recordFileMoveAdmissionDenials(int denials) {
+        fileMoveAdmissionDenials.increment(denials);
+    }
+
+    public void recordFileMoveSkips(int skips) {
+        fileMoveSkips.increment(skips);
+    }
+
+    public void recordCertificatePublishNacks(int nacks) {
+        certificatePublishNacks.increment(nacks);
+    }
+
+    /**
+     * Publishes how many certificate envelopes are waiting to be sent and waiting for the broker to confirm them.
+     */
+    public void registerCertificatePublisher(CertificatePublisher certificatePublisher) {
+        Gauge.builder(PREFIX + ".publisher.buffered", certificatePublisher, CertificatePublisher::getBuffered)
+                .description("Certificate envelopes waiting to be sent")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".publisher.unconfirmed", certificatePublisher, CertificatePublisher::getUnconfirmed)
+                .description("Certificate envelopes sent but not confirmed by the broker yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes how many files the archived file cache holds.
+     */
+    public void registerArchivedFileCache(ArchivedFileCache archivedFileCache) {
+        Gauge.builder(PREFIX + ".file_move.archived_file_cache.size", archivedFileCache, ArchivedFileCache::size)
+                .description("Files known to be in ENA's 'webin' folder already")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes the file move budget and how much of it is in use.
+     */
+    public void registerFileMoveAdmission(FileMoveAdmissionController admissionController) {
+        Gauge.builder(PREFIX + ".file_move.admission.budget_bytes", admissionController,
+                FileMoveAdmissionController::getMaxInFlightBytes)
+                .description("Bytes that may be moving at once")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".file_move.admission.budget_moves", admissionController,
+                FileMoveAdmissionController::getMaxInFlightMoves)
+                .description("Files that may be moving at once")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".file_move.admission.in_flight_bytes", admissionController,
+                FileMoveAdmissionController::getInFlightBytes)
+                .description("Bytes of the files being moved")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".file_move.admission.in_flight_moves", admissionController,
+                FileMoveAdmissionController::getInFlightMoves)
+                .description("Files being moved")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".file_move.admission.waiting", admissionController,
+                FileMoveAdmissionController::getWaiting)
+                .description("Submissions waiting for their files to fit in the budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes how long the file moves queued or in flight on the scheduler are expected to take.
+     */
+    public void registerFileMoveScheduler(FileMoveScheduler fileMoveScheduler) {
+        Gauge.builder(PREFIX + ".file_move.expected_remaining_seconds", fileMoveScheduler,
+                scheduler -> scheduler.getExpectedRemainingMillis() / 1000.0)
+                .description("Time the queued and running file moves are expected to take to finish")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes how many submissions are being processed and how long the oldest of them has been going on.
+     */
+    public void registerSubmissionProgressRegistry(SubmissionProgressRegistry submissionProgressRegistry) {
+        Gauge.builder(PREFIX + ".submissions.in_flight", submissionProgressRegistry, SubmissionProgressRegistry::getInFlight)
+                .description("Submissions being processed")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".submissions.oldest_age_seconds", submissionProgressRegistry,
+                registry -> registry.getOldestAgeMillis() / 1000.0)
+                .description("Time the oldest submission being processed has been going on")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a submission whose results have been sent, by whether ENA reported errors.
+     */
+    public void recordSubmissionOutcome(boolean hasErrors) {
+        (hasErrors ? erroneousSubmissions : completedSubmissions).increment();
+    }
+
+    /**
+     * Counts a submission that could not be processed and will be redelivered.
+     */
+    public void recordSubmissionFailure() {
+        failedSubmissions.increment();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        meterRegistry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().startsWith(PREFIX))
+                .forEach(meter -> {
+                    final String name = publicName(meter);
+                    if (meter instanceof Timer) {
+                        final Timer timer = (Timer) meter;
+                        metrics.add(new Metric<>(name + ".count", timer.count()));
+                        metrics.add(new Metric<>(name + ".totalTimeMs", timer.totalTime(TimeUnit.MILLISECONDS)));
+                        metrics.add(new Metric<>(name + ".maxMs", timer.max(TimeUnit.MILLISECONDS)));
+                    } else if (meter instanceof DistributionSummary) {
+                        final DistributionSummary summary = (DistributionSummary) meter;
+                        metrics.add(new Metric<>(name + ".count", summary.count()));
+                        metrics.add(new Metric<>(name + ".total", summary.totalAmount()));
+                        metrics.add(new Metric<>(name + ".max", summary.max()));
+                    } else if (meter instanceof Counter) {
+                        metrics.add(new Metric<>(name, ((Counter) meter).count()));
+                    } else if (meter instanceof Gauge) {
+                        metrics.add(new Metric<>(name, ((Gauge) meter).value()));
+                    }
+                });
+
+        return metrics;
+    }
+
+    private Timer fileMoveTimer(UploadedFile uploadedFile) {
+        final Long size = uploadedFile.getTotalSize();
+        if (size == null) {
+            return fileMovesOfUnknownSize;
+        }
+
+        int bucket = 0;
+        while (bucket < FILE_SIZE_BUCKET_LIMITS.length && size >= FILE_SIZE_BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+
+        return fileMovesBySize[bucket];
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder(PREFIX + ".stage")
+                .description("Time spent in each stage of processing a submission")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private Timer fileMoveTimer(String sizeBucket) {
+        return Timer.builder(PREFIX + ".file_move")
+                .description("Time taken to move a file to ENA's 'webin' folder, whichever transport moves it")
+                .tag("size", sizeBucket)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter submissionCounter(String outcome) {
+        return Counter.builder(PREFIX + ".submissions")
+                .description("Submissions processed by the agent, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String publicName(Meter meter) {
+        final List<Tag> tags = meter.getId().getTags();
+        if (tags.isEmpty()) {
+            return meter.getId().getName();
+        }
+
+        return meter.getId().getName() + "." + tags.stream().map(Tag::getValue).collect(Collectors.joining("."));
+    }
+}
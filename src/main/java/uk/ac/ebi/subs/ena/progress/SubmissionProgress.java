@@ -0,0 +1,131 @@
+package uk.ac.ebi.subs.ena.progress;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How far the agent has got with a submission it is processing.
+ * It is updated by the thread processing the submission and by the file move threads as each file arrives,
+ * with volatile fields and adders only, so updating it never waits for a reader or another writer.
+ * A reader sees each value as it was at some point, not all of them as of the same instant.
+ */
+public class SubmissionProgress {
+
+    /**
+     * What the agent is doing with the submission.
+     */
+    public enum Stage {
+        RECEIVED,
+        MOVING_FILES,
+        SUBMITTING_TO_ENA,
+        MOVING_FILES_AND_SUBMITTING_TO_ENA,
+        BUILDING_CERTIFICATES,
+        PUBLISHING
+    }
+
+    private static final long NO_ENA_CALL = Long.MIN_VALUE;
+
+    private final String submissionId;
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile Stage stage = Stage.RECEIVED;
+
+    private volatile int filesTotal;
+
+    private volatile long bytesTotal;
+
+    private final LongAdder filesMoved = new LongAdder();
+
+    private final LongAdder bytesMoved = new LongAdder();
+
+    private volatile long enaCallStartNanos = NO_ENA_CALL;
+
+    SubmissionProgress(String submissionId) {
+        this.submissionId = submissionId;
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Records the files the submission has to move, before any of them has moved.
+     */
+    public void setFilesToMove(int files, long bytes) {
+        this.filesTotal = files;
+        this.bytesTotal = bytes;
+    }
+
+    public void recordFileMoved(Long bytes) {
+        filesMoved.increment();
+        if (bytes != null) {
+            bytesMoved.add(bytes);
+        }
+    }
+
+    public void recordEnaCallStarted() {
+        enaCallStartNanos = System.nanoTime();
+    }
+
+    public void recordEnaCallFinished() {
+        enaCallStartNanos = NO_ENA_CALL;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getAgeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return how long the call to ENA in progress has been going on, or -1 if the agent is not waiting for ENA
+     */
+    public long getEnaCallMillis() {
+        final long callStartNanos = enaCallStartNanos;
+        return callStartNanos == NO_ENA_CALL ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - callStartNanos);
+    }
+
+    /**
+     * @return the share of the bytes to move that have been moved, or of the files if their sizes are not known,
+     * as a percentage
+     */
+    public double getPercentMoved() {
+        final long bytes = bytesTotal;
+        if (bytes > 0) {
+            return Math.min(100.0, 100.0 * bytesMoved.sum() / bytes);
+        }
+        final int files = filesTotal;
+        return files > 0 ? Math.min(100.0, 100.0 * filesMoved.sum() / files) : 100.0;
+    }
+
+    /**
+     * @return the progress as the endpoints show it
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("submissionId", submissionId);
+        progress.put("stage", stage);
+        progress.put("ageSeconds", getAgeMillis() / 1000);
+        progress.put("filesMoved", filesMoved.sum());
+        progress.put("filesTotal", filesTotal);
+        progress.put("bytesMoved", bytesMoved.sum());
+        progress.put("bytesTotal", bytesTotal);
+        progress.put("percentMoved", Math.round(getPercentMoved() * 10) / 10.0);
+        final long enaCallMillis = getEnaCallMillis();
+        progress.put("enaCallSeconds", enaCallMillis < 0 ? null : enaCallMillis / 1000);
+        return progress;
+    }
+}
@@ -0,0 +1,52 @@
+package uk.ac.ebi.subs.ena.progress;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The actuator endpoint at /submissions, which lists the submissions the agent is processing, the oldest first,
+ * with their stage, age, how much of their files have moved and how long the call to ENA in progress has taken.
+ * It also puts the number of submissions in flight and the oldest of them in /info,
+ * which Spring Boot Admin shows on the details page of the agent.
+ * It can be configured under endpoints.submissions like the endpoints of Spring Boot.
+ */
+@Component
+@ConfigurationProperties(prefix = "endpoints.submissions")
+public class SubmissionProgressEndpoint extends AbstractEndpoint<List<Map<String, Object>>> implements InfoContributor {
+
+    private final SubmissionProgressRegistry submissionProgressRegistry;
+
+    @Autowired
+    public SubmissionProgressEndpoint(SubmissionProgressRegistry submissionProgressRegistry) {
+        super("submissions");
+        this.submissionProgressRegistry = submissionProgressRegistry;
+    }
+
+    @Override
+    public List<Map<String, Object>> invoke() {
+        return submissionProgressRegistry.getInFlightSubmissions().stream()
+                .map(SubmissionProgress::toMap)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void contribute(Info.Builder builder) {
+        final List<SubmissionProgress> inFlightSubmissions = submissionProgressRegistry.getInFlightSubmissions();
+
+        final Map<String, Object> submissions = new LinkedHashMap<>();
+        submissions.put("inFlight", inFlightSubmissions.size());
+        if (!inFlightSubmissions.isEmpty()) {
+            submissions.put("oldest", inFlightSubmissions.get(0).toMap());
+        }
+        builder.withDetail("submissions", submissions);
+    }
+}
@@ -0,0 +1,80 @@
+package uk.ac.ebi.subs.ena.progress;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link SubmissionProgress} of every submission the agent is processing, from the moment it is received
+ * until its results have been sent, for the /submissions endpoint and the metrics to show.
+ */
+@Component
+public class SubmissionProgressRegistry implements InitializingBean {
+
+    private final Map<String, SubmissionProgress> progressBySubmission = new ConcurrentHashMap<>();
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    @Autowired
+    public SubmissionProgressRegistry(EnaAgentMetrics enaAgentMetrics) {
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        enaAgentMetrics.registerSubmissionProgressRegistry(this);
+    }
+
+    /**
+     * Starts tracking the progress of the given submission, afresh if it was tracked already.
+     */
+    public SubmissionProgress start(String submissionId) {
+        final SubmissionProgress submissionProgress = new SubmissionProgress(submissionId);
+        if (submissionId != null) {
+            progressBySubmission.put(submissionId, submissionProgress);
+        }
+        return submissionProgress;
+    }
+
+    /**
+     * @return the progress of the given submission, or a progress nobody sees if the submission is not tracked,
+     * so that the callers do not have to tell the two apart
+     */
+    public SubmissionProgress get(String submissionId) {
+        final SubmissionProgress submissionProgress = submissionId == null ? null : progressBySubmission.get(submissionId);
+        return submissionProgress != null ? submissionProgress : new SubmissionProgress(submissionId);
+    }
+
+    public void finish(String submissionId) {
+        if (submissionId != null) {
+            progressBySubmission.remove(submissionId);
+        }
+    }
+
+    public int getInFlight() {
+        return progressBySubmission.size();
+    }
+
+    /**
+     * @return the progress of the submissions being processed, the oldest first
+     */
+    public List<SubmissionProgress> getInFlightSubmissions() {
+        return progressBySubmission.values().stream()
+                .sorted(Comparator.comparingLong(SubmissionProgress::getStartNanos))
+                .collect(Collectors.toList());
+    }
+
+    public long getOldestAgeMillis() {
+        return progressBySubmission.values().stream()
+                .mapToLong(SubmissionProgress::getAgeMillis)
+                .max()
+                .orElse(0);
+    }
+}
@@ -0,0 +1,254 @@
+package uk.ac.ebi.subs.ena.publisher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the results of submissions to the broker.
+ *
+ * When ena.publisher.confirms is off, a result is sent straight away on the calling thread, as the agent always did.
+ * When it is on, the results go into a bounded buffer, from which a publisher thread sends them in batches
+ * with publisher confirms, so a result only counts as sent once the broker has confirmed it,
+ * and the submission message is only acknowledged then, see {@link #isConfirming()}.
+ * This needs spring.rabbitmq.publisher-confirms on as well.
+ */
+@Component
+public class CertificatePublisher implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertificatePublisher.class);
+
+    /**
+     * The header with the position, from 0, of a chunk of the certificates of a submission sent in chunks.
+     */
+    public static final String CHUNK_SEQUENCE_HEADER = "ena-agent-certificate-chunk";
+
+    /**
+     * The header that tells whether a chunk of certificates is the last one of its submission.
+     */
+    public static final String LAST_CHUNK_HEADER = "ena-agent-certificate-last-chunk";
+
+    @Value("${ena.publisher.confirms:false}")
+    private boolean confirms;
+
+    @Value("${ena.publisher.bufferSize:1000}")
+    private int bufferSize;
+
+    @Value("${ena.publisher.batchSize:100}")
+    private int batchSize;
+
+    @Value("${ena.publisher.bufferTimeoutMillis:60000}")
+    private long bufferTimeoutMillis;
+
+    @Value("${ena.publisher.confirmTimeoutMillis:30000}")
+    private long confirmTimeoutMillis;
+
+    private final RabbitMessagingTemplate rabbitMessagingTemplate;
+
+    private final EnaAgentMetrics enaAgentMetrics;
+
+    private BlockingQueue<PendingPublish> buffer;
+
+    private final Map<String, PendingPublish> unconfirmed = new ConcurrentHashMap<>();
+
+    private ExecutorService publisherExecutor;
+
+    private ExecutorService confirmExecutor;
+
+    @Autowired
+    public CertificatePublisher(RabbitMessagingTemplate rabbitMessagingTemplate, EnaAgentMetrics enaAgentMetrics) {
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.enaAgentMetrics = enaAgentMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!confirms) {
+            return;
+        }
+
+        final RabbitTemplate rabbitTemplate = rabbitMessagingTemplate.getRabbitTemplate();
+        if (rabbitTemplate.getConnectionFactory() instanceof CachingConnectionFactory
+                && !((CachingConnectionFactory) rabbitTemplate.getConnectionFactory()).isPublisherConfirms()) {
+            throw new IllegalStateException(
+                    "ena.publisher.confirms needs the broker connection to have publisher confirms on: set spring.rabbitmq.publisher-confirms.");
+        }
+        rabbitTemplate.setConfirmCallback(this::confirm);
+
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        publisherExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("certificate-publisher-"));
+        publisherExecutor.execute(this::publishBatches);
+        confirmExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("certificate-confirm-"));
+        enaAgentMetrics.registerCertificatePublisher(this);
+    }
+
+    @Override
+    public void destroy() {
+        if (!confirms) {
+            return;
+        }
+
+        publisherExecutor.shutdownNow();
+        final AmqpException shutdown = new AmqpException("The certificate publisher has been shut down.");
+        buffer.forEach(pendingPublish -> pendingPublish.confirmation.completeExceptionally(shutdown));
+        unconfirmed.values().forEach(pendingPublish -> pendingPublish.confirmation.completeExceptionally(shutdown));
+        confirmExecutor.shutdown();
+    }
+
+    /**
+     * @return whether results are only sent once the broker has confirmed them,
+     * in which case the submission listener does not wait for the results to be sent before taking the next message
+     */
+    public boolean isConfirming() {
+        return confirms;
+    }
+
+    /**
+     * Sends the payload to the exchange, waiting for room in the buffer for up to ena.publisher.bufferTimeoutMillis.
+     *
+     * @return the pending outcome of the send, complete once the broker has confirmed it,
+     * or straight away when confirms are off; the actions chained to it run on a thread of the publisher
+     * @throws AmqpException if confirms are off and the payload could not be sent
+     */
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Object payload) {
+        return publish(exchange, routingKey, payload, Collections.emptyMap());
+    }
+
+    /**
+     * Sends the payload like {@link #publish(String, String, Object)} does, with the given message headers.
+     */
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Object payload, Map<String, Object> headers) {
+        if (!confirms) {
+            rabbitMessagingTemplate.convertAndSend(exchange, routingKey, payload, headers);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final PendingPublish pendingPublish = new PendingPublish(exchange, routingKey, toAmqpMessage(payload, headers));
+        try {
+            if (!buffer.offer(pendingPublish, bufferTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                pendingPublish.confirmation.completeExceptionally(new AmqpException(String.format(
+                        "The certificate buffer stayed full for %d ms.", bufferTimeoutMillis)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingPublish.confirmation.completeExceptionally(e);
+        }
+
+        return pendingPublish.confirmation
+                .orTimeout(confirmTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((result, e) -> unconfirmed.remove(pendingPublish.id), confirmExecutor);
+    }
+
+    public int getBuffered() {
+        return confirms ? buffer.size() : 0;
+    }
+
+    public int getUnconfirmed() {
+        return unconfirmed.size();
+    }
+
+    private Message toAmqpMessage(Object payload, Map<String, Object> headers) {
+        return rabbitMessagingTemplate.getAmqpMessageConverter().toMessage(
+                rabbitMessagingTemplate.getMessageConverter().toMessage(payload, new MessageHeaders(headers)), new MessageProperties());
+    }
+
+    /**
+     * Takes the results off the buffer as they come, sending all the results that have piled up as one batch,
+     * whose confirms the broker can then acknowledge together.
+     */
+    private void publishBatches() {
+        final List<PendingPublish> batch = new ArrayList<>(batchSize);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            buffer.drainTo(batch, batchSize - 1);
+
+            batch.forEach(this::send);
+            LOGGER.debug("Sent a batch of {} certificate envelopes.", batch.size());
+            batch.clear();
+        }
+    }
+
+    private void send(PendingPublish pendingPublish) {
+        if (pendingPublish.confirmation.isDone()) {
+            return;
+        }
+
+        unconfirmed.put(pendingPublish.id, pendingPublish);
+        try {
+            rabbitMessagingTemplate.getRabbitTemplate().send(pendingPublish.exchange, pendingPublish.routingKey,
+                    pendingPublish.message, new CorrelationData(pendingPublish.id));
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not send a certificate envelope: {}.", e.toString());
+            unconfirmed.remove(pendingPublish.id);
+            pendingPublish.confirmation.completeExceptionally(e);
+        }
+    }
+
+    private void confirm(CorrelationData correlationData, boolean ack, String cause) {
+        final PendingPublish pendingPublish = correlationData == null ? null : unconfirmed.remove(correlationData.getId());
+        if (pendingPublish == null) {
+            return;
+        }
+
+        if (ack) {
+            pendingPublish.confirmation.complete(null);
+        } else {
+            LOGGER.error("The broker did not take a certificate envelope: {}.", cause);
+            enaAgentMetrics.recordCertificatePublishNacks(1);
+            pendingPublish.confirmation.completeExceptionally(new AmqpException(String.format(
+                    "The broker did not take the certificate envelope: %s.", cause)));
+        }
+    }
+
+    private static class PendingPublish {
+
+        private final String id = UUID.randomUUID().toString();
+
+        private final String exchange;
+
+        private final String routingKey;
+
+        private final Message message;
+
+        private final CompletableFuture<Void> confirmation = new CompletableFuture<>();
+
+        private PendingPublish(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+    }
+}
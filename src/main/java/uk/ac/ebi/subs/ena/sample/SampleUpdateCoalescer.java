@@ -0,0 +1,259 @@
+package uk.ac.ebi.subs.ena.sample;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.data.Submission;
+import uk.ac.ebi.subs.data.submittable.Sample;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.UpdatedSamplesEnvelope;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects sample updates into windows and sends each window to ENA as one update,
+ * instead of one ENA call for each envelope of updated samples.
+ *
+ * A window opens with the first update that arrives and is sent once it is ena.sample_update.windowMillis old
+ * or holds ena.sample_update.maxBatchSize samples, whichever comes first.
+ * A sample updated several times within a window is only sent once, in the version that arrived last.
+ * The samples of a window are grouped by the submission they were last updated in, each group going to ENA as one submission,
+ * as an ENA submission is made for one submission and its team. So a window only saves ENA calls for the updates of the same submission:
+ * it makes one ENA call for each submission it holds samples of.
+ * Windows are sent one at a time on a thread of their own, so adding updates never waits for ENA.
+ *
+ * Each envelope of updated samples gets the outcome of its own samples:
+ * it fails with a {@link SampleUpdateRejectedException}, so its message is not delivered again, if ENA rejected any of them,
+ * or with the exception of the ENA call, so its message is delivered again, if their group could not be sent.
+ */
+@Component
+public class SampleUpdateCoalescer implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SampleUpdateCoalescer.class);
+
+    @Value("${ena.sample_update.windowMillis:5000}")
+    private long windowMillis;
+
+    @Value("${ena.sample_update.maxBatchSize:500}")
+    private int maxBatchSize;
+
+    private final ENAProcessor enaProcessor;
+
+    private ScheduledExecutorService windowScheduler;
+
+    private Window openWindow;
+
+    @Autowired
+    public SampleUpdateCoalescer(ENAProcessor enaProcessor) {
+        this.enaProcessor = enaProcessor;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        windowScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sample-update-"));
+    }
+
+    @Override
+    public void destroy() {
+        windowScheduler.shutdownNow();
+    }
+
+    /**
+     * Adds the updated samples to the open window, opening one if there is none.
+     *
+     * @return the pending outcome of sending the updated samples to ENA, which fails with a {@link SampleUpdateRejectedException}
+     * if ENA rejected any of them
+     */
+    public CompletableFuture<Void> add(UpdatedSamplesEnvelope updatedSamplesEnvelope) {
+        final Window window;
+        final Delivery delivery = new Delivery(updatedSamplesEnvelope.getSubmissionId());
+        boolean full = false;
+
+        synchronized (this) {
+            if (openWindow == null) {
+                final Window newWindow = new Window();
+                newWindow.scheduledSend = windowScheduler.schedule(() -> send(newWindow), windowMillis, TimeUnit.MILLISECONDS);
+                openWindow = newWindow;
+            }
+            window = openWindow;
+
+            updatedSamplesEnvelope.getUpdatedSamples().forEach(sample -> {
+                if (sample.getAccession() == null) {
+                    LOGGER.warn("Skipping an update of sample {} of submission {} without an accession.",
+                            sample.getId(), updatedSamplesEnvelope.getSubmissionId());
+                    return;
+                }
+                window.samples.remove(sample.getAccession());
+                window.samples.put(sample.getAccession(), new SampleUpdate(updatedSamplesEnvelope.getSubmissionId(), sample));
+                delivery.sampleAccessions.add(sample.getAccession());
+            });
+            window.deliveries.add(delivery);
+
+            if (window.samples.size() >= maxBatchSize) {
+                openWindow = null;
+                full = true;
+            }
+        }
+
+        if (full) {
+            window.scheduledSend.cancel(false);
+            windowScheduler.execute(() -> send(window));
+        }
+
+        return delivery.sent;
+    }
+
+    private void send(Window window) {
+        synchronized (this) {
+            if (openWindow == window) {
+                openWindow = null;
+            }
+        }
+        if (!window.sending.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Map<String, List<SampleUpdate>> samplesBySubmission = new LinkedHashMap<>();
+        window.samples.values().forEach(sampleUpdate -> samplesBySubmission
+                .computeIfAbsent(sampleUpdate.submissionId, submissionId -> new ArrayList<>())
+                .add(sampleUpdate));
+
+        final Map<String, String> rejections = new HashMap<>();
+        final Map<String, RuntimeException> failures = new HashMap<>();
+        samplesBySubmission.forEach((submissionId, sampleUpdates) -> {
+            try {
+                rejections.putAll(sendToEna(submissionId, sampleUpdates));
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not send the updates of {} samples of submission {} to ENA.", sampleUpdates.size(), submissionId, e);
+                sampleUpdates.forEach(sampleUpdate -> failures.put(sampleUpdate.sample.getAccession(), e));
+            }
+        });
+
+        window.deliveries.forEach(delivery -> delivery.complete(rejections, failures));
+    }
+
+    /**
+     * @return the ENA error messages by the accession of the sample they are about
+     */
+    private Map<String, String> sendToEna(String submissionId, List<SampleUpdate> sampleUpdates) {
+        final Sample firstSample = sampleUpdates.get(0).sample;
+
+        Submission submission = new Submission();
+        submission.setId(submissionId);
+        submission.setTeam(firstSample.getTeam());
+
+        SubmissionEnvelope submissionEnvelope = new SubmissionEnvelope(submission);
+        sampleUpdates.forEach(sampleUpdate -> submissionEnvelope.getSamples().add(sampleUpdate.sample));
+
+        LOGGER.info("Sending the updates of {} samples of submission {} of team {} to ENA.",
+                sampleUpdates.size(), submissionId, teamName(firstSample));
+
+        final List<SingleValidationResult> validationResultList = enaProcessor.process(submissionEnvelope);
+        if (validationResultList.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        LOGGER.error("error messages during sample update of submission {}: {}", submissionId, validationResultList);
+
+        final Map<String, String> accessionsById = new HashMap<>();
+        sampleUpdates.forEach(sampleUpdate -> accessionsById.put(sampleUpdate.sample.getId(), sampleUpdate.sample.getAccession()));
+
+        final Map<String, String> rejections = new HashMap<>();
+        for (SingleValidationResult validationResult : validationResultList) {
+            final String accession = accessionsById.get(validationResult.getEntityUuid());
+            if (accession != null) {
+                rejections.merge(accession, validationResult.getMessage(), (first, second) -> first + "; " + second);
+            } else {
+                accessionsById.values().forEach(sampleAccession ->
+                        rejections.merge(sampleAccession, validationResult.getMessage(), (first, second) -> first + "; " + second));
+            }
+        }
+        return rejections;
+    }
+
+    private static String teamName(Sample sample) {
+        return sample.getTeam() == null ? null : sample.getTeam().getName();
+    }
+
+    private static class SampleUpdate {
+
+        private final String submissionId;
+
+        private final Sample sample;
+
+        private SampleUpdate(String submissionId, Sample sample) {
+            this.submissionId = submissionId;
+            this.sample = sample;
+        }
+    }
+
+    /**
+     * The samples of one envelope of updated samples, and the pending outcome of sending them.
+     */
+    private static class Delivery {
+
+        private final String submissionId;
+
+        private final Set<String> sampleAccessions = new LinkedHashSet<>();
+
+        private final CompletableFuture<Void> sent = new CompletableFuture<>();
+
+        private Delivery(String submissionId) {
+            this.submissionId = submissionId;
+        }
+
+        private void complete(Map<String, String> rejections, Map<String, RuntimeException> failures) {
+            final Optional<RuntimeException> failure = sampleAccessions.stream()
+                    .map(failures::get)
+                    .filter(Objects::nonNull)
+                    .findFirst();
+            if (failure.isPresent()) {
+                sent.completeExceptionally(failure.get());
+                return;
+            }
+
+            final Map<String, String> rejectedSamples = new LinkedHashMap<>();
+            sampleAccessions.stream()
+                    .filter(rejections::containsKey)
+                    .forEach(accession -> rejectedSamples.put(accession, rejections.get(accession)));
+            if (rejectedSamples.isEmpty()) {
+                sent.complete(null);
+            } else {
+                sent.completeExceptionally(new SampleUpdateRejectedException(String.format(
+                        "ENA rejected the updates of samples of submission %s: %s", submissionId, rejectedSamples)));
+            }
+        }
+    }
+
+    private static class Window {
+
+        private final Map<String, SampleUpdate> samples = new LinkedHashMap<>();
+
+        private final List<Delivery> deliveries = new ArrayList<>();
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private ScheduledFuture<?> scheduledSend;
+    }
+}
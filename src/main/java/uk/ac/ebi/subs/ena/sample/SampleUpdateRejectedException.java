@@ -0,0 +1,15 @@
+package uk.ac.ebi.subs.ena.sample;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+
+/**
+ * Thrown when ENA rejects updated samples.
+ * Sending them again would be rejected again, so their message is rejected without being requeued,
+ * and goes to the dead letter exchange of its queue if it has one.
+ */
+public class SampleUpdateRejectedException extends AmqpRejectAndDontRequeueException {
+
+    public SampleUpdateRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,52 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sets up the fast-start mode of the agent, for new instances to start consuming submissions as soon as possible
+ * when the agent is scaled out. It is on when the fast-start profile is active,
+ * which is best done with spring.profiles.include=fast-start,
+ * as spring.profiles.active also names the folder of the submitted files.
+ *
+ * In fast-start mode the beans the agent does not need to start consuming are initialized on first use
+ * (see {@link LazyInitializationBeanFactoryPostProcessor}), apart from the ones listed in ena.fastStart.eagerBeans,
+ * and the packages listed in ena.fastStart.excludedPackages, none by default, are left out of the component scan.
+ * The fast-start profile also turns off JMX and the auto-configurations application-fast-start.yml lists.
+ */
+public class FastStartApplicationContextInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    public static final String FAST_START_PROFILE = "fast-start";
+
+    static final String EXCLUDE_FILTER_BEAN_NAME = "fastStartPackageExcludeFilter";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FastStartApplicationContextInitializer.class);
+
+    @Override
+    public void initialize(ConfigurableApplicationContext applicationContext) {
+        final ConfigurableEnvironment environment = applicationContext.getEnvironment();
+        if (!environment.acceptsProfiles(FAST_START_PROFILE)) {
+            return;
+        }
+
+        final List<String> eagerBeans = listProperty(environment, "ena.fastStart.eagerBeans");
+        final List<String> excludedPackages = listProperty(environment, "ena.fastStart.excludedPackages");
+
+        applicationContext.addBeanFactoryPostProcessor(new LazyInitializationBeanFactoryPostProcessor(eagerBeans));
+        if (!excludedPackages.isEmpty()) {
+            applicationContext.getBeanFactory().registerSingleton(EXCLUDE_FILTER_BEAN_NAME, new PackageExcludeFilter(excludedPackages));
+        }
+
+        LOGGER.info("Starting in fast-start mode, leaving {} out of the component scan.", excludedPackages);
+    }
+
+    private static List<String> listProperty(ConfigurableEnvironment environment, String name) {
+        return Arrays.asList(environment.getProperty(name, String[].class, new String[0]));
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.context.annotation.ContextAnnotationAutowireCandidateResolver;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Injects a proxy for each dependency whose beans are all initialized lazily, as if the dependency were marked @Lazy,
+ * so the beans created at startup, such as the submission listener, do not create the beans they use
+ * until they first call them.
+ * Values, collections, maps, arrays and final types are injected as usual.
+ */
+class LazyDependencyAutowireCandidateResolver extends ContextAnnotationAutowireCandidateResolver {
+
+    @Override
+    protected boolean isLazy(DependencyDescriptor descriptor) {
+        return super.isLazy(descriptor) || hasOnlyLazyCandidates(descriptor);
+    }
+
+    private boolean hasOnlyLazyCandidates(DependencyDescriptor descriptor) {
+        final Class<?> dependencyType = descriptor.getDependencyType();
+        final BeanFactory beanFactory = getBeanFactory();
+        if (!(beanFactory instanceof ConfigurableListableBeanFactory) || getSuggestedValue(descriptor) != null
+                || dependencyType.isPrimitive() || dependencyType.isArray() || Modifier.isFinal(dependencyType.getModifiers())
+                || Collection.class.isAssignableFrom(dependencyType) || Map.class.isAssignableFrom(dependencyType)) {
+            return false;
+        }
+
+        final ConfigurableListableBeanFactory listableBeanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        final String[] candidateNames = listableBeanFactory.getBeanNamesForType(dependencyType, true, false);
+
+        return candidateNames.length > 0 && Arrays.stream(candidateNames)
+                .allMatch(candidateName -> listableBeanFactory.containsBeanDefinition(candidateName)
+                        && listableBeanFactory.getMergedBeanDefinition(candidateName).isLazyInit());
+    }
+}
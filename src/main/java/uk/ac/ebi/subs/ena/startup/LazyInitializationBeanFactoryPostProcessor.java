@@ -0,0 +1,121 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.annotation.RabbitListeners;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Makes the application beans initialize lazily, on first use, except the ones the agent needs to start consuming
+ * and the ones that would do nothing if nobody asked for them:
+ * beans with listener, scheduled or event listener methods, lifecycle and post-processing beans,
+ * the connection factory, admin, queues, exchanges and bindings of the broker,
+ * beans of a type that can not be told from their definition, and the beans named as eager.
+ * The beans created at startup get proxies for their lazy dependencies (see {@link LazyDependencyAutowireCandidateResolver}),
+ * as the submission listener would otherwise create almost every bean of the agent through its constructor.
+ * Added to the context before it is refreshed, it runs once the component scan and the configuration classes
+ * have registered their beans.
+ */
+public class LazyInitializationBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyInitializationBeanFactoryPostProcessor.class);
+
+    private static final List<Class<?>> EAGER_TYPES = Arrays.asList(
+            BeanPostProcessor.class, BeanFactoryPostProcessor.class, Lifecycle.class, SmartInitializingSingleton.class,
+            ApplicationListener.class, ConnectionFactory.class, AmqpAdmin.class, Declarable.class,
+            RabbitListenerContainerFactory.class, MessageListenerContainer.class);
+
+    private static final List<Class<? extends Annotation>> EAGER_METHOD_ANNOTATIONS = Arrays.asList(
+            RabbitListener.class, RabbitListeners.class, Scheduled.class, EventListener.class);
+
+    private final Set<String> eagerBeanNames;
+
+    public LazyInitializationBeanFactoryPostProcessor(Collection<String> eagerBeanNames) {
+        this.eagerBeanNames = new HashSet<>(eagerBeanNames);
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        final String[] beanNames = beanFactory.getBeanDefinitionNames();
+        int lazyBeans = 0;
+
+        for (String beanName : beanNames) {
+            final BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+            if (beanDefinition.isAbstract() || beanDefinition.isLazyInit()
+                    || beanDefinition.getRole() != BeanDefinition.ROLE_APPLICATION || eagerBeanNames.contains(beanName)) {
+                continue;
+            }
+
+            final Class<?> beanType = beanType(beanDefinition, beanFactory.getBeanClassLoader());
+            if (beanType != null && !isEager(beanType)) {
+                beanDefinition.setLazyInit(true);
+                lazyBeans++;
+            }
+        }
+
+        if (beanFactory instanceof DefaultListableBeanFactory) {
+            ((DefaultListableBeanFactory) beanFactory).setAutowireCandidateResolver(new LazyDependencyAutowireCandidateResolver());
+        }
+
+        LOGGER.info("Initializing {} of {} beans lazily.", lazyBeans, beanNames.length);
+    }
+
+    private static boolean isEager(Class<?> beanType) {
+        if (EAGER_TYPES.stream().anyMatch(eagerType -> eagerType.isAssignableFrom(beanType))
+                || AnnotationUtils.findAnnotation(beanType, RabbitListener.class) != null) {
+            return true;
+        }
+
+        return Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(beanType))
+                .anyMatch(method -> EAGER_METHOD_ANNOTATIONS.stream()
+                        .anyMatch(annotation -> AnnotationUtils.findAnnotation(method, annotation) != null));
+    }
+
+    /**
+     * @return the class of the bean, or the return type of the method making it, or null if it can not be loaded
+     */
+    private static Class<?> beanType(BeanDefinition beanDefinition, ClassLoader classLoader) {
+        String typeName = beanDefinition.getBeanClassName();
+        if (beanDefinition instanceof AnnotatedBeanDefinition
+                && ((AnnotatedBeanDefinition) beanDefinition).getFactoryMethodMetadata() != null) {
+            typeName = ((AnnotatedBeanDefinition) beanDefinition).getFactoryMethodMetadata().getReturnTypeName();
+        } else if (beanDefinition.getFactoryMethodName() != null) {
+            return null;
+        }
+
+        if (typeName == null) {
+            return null;
+        }
+        try {
+            return ClassUtils.forName(typeName, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Leaves the classes of the given packages, and of their sub-packages, out of the component scan of the application.
+ * It takes effect once registered as a bean before the scan, which {@link FastStartApplicationContextInitializer} does.
+ */
+public class PackageExcludeFilter extends TypeExcludeFilter {
+
+    private final List<String> excludedPackages;
+
+    public PackageExcludeFilter(Collection<String> excludedPackages) {
+        this.excludedPackages = new ArrayList<>(excludedPackages);
+    }
+
+    @Override
+    public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+        final String className = metadataReader.getClassMetadata().getClassName();
+        return excludedPackages.stream().anyMatch(excludedPackage -> className.startsWith(excludedPackage + "."));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o != null && getClass() == o.getClass() && excludedPackages.equals(((PackageExcludeFilter) o).excludedPackages);
+    }
+
+    @Override
+    public int hashCode() {
+        return excludedPackages.hashCode();
+    }
+}
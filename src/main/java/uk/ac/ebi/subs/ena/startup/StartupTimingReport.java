@@ -0,0 +1,154 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.AsyncConsumerStartedEvent;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.core.Ordered;
+import uk.ac.ebi.subs.messaging.Queues;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of the start of the agent, from the start of the JVM until it consumes from the {@link Queues#ENA_AGENT} queue,
+ * and logs them once the application is ready, and when it starts consuming if that comes later.
+ * It is a bean of the application once the context is prepared, for the startup test to read.
+ */
+public class StartupTimingReport implements SmartApplicationListener {
+
+    public static final String BEAN_NAME = "startupTimingReport";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimingReport.class);
+
+    public enum Phase {
+        APPLICATION_STARTING("application starting"),
+        ENVIRONMENT_PREPARED("environment prepared"),
+        CONTEXT_PREPARED("context prepared"),
+        CONTEXT_REFRESHED("context refreshed"),
+        WEB_SERVER_STARTED("web server started"),
+        CONSUMING_SUBMISSIONS("consuming from " + Queues.ENA_AGENT),
+        APPLICATION_READY("application ready");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+    }
+
+    private static final Class<?>[] EVENT_TYPES = {
+            ApplicationStartingEvent.class, ApplicationEnvironmentPreparedEvent.class, ApplicationPreparedEvent.class,
+            ContextRefreshedEvent.class, EmbeddedServletContainerInitializedEvent.class, ApplicationReadyEvent.class,
+            AsyncConsumerStartedEvent.class};
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+
+    private long jvmStartupMillis;
+
+    @Override
+    public boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+        return Arrays.stream(EVENT_TYPES).anyMatch(type -> type.isAssignableFrom(eventType));
+    }
+
+    @Override
+    public boolean supportsSourceType(Class<?> sourceType) {
+        return true;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ApplicationStartingEvent) {
+            jvmStartupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            record(Phase.APPLICATION_STARTING);
+        } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+            record(Phase.ENVIRONMENT_PREPARED);
+        } else if (event instanceof ApplicationPreparedEvent) {
+            record(Phase.CONTEXT_PREPARED);
+            ((ApplicationPreparedEvent) event).getApplicationContext().getBeanFactory().registerSingleton(BEAN_NAME, this);
+        } else if (event instanceof ContextRefreshedEvent) {
+            record(Phase.CONTEXT_REFRESHED);
+        } else if (event instanceof EmbeddedServletContainerInitializedEvent) {
+            record(Phase.WEB_SERVER_STARTED);
+        } else if (event instanceof AsyncConsumerStartedEvent && isConsumingSubmissions(event.getSource())) {
+            if (record(Phase.CONSUMING_SUBMISSIONS) && isReached(Phase.APPLICATION_READY)) {
+                LOGGER.info("Consuming from {} {} ms after the JVM started.", Queues.ENA_AGENT, millisSinceJvmStart(Phase.CONSUMING_SUBMISSIONS));
+            }
+        } else if (event instanceof ApplicationReadyEvent) {
+            record(Phase.APPLICATION_READY);
+            LOGGER.info(report());
+        }
+    }
+
+    /**
+     * @return how long after the application started to start the given phase was reached, or -1 if it has not been reached
+     */
+    public synchronized long getMillisSinceApplicationStarting(Phase phase) {
+        if (!isReached(phase) || !isReached(Phase.APPLICATION_STARTING)) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase) - phaseNanos.get(Phase.APPLICATION_STARTING));
+    }
+
+    public synchronized boolean isReached(Phase phase) {
+        return phaseNanos.containsKey(phase);
+    }
+
+    /**
+     * @return the phases reached so far in the order they were reached,
+     * with the time since the start of the JVM and since the phase before
+     */
+    synchronized String report() {
+        final StringBuilder report = new StringBuilder("Startup timing, from the start of the JVM:");
+        long previousMillis = 0;
+        for (Phase phase : phasesInOrder()) {
+            final long millis = millisSinceJvmStart(phase);
+            report.append(String.format("%n  %-35s %7d ms (+%d ms)", phase.description, millis, millis - previousMillis));
+            previousMillis = millis;
+        }
+        if (!isReached(Phase.CONSUMING_SUBMISSIONS)) {
+            report.append(String.format("%n  not consuming from %s yet", Queues.ENA_AGENT));
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return whether the phase was reached now, rather than before
+     */
+    private synchronized boolean record(Phase phase) {
+        return phaseNanos.putIfAbsent(phase, System.nanoTime()) == null;
+    }
+
+    private synchronized long millisSinceJvmStart(Phase phase) {
+        final Long startingNanos = phaseNanos.get(Phase.APPLICATION_STARTING);
+        return startingNanos == null ? -1 : jvmStartupMillis + TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase) - startingNanos);
+    }
+
+    private Phase[] phasesInOrder() {
+        return phaseNanos.keySet().stream()
+                .sorted(Comparator.comparingLong(phaseNanos::get))
+                .toArray(Phase[]::new);
+    }
+
+    private static boolean isConsumingSubmissions(Object source) {
+        return source instanceof AbstractMessageListenerContainer
+                && Arrays.asList(((AbstractMessageListenerContainer) source).getQueueNames()).contains(Queues.ENA_AGENT);
+    }
+}
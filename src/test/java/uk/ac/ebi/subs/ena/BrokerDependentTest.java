@@ -0,0 +1,7 @@
+package uk.ac.ebi.subs.ena;
+
+/**
+ * Marker interface for tests that rely on a running RabbitMQ broker
+ */
+public interface BrokerDependentTest {
+}
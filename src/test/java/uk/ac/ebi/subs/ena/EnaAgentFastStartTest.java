@@ -0,0 +1,64 @@
+package uk.ac.ebi.subs.ena;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import uk.ac.ebi.subs.ena.filemove.FileMoveTransport;
+import uk.ac.ebi.subs.ena.startup.StartupTimingReport;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Starts the agent in fast-start mode and checks that it consumes submissions within the target time.
+ * It needs a broker to consume from.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {EnaAgentApplication.class}, properties = {
+        "spring.profiles.include=fast-start",
+        "ena.file_move.transport=ssh"
+})
+@Category(BrokerDependentTest.class)
+public class EnaAgentFastStartTest {
+
+    /**
+     * From the start of the application rather than of the JVM, which in a test also runs the tests before this one.
+     */
+    private static final long TARGET_MILLIS_UNTIL_CONSUMING = 20000;
+
+    @Autowired
+    private StartupTimingReport startupTimingReport;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Test
+    public void whenStartingInFastStartMode_ThenSubmissionsAreConsumedWithinTheTargetTime() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TARGET_MILLIS_UNTIL_CONSUMING;
+        while (!startupTimingReport.isReached(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertThat(startupTimingReport.isReached(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS), is(true));
+        assertThat(startupTimingReport.getMillisSinceApplicationStarting(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS),
+                is(lessThanOrEqualTo(TARGET_MILLIS_UNTIL_CONSUMING)));
+    }
+
+    @Test
+    public void whenStartingInFastStartMode_ThenTheBeansTheListenerUsesAreNotCreatedUntilItUsesThem() {
+        assertThat(applicationContext.getBeanFactory().containsSingleton("fileMoveService"), is(false));
+    }
+
+    @Test
+    public void whenStartingInFastStartMode_ThenTheUnusedFileMoveTransportIsNotCreated() {
+        applicationContext.getBean(FileMoveTransport.class);
+
+        assertThat(applicationContext.getBeanFactory().containsSingleton("localFileMoveTransport"), is(false));
+        assertThat(applicationContext.getBeanFactory().containsSingleton("sshFileMoveTransport"), is(true));
+    }
+}
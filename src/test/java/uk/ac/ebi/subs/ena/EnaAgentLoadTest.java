@@ -0,0 +1,241 @@
+package uk.ac.ebi.subs.ena;
+
+import com.rabbitmq.client.Channel;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.DigestUtils;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.data.submittable.Assay;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.data.submittable.Sample;
+import uk.ac.ebi.subs.data.submittable.Study;
+import uk.ac.ebi.subs.ena.filemove.FakeSsh;
+import uk.ac.ebi.subs.ena.helper.TestHelper;
+import uk.ac.ebi.subs.messaging.Topics;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives synthetic submissions through {@link EnaAgentSubmissionsProcessor#handleSubmission} the way the listener does,
+ * against local stand-ins for everything the agent talks to:
+ * an {@link InProcessBroker} for RabbitMQ, a {@link FakeSsh} whose move script takes loadTest.moveLatencyMillis per file
+ * and fails loadTest.moveFailureRate of the moves, and a {@link StubEnaDropBox} that answers after loadTest.enaLatencyMillis.
+ * It reports the submissions and files processed per second and the percentiles of the time each submission took.
+ *
+ * Run it with {@code ./gradlew loadTest}, e.g. {@code ./gradlew loadTest -PloadTest.submissions=5000 -PloadTest.concurrency=8}.
+ * loadTest.submissions, loadTest.concurrency and loadTest.filesPerSubmission set the size of the run,
+ * and any other ena.* setting can be passed as a system property to try it under load.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {EnaAgentApplication.class, EnaAgentLoadTest.InProcessBrokerConfiguration.class}, properties = {
+        "spring.rabbitmq.listener.simple.auto-startup=false",
+        "stubEnaDropBox.answerDelayMillis=${loadTest.enaLatencyMillis:200}"
+})
+@ContextConfiguration(initializers = {StubEnaDropBox.Initializer.class, EnaAgentLoadTest.FakeSshInitializer.class})
+@Category(LoadTest.class)
+public class EnaAgentLoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnaAgentLoadTest.class);
+
+    private static final String ILLUMINA_GENOME_ANALYZER_INSTRUMENT_MODEL = "Illumina Genome Analyzer";
+
+    @Value("${loadTest.submissions:2000}")
+    private int submissions;
+
+    @Value("${loadTest.concurrency:4}")
+    private int concurrency;
+
+    @Value("${loadTest.filesPerSubmission:2}")
+    private int filesPerSubmission;
+
+    @Value("${loadTest.sourceBasePath}")
+    private String sourceBasePath;
+
+    @Autowired
+    EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor;
+
+    @Autowired
+    InProcessBroker inProcessBroker;
+
+    @Autowired
+    StubEnaDropBox stubEnaDropBox;
+
+    @Test
+    public void whenThousandsOfSubmissionsArrive_ThenTheResultsOfEveryOneOfThemAreSent() throws Exception {
+        final List<SubmissionEnvelope> submissionEnvelopes = new ArrayList<>();
+        for (int i = 0; i < submissions; i++) {
+            submissionEnvelopes.add(submissionEnvelope());
+        }
+
+        final Channel channel = mock(Channel.class);
+        final long[] latencyNanos = new long[submissions];
+        final AtomicInteger failures = new AtomicInteger();
+        final ExecutorService consumers =
+                Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("load-test-consumer-"));
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < submissions; i++) {
+            final int deliveryTag = i;
+            consumers.execute(() -> {
+                final long submissionStart = System.nanoTime();
+                try {
+                    enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelopes.get(deliveryTag), channel, deliveryTag);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Submission {} failed: {}", deliveryTag, e.toString());
+                    failures.incrementAndGet();
+                }
+                latencyNanos[deliveryTag] = System.nanoTime() - submissionStart;
+            });
+        }
+        consumers.shutdown();
+        assertThat("The load test finished in time", consumers.awaitTermination(1, TimeUnit.HOURS), is(true));
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencyNanos);
+        LOGGER.info(String.format(Locale.ROOT,
+                "Processed %d submissions with %d files each on %d consumers in %.1f s: %.1f submissions/s, %.1f files/s, "
+                        + "latency p50 %d ms, p90 %d ms, p99 %d ms, max %d ms; %d failed, %d ENA calls, at most %d at once, %d bytes of results.",
+                submissions, filesPerSubmission, concurrency, elapsedSeconds,
+                submissions / elapsedSeconds, submissions * filesPerSubmission / elapsedSeconds,
+                percentileMillis(latencyNanos, 0.5), percentileMillis(latencyNanos, 0.9), percentileMillis(latencyNanos, 0.99),
+                percentileMillis(latencyNanos, 1.0), failures.get(),
+                stubEnaDropBox.getSubmissions(), stubEnaDropBox.getMaxInFlight(), inProcessBroker.getBytes()));
+
+        assertThat(failures.get(), is(0));
+        assertThat(inProcessBroker.getMessages(Topics.EVENT_SUBMISSION_AGENT_RESULTS), is(submissions));
+    }
+
+    private SubmissionEnvelope submissionEnvelope() throws IOException {
+        final String alias = UUID.randomUUID().toString();
+        final Team team = TestHelper.getTeam("load-test-team");
+
+        uk.ac.ebi.subs.data.Submission submission = new uk.ac.ebi.subs.data.Submission();
+        submission.setId(UUID.randomUUID().toString());
+        submission.setTeam(team);
+        submission.setSubmissionDate(new Date());
+        SubmissionEnvelope submissionEnvelope = new SubmissionEnvelope(submission);
+
+        final Study study = TestHelper.getStudy(alias, team, "study_abstract", "Whole Genome Sequencing");
+        study.setId(UUID.randomUUID().toString());
+        submissionEnvelope.getStudies().add(study);
+        submissionEnvelope.getSamples().add(TestHelper.getSample(alias, team));
+        submissionEnvelope.getAssays().add(TestHelper.getAssay(
+                alias, team, TestAccessions.BIOSAMPLE_ACCESSION, alias, ILLUMINA_GENOME_ANALYZER_INSTRUMENT_MODEL));
+
+        for (int i = 0; i < filesPerSubmission; i++) {
+            final String filename = alias + "-" + i + "_test.fastq.gz";
+            final AssayData assayData = TestHelper.getAssayData(alias + "-" + i, team, alias);
+            assayData.setId(UUID.randomUUID().toString());
+            assayData.getFiles().get(0).setName(filename);
+            submissionEnvelope.getAssayData().add(assayData);
+
+            final Path path = Paths.get(sourceBasePath, "load-test-team", submission.getId(), filename);
+            Files.createDirectories(path.getParent());
+            final byte[] content = filename.getBytes(StandardCharsets.UTF_8);
+            Files.write(path, content);
+
+            UploadedFile uploadedFile = new UploadedFile();
+            uploadedFile.setChecksum(DigestUtils.md5DigestAsHex(content));
+            uploadedFile.setPath(path.toString());
+            uploadedFile.setFilename(filename);
+            uploadedFile.setTotalSize((long) content.length);
+            submissionEnvelope.getUploadedFiles().add(uploadedFile);
+        }
+
+        return submissionEnvelope;
+    }
+
+    private static long percentileMillis(long[] sortedNanos, double percentile) {
+        final int index = Math.max(0, (int) Math.ceil(percentile * sortedNanos.length) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[index]);
+    }
+
+    @TestConfiguration
+    static class InProcessBrokerConfiguration {
+
+        @Bean
+        public InProcessBroker inProcessBroker() {
+            return new InProcessBroker();
+        }
+
+        @Bean
+        public RabbitMessagingTemplate rabbitMessagingTemplate(InProcessBroker inProcessBroker) {
+            return new RabbitMessagingTemplate(inProcessBroker);
+        }
+    }
+
+    /**
+     * Sets up a {@link FakeSsh} in a new temporary folder, with the source and 'webin' folders, journal and checkpoints
+     * of the agent next to it, and points the agent at them.
+     */
+    public static class FakeSshInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext applicationContext) {
+            final Environment environment = applicationContext.getEnvironment();
+            final long moveLatencyMillis = environment.getProperty("loadTest.moveLatencyMillis", Long.class, 20L);
+            final double moveFailureRate = environment.getProperty("loadTest.moveFailureRate", Double.class, 0.0);
+
+            try {
+                final Path root = Files.createTempDirectory("ena-agent-load-test");
+                final Path sourceBasePath = Files.createDirectories(root.resolve("upload").resolve("ready_to_agent"));
+                final FakeSsh fakeSsh = new FakeSsh(Files.createDirectories(root.resolve("fake-ssh")).toFile());
+                fakeSsh.setMoveScript(
+                        String.format(Locale.ROOT, "sleep %.3f", moveLatencyMillis / 1000.0),
+                        String.format("[ $(od -An -N1 -tu1 /dev/urandom) -lt %d ] && exit 1", Math.round(moveFailureRate * 256)),
+                        "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"");
+
+                EnvironmentTestUtils.addEnvironment(applicationContext,
+                        "loadTest.sourceBasePath=" + sourceBasePath,
+                        "ena.file_move.sourceBaseFolder=ready_to_agent",
+                        "ena.file_move.remoteHostName=localhost",
+                        "ena.file_move.sshCommand=" + fakeSsh.getSshCommand(),
+                        "ena.file_move.scriptPath=" + fakeSsh.getScriptPath(),
+                        "ena.file_move.sshControlDir=" + Files.createDirectories(root.resolve("ssh-control")),
+                        "ena.file_move.webinFolderPath=" + Files.createDirectories(root.resolve("webin")),
+                        "ena.file_move.logFilePath=" + root.resolve("filemove.log"),
+                        "ena.file_move.journalPath=" + root.resolve("filemove.journal"),
+                        "ena.checkpoint.directory=" + root.resolve("checkpoints"));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not set up the fake SSH of the load test.", e);
+            }
+        }
+    }
+}
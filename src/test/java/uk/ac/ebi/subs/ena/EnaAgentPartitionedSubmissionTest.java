@@ -0,0 +1,98 @@
+package uk.ac.ebi.subs.ena;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.data.status.ProcessingStatusEnum;
+import uk.ac.ebi.subs.data.submittable.Assay;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.data.submittable.Sample;
+import uk.ac.ebi.subs.data.submittable.Study;
+import uk.ac.ebi.subs.ena.helper.TestHelper;
+import uk.ac.ebi.subs.processing.ProcessingCertificate;
+import uk.ac.ebi.subs.processing.ProcessingCertificateEnvelope;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Sends a submission in partitions to a {@link StubEnaDropBox} that stands in for ENA.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {EnaAgentApplication.class}, properties = {
+        "ena.partitioning.enabled=true",
+        "ena.partitioning.partitionSize=2",
+        "ena.partitioning.concurrency=3"
+})
+@ContextConfiguration(initializers = StubEnaDropBox.Initializer.class)
+public class EnaAgentPartitionedSubmissionTest {
+
+    private static final String ILLUMINA_GENOME_ANALYZER_INSTRUMENT_MODEL = "Illumina Genome Analyzer";
+
+    private static final int ASSAY_DATA = 5;
+
+    @Autowired
+    EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor;
+
+    @Autowired
+    StubEnaDropBox stubEnaDropBox;
+
+    @Test
+    public void whenASubmissionHasManyAssayData_ThenTheyGoToENAInConcurrentPartitionsAfterTheirParents() {
+        final String alias = UUID.randomUUID().toString();
+        final Team team = TestHelper.getTeam("test-team");
+
+        uk.ac.ebi.subs.data.Submission submission = new uk.ac.ebi.subs.data.Submission();
+        submission.setId(UUID.randomUUID().toString());
+        submission.setTeam(team);
+        submission.setSubmissionDate(new Date());
+        SubmissionEnvelope submissionEnvelope = new SubmissionEnvelope(submission);
+
+        final Study study = TestHelper.getStudy(alias, team, "study_abstract", "Whole Genome Sequencing");
+        study.setId(UUID.randomUUID().toString());
+        submissionEnvelope.getStudies().add(study);
+        final Sample sample = TestHelper.getSample(alias, team);
+        submissionEnvelope.getSamples().add(sample);
+        final Assay assay = TestHelper.getAssay(
+                alias, team, TestAccessions.BIOSAMPLE_ACCESSION, alias, ILLUMINA_GENOME_ANALYZER_INSTRUMENT_MODEL);
+        submissionEnvelope.getAssays().add(assay);
+
+        for (int i = 0; i < ASSAY_DATA; i++) {
+            final AssayData assayData = TestHelper.getAssayData(alias + "-" + i, team, alias);
+            assayData.setId(UUID.randomUUID().toString());
+            final String filename = alias + "-" + i + "_test.fastq.gz";
+            assayData.getFiles().get(0).setName(filename);
+            submissionEnvelope.getAssayData().add(assayData);
+
+            UploadedFile uploadedFile = new UploadedFile();
+            uploadedFile.setChecksum("1234567890abcdefabcd1234567890ab");
+            uploadedFile.setPath(String.join("/", "ready_to_agent/test-team/submission", filename));
+            uploadedFile.setFilename(filename);
+            submissionEnvelope.getUploadedFiles().add(uploadedFile);
+        }
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmission(submissionEnvelope);
+
+        assertThat(stubEnaDropBox.getSubmissions(), is(greaterThan(3)));
+        assertThat(stubEnaDropBox.getMaxInFlight(), is(greaterThan(1)));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), hasSize(2 + ASSAY_DATA));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates().stream()
+                        .map(ProcessingCertificate::getProcessingStatus)
+                        .collect(Collectors.toList()),
+                everyItem(is(ProcessingStatusEnum.Completed)));
+    }
+}
@@ -0,0 +1,413 @@
+package uk.ac.ebi.subs.ena;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.data.component.Archive;
+import uk.ac.ebi.subs.data.component.File;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.data.status.ProcessingStatusEnum;
+import uk.ac.ebi.subs.data.submittable.Analysis;
+import uk.ac.ebi.subs.data.submittable.Assay;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.data.submittable.Study;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionCheckpoint;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionCheckpointStore;
+import uk.ac.ebi.subs.ena.checkpoint.SubmissionStage;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionException;
+import uk.ac.ebi.subs.ena.filemove.FileMoveJournal;
+import uk.ac.ebi.subs.ena.filemove.FileMoveResult;
+import uk.ac.ebi.subs.ena.helper.TestHelper;
+import uk.ac.ebi.subs.ena.listener.KeyedSerialExecutor;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.ena.progress.SubmissionProgressRegistry;
+import uk.ac.ebi.subs.ena.publisher.CertificatePublisher;
+import uk.ac.ebi.subs.ena.sample.SampleUpdateCoalescer;
+import uk.ac.ebi.subs.processing.ProcessingCertificate;
+import uk.ac.ebi.subs.processing.ProcessingCertificateEnvelope;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EnaAgentSubmissionsProcessorPipeliningTest {
+
+    private static final String SOURCE_FOLDER = "/data/ready_to_agent/team/submission/";
+
+    private EnaAgentSubmissionsProcessor enaAgentSubmissionsProcessor;
+
+    private ENAProcessor enaProcessor;
+
+    private FileMoveService fileMoveService;
+
+    private SubmissionCheckpointStore submissionCheckpointStore;
+
+    private CertificatePublisher certificatePublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private final List<SubmissionEnvelope> processedEnvelopes = new ArrayList<>();
+
+    private final Map<String, CompletableFuture<FileMoveResult>> fileMoves = new HashMap<>();
+
+    private boolean filesMovedWhenMetadataWasSubmitted;
+
+    private String failedFileMove;
+
+    private SubmissionEnvelope submissionEnvelope;
+
+    private Study study;
+
+    private Assay assay;
+
+    private AssayData assayData;
+
+    private Analysis analysis;
+
+    @Before
+    public void setup() {
+        enaProcessor = mock(ENAProcessor.class);
+        fileMoveService = mock(FileMoveService.class);
+        submissionCheckpointStore = mock(SubmissionCheckpointStore.class);
+        certificatePublisher = mock(CertificatePublisher.class);
+
+        meterRegistry = new SimpleMeterRegistry();
+        final EnaAgentMetrics enaAgentMetrics = new EnaAgentMetrics(meterRegistry);
+        enaAgentSubmissionsProcessor = new EnaAgentSubmissionsProcessor(
+                mock(RabbitMessagingTemplate.class), mock(MessageConverter.class), new PartitionedEnaProcessor(enaProcessor, enaAgentMetrics), fileMoveService,
+                mock(FileMoveJournal.class), submissionCheckpointStore,
+                enaAgentMetrics, new KeyedSerialExecutor(4, "test-submission-"),
+                mock(SampleUpdateCoalescer.class), certificatePublisher, new SubmissionProgressRegistry(enaAgentMetrics));
+        ReflectionTestUtils.setField(enaAgentSubmissionsProcessor, "activeProfile", "test");
+        ReflectionTestUtils.setField(enaAgentSubmissionsProcessor, "pipeliningEnabled", true);
+
+        final Team team = TestHelper.getTeam("test-team");
+        final String alias = UUID.randomUUID().toString();
+        uk.ac.ebi.subs.data.Submission submission = new uk.ac.ebi.subs.data.Submission();
+        submission.setTeam(team);
+        submission.setSubmissionDate(new Date());
+        submission.setId(UUID.randomUUID().toString());
+        submissionEnvelope = new SubmissionEnvelope(submission);
+
+        study = TestHelper.getStudy(alias, team, "study_abstract", "Whole Genome Sequencing");
+        study.setId(UUID.randomUUID().toString());
+        submissionEnvelope.getStudies().add(study);
+
+        assay = new Assay();
+        assay.setId(UUID.randomUUID().toString());
+        submissionEnvelope.getAssays().add(assay);
+
+        assayData = new AssayData();
+        assayData.setId(UUID.randomUUID().toString());
+        assayData.getFiles().add(file("reads_1.fastq.gz"));
+        submissionEnvelope.getAssayData().add(assayData);
+
+        analysis = new Analysis();
+        analysis.setId(UUID.randomUUID().toString());
+        analysis.getFiles().add(file("variants.vcf.gz"));
+        submissionEnvelope.getAnalyses().add(analysis);
+
+        when(fileMoveService.getRelativeFilePath(anyString())).thenAnswer(invocation ->
+                ((String) invocation.getArguments()[0]).substring(SOURCE_FOLDER.length()));
+        when(fileMoveService.startMovingFiles(anyListOf(UploadedFile.class))).thenReturn(fileMoves);
+        when(enaProcessor.process(any(SubmissionEnvelope.class))).thenAnswer(invocation -> {
+            final SubmissionEnvelope processedEnvelope = (SubmissionEnvelope) invocation.getArguments()[0];
+            if (processedEnvelopes.isEmpty()) {
+                filesMovedWhenMetadataWasSubmitted = fileMoves.values().stream().allMatch(CompletableFuture::isDone);
+                completeFileMoves();
+            }
+            processedEnvelopes.add(processedEnvelope);
+            processedEnvelope.allSubmissionItemsStream().forEach(submittable -> submittable.setAccession("ACC-" + submittable.getId()));
+            return Collections.emptyList();
+        });
+    }
+
+    @Test
+    public void whenPipelining_ThenMetadataIsSubmittedBeforeTheFilesHaveBeenMoved() {
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        assertThat(filesMovedWhenMetadataWasSubmitted, is(false));
+        assertThat(processedEnvelopes.get(0).getStudies(), containsInAnyOrder(study));
+        assertThat(processedEnvelopes.get(0).getAssays(), containsInAnyOrder(assay));
+        assertThat(processedEnvelopes.get(0).getAssayData(), hasSize(0));
+        assertThat(processedEnvelopes.get(0).getAnalyses(), hasSize(0));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), containsInAnyOrder(
+                completed(study), completed(assay), completed(assayData), completed(analysis)));
+        assertThat(assayData.getFiles().get(0).getName(), is("test/reads_1.fastq.gz"));
+    }
+
+    @Test
+    public void whenPipelining_ThenTheENAStageIsTimedOnceAndEachCallToENAOnItsOwn() {
+        enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        assertThat(meterRegistry.get("ena.agent.stage").tag("stage", "ena_process").timer().count(), is(1L));
+        assertThat(meterRegistry.get("ena.agent.ena.call").timer().count(), is((long) processedEnvelopes.size()));
+        assertThat(processedEnvelopes.size() > 1, is(true));
+    }
+
+    @Test
+    public void whenAFileCanNotBeMoved_ThenOnlyItsSubmittableIsReportedInError() {
+        failedFileMove = SOURCE_FOLDER + "variants.vcf.gz";
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        processedEnvelopes.forEach(processedEnvelope -> assertThat(processedEnvelope.getAnalyses(), hasSize(0)));
+        assertThat(processedEnvelopes.stream().mapToInt(processedEnvelope -> processedEnvelope.getAssayData().size()).sum(), is(1));
+
+        final ProcessingCertificate analysisCertificate = new ProcessingCertificate(analysis, Archive.Ena, ProcessingStatusEnum.Error);
+        analysisCertificate.setMessage(String.format("The file %s could not be moved: failed", failedFileMove));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), containsInAnyOrder(
+                completed(study), completed(assay), completed(assayData), analysisCertificate));
+    }
+
+    @Test
+    public void whenAFileNoSubmittableRefersToCanNotBeMoved_ThenTheSubmissionIsReportedInError() {
+        file("unreferenced.txt");
+        failedFileMove = SOURCE_FOLDER + "unreferenced.txt";
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), hasSize(4));
+        processingCertificateEnvelope.getProcessingCertificates().forEach(certificate -> {
+            assertThat(certificate.getProcessingStatus(), is(ProcessingStatusEnum.Error));
+            assertThat(certificate.getMessage(), is(String.format("The file %s could not be moved: failed", failedFileMove)));
+        });
+    }
+
+    @Test
+    public void whenAFileMoveEndsWithAnException_ThenOnlyItsSubmittableIsReportedInError() {
+        final String brokenFileMove = SOURCE_FOLDER + "variants.vcf.gz";
+        fileMoves.get(brokenFileMove).completeExceptionally(new IllegalStateException("journal not writable"));
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        processedEnvelopes.forEach(processedEnvelope -> assertThat(processedEnvelope.getAnalyses(), hasSize(0)));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), hasItems(
+                completed(study), completed(assay), completed(assayData)));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates().stream()
+                .filter(certificate -> certificate.getProcessingStatus() == ProcessingStatusEnum.Error)
+                .count(), is(1L));
+    }
+
+    @Test
+    public void whenTheSubmittablesChangeWhileTheirFilesMove_ThenTheirFileMovesAreStillFound() {
+        submissionEnvelope.getAssayData().remove(assayData);
+        final AssayData valueEqualAssayData = new AssayData() {
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof AssayData && fileNames(this).equals(fileNames((AssayData) o));
+            }
+
+            @Override
+            public int hashCode() {
+                return fileNames(this).hashCode();
+            }
+        };
+        valueEqualAssayData.setId(assayData.getId());
+        valueEqualAssayData.getFiles().addAll(assayData.getFiles());
+        submissionEnvelope.getAssayData().add(valueEqualAssayData);
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, new SubmissionCheckpoint());
+
+        assertThat(processedEnvelopes.stream().mapToInt(processedEnvelope -> processedEnvelope.getAssayData().size()).sum(), is(1));
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), hasItem(completed(valueEqualAssayData)));
+    }
+
+    @Test
+    public void whenResumingASubmission_ThenTheSubmittablesENAHasAlreadyProcessedAreNotSubmittedAgain() {
+        final SubmissionCheckpoint checkpoint = new SubmissionCheckpoint();
+        study.setAccession("ERP000001");
+        assay.setAccession("ERX000001");
+        checkpoint.recordEnaResults(SubmissionEnvelopes.withoutFileDependentSubmittables(submissionEnvelope).allSubmissionItemsStream(),
+                Collections.emptyList());
+        study.setAccession(null);
+        assay.setAccession(null);
+        completeFileMoves();
+
+        final ProcessingCertificateEnvelope processingCertificateEnvelope =
+                enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, checkpoint);
+
+        processedEnvelopes.forEach(processedEnvelope -> {
+            assertThat(processedEnvelope.getStudies(), hasSize(0));
+            assertThat(processedEnvelope.getAssays(), hasSize(0));
+        });
+        assertThat(processingCertificateEnvelope.getProcessingCertificates(), hasItem(
+                new ProcessingCertificate(study, Archive.Ena, ProcessingStatusEnum.Completed, "ERP000001")));
+    }
+
+    @Test
+    public void whenResumingASubmission_ThenTheChildrenAreSentWithTheAccessionsOfTheirParents() {
+        final SubmissionCheckpoint checkpoint = new SubmissionCheckpoint();
+        study.setAccession("ERP000001");
+        assay.setAccession("ERX000001");
+        checkpoint.recordEnaResults(SubmissionEnvelopes.withoutFileDependentSubmittables(submissionEnvelope).allSubmissionItemsStream(),
+                Collections.emptyList());
+        study.setAccession(null);
+        assay.setAccession(null);
+        completeFileMoves();
+        final List<String> assayAccessionsWhenChildrenWereSent = new ArrayList<>();
+        doAnswer(invocation -> {
+            assayAccessionsWhenChildrenWereSent.add(assay.getAccession());
+            return Collections.emptyList();
+        }).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        enaAgentSubmissionsProcessor.processSubmissionWhileMovingFiles(submissionEnvelope, checkpoint);
+
+        assertThat(assayAccessionsWhenChildrenWereSent, is(not(empty())));
+        assertThat(assayAccessionsWhenChildrenWereSent, everyItem(is("ERX000001")));
+    }
+
+    @Test
+    public void whenADeliveryResumesAfterTheCertificatesWereBuilt_ThenTheyAreSentWithTheTokenOfThatDelivery() {
+        final SubmissionCheckpoint checkpoint = new SubmissionCheckpoint(submissionEnvelope.getSubmission().getId());
+        checkpoint.setProcessingCertificates(Collections.singletonList(completed(study)));
+        checkpoint.complete(SubmissionStage.CERTIFICATES_BUILT);
+        when(submissionCheckpointStore.load(anyString())).thenReturn(checkpoint);
+        final List<ProcessingCertificateEnvelope> sentEnvelopes = new ArrayList<>();
+        when(certificatePublisher.publish(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            sentEnvelopes.add((ProcessingCertificateEnvelope) invocation.getArguments()[2]);
+            return CompletableFuture.completedFuture(null);
+        });
+        submissionEnvelope.setJWTToken("token-of-this-delivery");
+
+        enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelope, mock(Channel.class), 1L);
+
+        assertThat(sentEnvelopes, hasSize(1));
+        assertThat(sentEnvelopes.get(0).getJWTToken(), is("token-of-this-delivery"));
+        assertThat(sentEnvelopes.get(0).getProcessingCertificates(), contains(completed(study)));
+        verify(enaProcessor, never()).process(any(SubmissionEnvelope.class));
+        verify(submissionCheckpointStore).delete(submissionEnvelope.getSubmission().getId());
+    }
+
+    @Test
+    public void whenResultsAreConfirmedAndTheSubmissionFails_ThenItsMessageIsSentBackToTheQueue() throws IOException {
+        when(certificatePublisher.isConfirming()).thenReturn(true);
+        when(submissionCheckpointStore.load(anyString())).thenThrow(new IllegalStateException("the checkpoint is unreadable"));
+        final Channel channel = mock(Channel.class);
+
+        enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelope, channel, 7L);
+
+        verify(channel, timeout(5000)).basicNack(7L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void whenTheFilesDoNotFitInTheFileMoveBudget_ThenTheMessageIsSentBackToTheQueueWithoutAFailure() throws IOException {
+        ReflectionTestUtils.setField(enaAgentSubmissionsProcessor, "requeueDelayMillis", 10L);
+        when(submissionCheckpointStore.load(anyString())).thenReturn(new SubmissionCheckpoint(submissionEnvelope.getSubmission().getId()));
+        when(fileMoveService.startMovingFiles(anyListOf(UploadedFile.class))).thenThrow(new FileMoveAdmissionException("no budget"));
+        final Channel channel = mock(Channel.class);
+
+        enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelope, channel, 3L);
+
+        verify(channel, timeout(5000)).basicNack(3L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertThat(meterRegistry.get("ena.agent.submissions").tag("outcome", "failed").counter().count(), is(0.0));
+    }
+
+    @Test
+    public void whenASubmissionCanNotBeHandedOverForProcessing_ThenItsMessageIsRejected() throws IOException {
+        submissionEnvelope.setSubmission(null);
+        final Channel channel = mock(Channel.class);
+
+        enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelope, channel, 5L);
+
+        verify(channel).basicReject(5L, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void whenSendingCertificatesInChunks_ThenEachChunkHasItsSequenceAndTheLastOneIsMarked() {
+        ReflectionTestUtils.setField(enaAgentSubmissionsProcessor, "certificateChunkSize", 3);
+        when(submissionCheckpointStore.load(anyString())).thenReturn(new SubmissionCheckpoint(submissionEnvelope.getSubmission().getId()));
+        final List<ProcessingCertificateEnvelope> chunks = new ArrayList<>();
+        final List<Map<String, Object>> chunkHeaders = new ArrayList<>();
+        when(certificatePublisher.publish(anyString(), anyString(), any(), anyMapOf(String.class, Object.class))).thenAnswer(invocation -> {
+            chunks.add((ProcessingCertificateEnvelope) invocation.getArguments()[2]);
+            chunkHeaders.add((Map<String, Object>) invocation.getArguments()[3]);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        enaAgentSubmissionsProcessor.handleSubmission(submissionEnvelope, mock(Channel.class), 1L);
+
+        assertThat(chunks, hasSize(2));
+        assertThat(chunks.get(0).getProcessingCertificates(), contains(
+                completed(study), completed(assay), completed(assayData)));
+        assertThat(chunks.get(1).getProcessingCertificates(), contains(completed(analysis)));
+        assertThat(chunkHeaders.get(0).get(CertificatePublisher.CHUNK_SEQUENCE_HEADER), is(0));
+        assertThat(chunkHeaders.get(0).get(CertificatePublisher.LAST_CHUNK_HEADER), is(false));
+        assertThat(chunkHeaders.get(1).get(CertificatePublisher.CHUNK_SEQUENCE_HEADER), is(1));
+        assertThat(chunkHeaders.get(1).get(CertificatePublisher.LAST_CHUNK_HEADER), is(true));
+    }
+
+    private void completeFileMoves() {
+        fileMoves.forEach((sourcePath, fileMove) -> fileMove.complete(sourcePath.equals(failedFileMove)
+                ? FileMoveResult.failed(sourcePath, "failed")
+                : FileMoveResult.succeeded(sourcePath)));
+    }
+
+    private static List<String> fileNames(AssayData assayData) {
+        return assayData.getFiles().stream().map(File::getName).collect(Collectors.toList());
+    }
+
+    private File file(String filename) {
+        File file = new File();
+        file.setName(filename);
+
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setFilename(filename);
+        uploadedFile.setPath(SOURCE_FOLDER + filename);
+        uploadedFile.setChecksum("1234567890abcdefabcd1234567890ab");
+        submissionEnvelope.getUploadedFiles().add(uploadedFile);
+        fileMoves.put(uploadedFile.getPath(), new CompletableFuture<>());
+
+        return file;
+    }
+
+    private ProcessingCertificate completed(uk.ac.ebi.subs.data.submittable.Submittable submittable) {
+        return new ProcessingCertificate(submittable, Archive.Ena, ProcessingStatusEnum.Completed, submittable.getAccession());
+    }
+}
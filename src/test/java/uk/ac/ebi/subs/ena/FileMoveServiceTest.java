@@ -0,0 +1,494 @@
+package uk.ac.ebi.subs.ena;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
+import uk.ac.ebi.subs.ena.checksum.ChecksumVerifier;
+import uk.ac.ebi.subs.ena.filemove.ArchivedFileCache;
+import uk.ac.ebi.subs.ena.filemove.FakeSsh;
+import uk.ac.ebi.subs.ena.filemove.FileMoveAdmissionController;
+import uk.ac.ebi.subs.ena.filemove.FileMoveJournal;
+import uk.ac.ebi.subs.ena.filemove.FileMoveResult;
+import uk.ac.ebi.subs.ena.filemove.FileMoveWatchdog;
+import uk.ac.ebi.subs.ena.filemove.SshConnectionManager;
+import uk.ac.ebi.subs.ena.filemove.SshFileMoveTransport;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileMoveServiceTest {
+
+    private static final String SOURCE_BASE_FOLDER = "ready_to_agent";
+    private static final String ACTIVE_PROFILE = "test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SshConnectionManager sshConnectionManager;
+
+    private FileMoveService fileMoveService;
+
+    private FakeSsh fakeSsh;
+
+    private Path sourceBasePath;
+
+    private Path webinFolderPath;
+
+    private MeterRegistry meterRegistry;
+
+    private FileMoveWatchdog fileMoveWatchdog;
+
+    private ChecksumVerifier checksumVerifier;
+
+    private FileMoveAdmissionController fileMoveAdmissionController;
+
+    private ArchivedFileCache archivedFileCache;
+
+    private SshFileMoveTransport sshFileMoveTransport;
+
+    @Before
+    public void setup() throws IOException {
+        fakeSsh = new FakeSsh(temporaryFolder.newFolder("fake-ssh"));
+        sourceBasePath = temporaryFolder.newFolder("upload", SOURCE_BASE_FOLDER).toPath();
+        webinFolderPath = temporaryFolder.newFolder("webin").toPath();
+
+        final String logFilePath = temporaryFolder.getRoot().toPath().resolve("filemove.log").toString();
+
+        sshConnectionManager = new SshConnectionManager();
+        ReflectionTestUtils.setField(sshConnectionManager, "remoteHostName", "localhost");
+        ReflectionTestUtils.setField(sshConnectionManager, "fileMoveUsername", "fileuploadusername");
+        ReflectionTestUtils.setField(sshConnectionManager, "logFilePath", logFilePath);
+        ReflectionTestUtils.setField(sshConnectionManager, "sshCommand", fakeSsh.getSshCommand());
+        ReflectionTestUtils.setField(sshConnectionManager, "multiplexing", true);
+        ReflectionTestUtils.setField(sshConnectionManager, "controlDir", temporaryFolder.newFolder("ssh-control").toString());
+        ReflectionTestUtils.setField(sshConnectionManager, "controlPersistSeconds", 60);
+
+        meterRegistry = new SimpleMeterRegistry();
+        fileMoveWatchdog = new FileMoveWatchdog();
+        ReflectionTestUtils.setField(fileMoveWatchdog, "timeoutBaseSeconds", 60L);
+        ReflectionTestUtils.setField(fileMoveWatchdog, "minThroughputBytesPerSecond", 1048576L);
+        ReflectionTestUtils.setField(fileMoveWatchdog, "timeoutUnknownSizeSeconds", 60L);
+        ReflectionTestUtils.setField(fileMoveWatchdog, "watchdogIntervalMillis", 100L);
+        ReflectionTestUtils.setField(fileMoveWatchdog, "watchdogGraceSeconds", 30L);
+
+        final EnaAgentMetrics enaAgentMetrics = new EnaAgentMetrics(meterRegistry);
+        sshFileMoveTransport = new SshFileMoveTransport(sshConnectionManager, enaAgentMetrics, fileMoveWatchdog);
+        ReflectionTestUtils.setField(sshFileMoveTransport, "webinFolderPath", webinFolderPath.toString());
+        ReflectionTestUtils.setField(sshFileMoveTransport, "scriptPath", fakeSsh.getScriptPath());
+        ReflectionTestUtils.setField(sshFileMoveTransport, "logFilePath", logFilePath);
+        ReflectionTestUtils.setField(sshFileMoveTransport, "activeProfile", ACTIVE_PROFILE);
+        ReflectionTestUtils.setField(sshFileMoveTransport, "archivedFileCheckTimeoutSeconds", 60L);
+
+        checksumVerifier = new ChecksumVerifier(enaAgentMetrics);
+
+        fileMoveAdmissionController = new FileMoveAdmissionController(enaAgentMetrics);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightBytes", 1024L * 1024L * 1024L);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightMoves", 1000);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "waitMillis", 1000L);
+        fileMoveAdmissionController.afterPropertiesSet();
+
+        archivedFileCache = new ArchivedFileCache(mock(FileMoveJournal.class), enaAgentMetrics);
+        ReflectionTestUtils.setField(archivedFileCache, "maxEntries", 100);
+
+        fileMoveService = new FileMoveService(sshFileMoveTransport, checksumVerifier, fileMoveAdmissionController,
+                archivedFileCache, enaAgentMetrics);
+        ReflectionTestUtils.setField(fileMoveService, "webinFolderPath", webinFolderPath.toString());
+        ReflectionTestUtils.setField(fileMoveService, "sourceBaseFolder", SOURCE_BASE_FOLDER);
+        ReflectionTestUtils.setField(fileMoveService, "batchSize", 500);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMoves", 8);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 8);
+        ReflectionTestUtils.setField(fileMoveService, "largestFirst", true);
+        ReflectionTestUtils.setField(fileMoveService, "expectedThroughputBytesPerSecond", 52428800L);
+        ReflectionTestUtils.setField(fileMoveService, "activeProfile", ACTIVE_PROFILE);
+        sshConnectionManager.afterPropertiesSet();
+        fileMoveWatchdog.afterPropertiesSet();
+        fileMoveService.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        fileMoveService.destroy();
+        checksumVerifier.destroy();
+        fileMoveWatchdog.destroy();
+        sshConnectionManager.destroy();
+    }
+
+    @Test
+    public void whenMovingManyFiles_ThenEachParallelSSHSessionMovesAShareOfThem() throws IOException {
+        List<UploadedFile> uploadedFiles = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            uploadedFiles.add(createUploadedFile("team/submission/file " + i + ".fastq.gz"));
+        }
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(uploadedFiles);
+
+        assertThat(results, hasSize(50));
+        results.forEach(result -> assertThat(result.toString(), result.isSuccessful(), is(true)));
+        assertThat(Files.exists(webinFolderPath.resolve(ACTIVE_PROFILE).resolve("team/submission/file 49.fastq.gz")), is(true));
+        assertThat(fakeSsh.getInvocations(), hasSize(8));
+        assertThat(fakeSsh.getConnections(), hasSize(1));
+    }
+
+    @Test
+    public void whenAFileCanNotBeMoved_ThenOnlyThatFileIsReportedAsFailed() throws IOException {
+        final UploadedFile existingFile = createUploadedFile("team/submission/existing.fastq.gz");
+        final UploadedFile missingFile = uploadedFile("team/submission/missing.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(existingFile, missingFile));
+
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(results.get(1).getSourcePath(), is(missingFile.getPath()));
+    }
+
+    @Test
+    public void whenFilesAreMoved_ThenTheirMoveTimesAndFailuresAreRecorded() throws IOException {
+        final UploadedFile smallFile = createUploadedFile("team/submission/small.fastq.gz");
+        smallFile.setTotalSize(1024L);
+        final UploadedFile largeFile = createUploadedFile("team/submission/large.fastq.gz");
+        largeFile.setTotalSize(5L * 1024 * 1024 * 1024);
+        final UploadedFile missingFile = uploadedFile("team/submission/missing.fastq.gz");
+
+        fileMoveService.moveFiles(Arrays.asList(smallFile, largeFile, missingFile));
+
+        assertThat(meterRegistry.find("ena.agent.file_move").tags("size", "<1MB").timer().count(), is(1L));
+        assertThat(meterRegistry.find("ena.agent.file_move").tags("size", "1GB-10GB").timer().count(), is(1L));
+        assertThat(meterRegistry.find("ena.agent.file_move.failures").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void whenFilesHaveFinishedMoving_ThenTheirShareOfTheBudgetIsGivenBack() throws IOException {
+        final UploadedFile existingFile = createUploadedFile("team/submission/existing.fastq.gz");
+        existingFile.setTotalSize(1024L);
+        final UploadedFile missingFile = uploadedFile("team/submission/missing.fastq.gz");
+        missingFile.setTotalSize(2048L);
+
+        fileMoveService.moveFiles(Arrays.asList(existingFile, missingFile));
+
+        assertThat(fileMoveAdmissionController.getInFlightBytes(), is(0L));
+        assertThat(fileMoveAdmissionController.getInFlightMoves(), is(0));
+    }
+
+    @Test
+    public void whenTheMovesCanNotBeStarted_ThenTheShareOfTheBudgetIsGivenBack() throws IOException {
+        final ChecksumVerifier brokenChecksumVerifier = mock(ChecksumVerifier.class);
+        when(brokenChecksumVerifier.verify(anyListOf(UploadedFile.class))).thenThrow(new RejectedExecutionException("shut down"));
+        ReflectionTestUtils.setField(fileMoveService, "checksumVerifier", brokenChecksumVerifier);
+        final UploadedFile existingFile = createUploadedFile("team/submission/existing.fastq.gz");
+        existingFile.setTotalSize(1024L);
+
+        try {
+            fileMoveService.startMovingFiles(Collections.singletonList(existingFile));
+            fail("Starting the moves should have failed.");
+        } catch (RejectedExecutionException e) {
+            assertThat(fileMoveAdmissionController.getInFlightBytes(), is(0L));
+            assertThat(fileMoveAdmissionController.getInFlightMoves(), is(0));
+        }
+    }
+
+    @Test
+    public void whenTheArchivedFileCheckFails_ThenItIsReportedAsAnError() {
+        ReflectionTestUtils.setField(sshFileMoveTransport, "webinFolderPath", webinFolderPath.resolve("missing").toString());
+
+        try {
+            sshFileMoveTransport.findArchivedFiles(Collections.singletonList("team/submission/existing.fastq.gz"));
+            fail("The check should have failed.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("exit code"));
+        }
+    }
+
+    @Test
+    public void whenTheArchivedFileCheckHangs_ThenItIsKilledOnceItHasTimedOut() throws IOException {
+        final Path hangingSsh = temporaryFolder.getRoot().toPath().resolve("hanging-ssh");
+        Files.write(hangingSsh, "#!/bin/sh\nexec sleep 60\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(hangingSsh.toFile().setExecutable(true), is(true));
+        ReflectionTestUtils.setField(sshConnectionManager, "sshCommand", hangingSsh.toString());
+        ReflectionTestUtils.setField(sshFileMoveTransport, "archivedFileCheckTimeoutSeconds", 1L);
+        final long start = System.currentTimeMillis();
+
+        try {
+            sshFileMoveTransport.findArchivedFiles(Collections.singletonList("team/submission/existing.fastq.gz"));
+            fail("The check should have timed out.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("did not finish within 1 seconds"));
+            assertThat(System.currentTimeMillis() - start, is(lessThan(10000L)));
+        }
+    }
+
+    @Test
+    public void whenThereAreMoreFilesThanTheBatchSize_ThenTheyAreMovedInChunks() throws IOException {
+        ReflectionTestUtils.setField(fileMoveService, "batchSize", 4);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 1);
+        List<UploadedFile> uploadedFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            uploadedFiles.add(createUploadedFile("team/submission/file" + i + ".fastq.gz"));
+        }
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(uploadedFiles);
+
+        assertThat(results, hasSize(10));
+        results.forEach(result -> assertThat(result.toString(), result.isSuccessful(), is(true)));
+        assertThat(fakeSsh.getInvocations(), hasSize(3));
+    }
+
+    @Test
+    public void whenMovingFilesInParallel_ThenItTakesAboutAsLongAsTheSlowestMove() throws IOException {
+        fakeSsh.setMoveScript("sleep 1", "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"");
+        List<UploadedFile> uploadedFiles = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            uploadedFiles.add(createUploadedFile("team/submission/file" + i + ".fastq.gz"));
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<FileMoveResult> results = fileMoveService.moveFiles(uploadedFiles);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        results.forEach(result -> assertThat(result.toString(), result.isSuccessful(), is(true)));
+        assertThat(elapsed, is(lessThan(4000L)));
+    }
+
+    @Test
+    public void whenSeveralFilesCanNotBeMoved_ThenEveryOneOfThemIsReportedAsFailed() throws IOException {
+        List<UploadedFile> uploadedFiles = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            uploadedFiles.add(i % 2 == 0
+                    ? createUploadedFile("team/submission/file" + i + ".fastq.gz")
+                    : uploadedFile("team/submission/file" + i + ".fastq.gz"));
+        }
+
+        final List<String> failedSourcePaths = fileMoveService.moveFiles(uploadedFiles).stream()
+                .filter(result -> !result.isSuccessful())
+                .map(FileMoveResult::getSourcePath)
+                .collect(Collectors.toList());
+
+        assertThat(failedSourcePaths, containsInAnyOrder(
+                uploadedFiles.get(1).getPath(), uploadedFiles.get(3).getPath(), uploadedFiles.get(5).getPath()));
+    }
+
+    @Test
+    public void whenTheSSHCommandFails_ThenEveryFileOfTheBatchIsReportedAsFailed() throws IOException {
+        ReflectionTestUtils.setField(sshConnectionManager, "sshCommand", "/bin/false");
+        final UploadedFile uploadedFile = createUploadedFile("team/submission/file.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(uploadedFile));
+
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).isSuccessful(), is(false));
+    }
+
+    @Test
+    public void whenAMoveFailsOnce_ThenOnlyThatFileIsMovedAgainAfterABackoff() throws IOException {
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxAttempts", 3);
+        ReflectionTestUtils.setField(fileMoveService, "retryInitialDelayMillis", 10L);
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxDelayMillis", 100L);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 1);
+        fakeSsh.setMoveScript(
+                "case \"$1\" in *flaky*) [ -e \"$2/$1.tried\" ] || { touch \"$2/$1.tried\"; exit 1; } ;; esac",
+                "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"");
+        final UploadedFile stableFile = createUploadedFile("team/submission/stable.fastq.gz");
+        final UploadedFile flakyFile = createUploadedFile("team/submission/flaky.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(stableFile, flakyFile));
+
+        results.forEach(result -> assertThat(result.toString(), result.isSuccessful(), is(true)));
+        assertThat(fakeSsh.getInvocations(), hasSize(2));
+        assertThat(meterRegistry.find("ena.agent.file_move.retries").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void whenAFileFailsOnEveryAttempt_ThenItIsReportedAsFailedOnceItsAttemptsAreUsedUp() throws IOException {
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxAttempts", 3);
+        ReflectionTestUtils.setField(fileMoveService, "retryInitialDelayMillis", 10L);
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxDelayMillis", 100L);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 1);
+        final UploadedFile movedFile = createUploadedFile("team/submission/moved.fastq.gz");
+        final UploadedFile missingFile = uploadedFile("team/submission/missing.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(movedFile, missingFile));
+
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(fakeSsh.getInvocations(), hasSize(3));
+        assertThat(meterRegistry.find("ena.agent.file_move.retries").counter().count(), is(2.0));
+    }
+
+    @Test
+    public void whenAFileDoesNotMatchItsChecksum_ThenItIsReportedAsFailedWithoutBeingMoved() throws IOException {
+        ReflectionTestUtils.setField(checksumVerifier, "enabled", true);
+        ReflectionTestUtils.setField(checksumVerifier, "threads", 2);
+        ReflectionTestUtils.setField(checksumVerifier, "bufferSizeBytes", 4096);
+        ReflectionTestUtils.setField(checksumVerifier, "cacheSize", 10);
+        checksumVerifier.afterPropertiesSet();
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxAttempts", 3);
+        final UploadedFile intactFile = createUploadedFile("team/submission/intact.fastq.gz");
+        intactFile.setChecksum(DigestUtils.md5DigestAsHex("team/submission/intact.fastq.gz".getBytes()));
+        final UploadedFile corruptedFile = createUploadedFile("team/submission/corrupted.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(intactFile, corruptedFile));
+
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(results.get(1).getMessage(), containsString("checksum"));
+        assertThat(Files.exists(sourceBasePath.resolve("team/submission/corrupted.fastq.gz")), is(true));
+        assertThat(fakeSsh.getInvocations(), hasSize(1));
+        assertThat(meterRegistry.find("ena.agent.checksum.mismatches").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void whenRetrying_ThenTheDelayGrowsExponentiallyUpToTheMaximum() {
+        ReflectionTestUtils.setField(fileMoveService, "retryInitialDelayMillis", 1000L);
+        ReflectionTestUtils.setField(fileMoveService, "retryMaxDelayMillis", 5000L);
+
+        assertThat(fileMoveService.retryDelayMillis(1), is(both(greaterThanOrEqualTo(500L)).and(lessThanOrEqualTo(1000L))));
+        assertThat(fileMoveService.retryDelayMillis(3), is(both(greaterThanOrEqualTo(2000L)).and(lessThanOrEqualTo(4000L))));
+        assertThat(fileMoveService.retryDelayMillis(10), is(both(greaterThanOrEqualTo(2500L)).and(lessThanOrEqualTo(5000L))));
+    }
+
+    @Test
+    public void whenAMoveHangs_ThenItIsKilledOnTheRemoteHostAndTheNextFilesStillMove() throws IOException {
+        ReflectionTestUtils.setField(fileMoveWatchdog, "timeoutBaseSeconds", 1L);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 1);
+        fakeSsh.setMoveScript(
+                "case \"$1\" in *hanging*) sleep 37 ;; esac",
+                "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"");
+        final UploadedFile movedFile = createUploadedFile("team/submission/moved.fastq.gz");
+        movedFile.setTotalSize(1024L);
+        final UploadedFile hangingFile = createUploadedFile("team/submission/hanging.fastq.gz");
+        hangingFile.setTotalSize(1024L);
+        final UploadedFile nextFile = createUploadedFile("team/submission/next.fastq.gz");
+
+        final long start = System.currentTimeMillis();
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(movedFile, hangingFile, nextFile));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(elapsed, is(lessThan(10000L)));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(results.get(1).getMessage(), containsString("timed out"));
+        assertThat(results.get(1).getMessage(), containsString(hangingFile.getPath()));
+        assertThat(results.get(2).isSuccessful(), is(true));
+        assertThat(ProcessHandle.allProcesses()
+                .anyMatch(process -> process.info().commandLine().orElse("").endsWith("sleep 37")), is(false));
+        assertThat(fileMoveWatchdog.getInFlightMoveCount(), is(0));
+    }
+
+    @Test
+    public void whenAMoveCommandHangsPastItsGrace_ThenTheWatchdogKillsItAndReportsTheFileAsTimedOut() throws IOException {
+        ReflectionTestUtils.setField(fileMoveWatchdog, "timeoutBaseSeconds", 1L);
+        ReflectionTestUtils.setField(fileMoveWatchdog, "watchdogGraceSeconds", 1L);
+        ReflectionTestUtils.setField(fileMoveService, "maxConcurrentMovesPerHost", 1);
+        fakeSsh.setMoveScript(
+                "case \"$1\" in *hanging*) trap '' TERM; sleep 38 ;; esac",
+                "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"");
+        final UploadedFile hangingFile = createUploadedFile("team/submission/hanging.fastq.gz");
+        hangingFile.setTotalSize(1024L);
+        final UploadedFile pendingFile = createUploadedFile("team/submission/pending.fastq.gz");
+
+        final long start = System.currentTimeMillis();
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(hangingFile, pendingFile));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(elapsed, is(lessThan(10000L)));
+        assertThat(results.get(0).isSuccessful(), is(false));
+        assertThat(results.get(0).getMessage(), containsString("timed out"));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(fileMoveWatchdog.getInFlightMoveCount(), is(0));
+    }
+
+    @Test
+    public void whenAFileHasBeenMovedBefore_ThenItIsNotMovedAgain() throws IOException {
+        final UploadedFile uploadedFile = createUploadedFile("team/submission/file.fastq.gz");
+        fileMoveService.moveFiles(Arrays.asList(uploadedFile));
+        final UploadedFile resentFile = createUploadedFile("team/submission/file.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(resentFile));
+
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(0).getSourcePath(), is(resentFile.getPath()));
+        assertThat(Files.exists(sourceBasePath.resolve("team/submission/file.fastq.gz")), is(true));
+        assertThat(fakeSsh.getInvocations(), hasSize(2));
+        assertThat(meterRegistry.find("ena.agent.file_move.skipped").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void whenAFileHasBeenMovedBeforeButIsNotInTheWebinFolderAnyMore_ThenItIsMovedAgain() throws IOException {
+        final UploadedFile uploadedFile = createUploadedFile("team/submission/file.fastq.gz");
+        fileMoveService.moveFiles(Arrays.asList(uploadedFile));
+        Files.delete(webinFolderPath.resolve(ACTIVE_PROFILE).resolve("team/submission/file.fastq.gz"));
+        final UploadedFile resentFile = createUploadedFile("team/submission/file.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(resentFile));
+
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(Files.exists(sourceBasePath.resolve("team/submission/file.fastq.gz")), is(false));
+        assertThat(fakeSsh.getInvocations(), hasSize(3));
+        assertThat(meterRegistry.find("ena.agent.file_move.skipped").counter().count(), is(0.0));
+    }
+
+    @Test
+    public void whenAFileIsListedTwice_ThenItIsMovedOnce() throws IOException {
+        final UploadedFile uploadedFile = createUploadedFile("team/submission/file.fastq.gz");
+        final UploadedFile sameFile = uploadedFile("team/submission/file.fastq.gz");
+
+        final List<FileMoveResult> results = fileMoveService.moveFiles(Arrays.asList(uploadedFile, sameFile));
+
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(fakeSsh.getInvocations(), hasSize(1));
+    }
+
+    @Test
+    public void whenMovingNoFiles_ThenNoSSHSessionIsOpened() throws IOException {
+        assertThat(fileMoveService.moveFiles(new ArrayList<>()), hasSize(0));
+        assertThat(fakeSsh.getInvocations(), hasSize(0));
+    }
+
+    private UploadedFile createUploadedFile(String relativePath) throws IOException {
+        final UploadedFile uploadedFile = uploadedFile(relativePath);
+        final Path path = sourceBasePath.resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        Files.write(path, relativePath.getBytes());
+        return uploadedFile;
+    }
+
+    private UploadedFile uploadedFile(String relativePath) {
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setPath(sourceBasePath.resolve(relativePath).toString());
+        uploadedFile.setFilename(sourceBasePath.resolve(relativePath).getFileName().toString());
+        uploadedFile.setChecksum("1234567890abcdefabcd1234567890ab");
+        return uploadedFile;
+    }
+}
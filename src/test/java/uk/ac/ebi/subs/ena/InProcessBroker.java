@@ -0,0 +1,43 @@
+package uk.ac.ebi.subs.ena;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the broker, which takes every message sent to it and counts them by routing key,
+ * so the agent can send its results without a RabbitMQ server.
+ * The messages are converted as usual before they get here, only the network round trip is left out.
+ * It never connects, so it can not be used with publisher confirms.
+ */
+public class InProcessBroker extends RabbitTemplate {
+
+    private final Map<String, AtomicInteger> messagesByRoutingKey = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    public InProcessBroker() {
+        super(new CachingConnectionFactory());
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        messagesByRoutingKey.computeIfAbsent(routingKey, key -> new AtomicInteger()).incrementAndGet();
+        bytes.addAndGet(message.getBody().length);
+    }
+
+    public int getMessages(String routingKey) {
+        final AtomicInteger messages = messagesByRoutingKey.get(routingKey);
+        return messages == null ? 0 : messages.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+}
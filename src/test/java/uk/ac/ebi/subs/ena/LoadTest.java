@@ -0,0 +1,7 @@
+package uk.ac.ebi.subs.ena;
+
+/**
+ * Marker interface for load tests, which only run with the loadTest task
+ */
+public interface LoadTest {
+}
@@ -0,0 +1,159 @@
+package uk.ac.ebi.subs.ena;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.data.Submission;
+import uk.ac.ebi.subs.data.submittable.Analysis;
+import uk.ac.ebi.subs.data.submittable.Assay;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.data.submittable.Study;
+import uk.ac.ebi.subs.data.submittable.Submittable;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PartitionedEnaProcessorTest {
+
+    private ENAProcessor enaProcessor;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PartitionedEnaProcessor partitionedEnaProcessor;
+
+    private SubmissionEnvelope submissionEnvelope;
+
+    private final List<SubmissionEnvelope> sentEnvelopes = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<SubmissionEnvelope> handedOverEnvelopes = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        enaProcessor = mock(ENAProcessor.class);
+        when(enaProcessor.process(any(SubmissionEnvelope.class))).thenAnswer(invocation -> {
+            sentEnvelopes.add((SubmissionEnvelope) invocation.getArguments()[0]);
+            return Collections.emptyList();
+        });
+
+        meterRegistry = new SimpleMeterRegistry();
+        partitionedEnaProcessor = new PartitionedEnaProcessor(enaProcessor, new EnaAgentMetrics(meterRegistry));
+        ReflectionTestUtils.setField(partitionedEnaProcessor, "enabled", true);
+        ReflectionTestUtils.setField(partitionedEnaProcessor, "partitionSize", 2);
+        ReflectionTestUtils.setField(partitionedEnaProcessor, "concurrency", 3);
+        partitionedEnaProcessor.afterPropertiesSet();
+
+        submissionEnvelope = new SubmissionEnvelope(new Submission());
+        submissionEnvelope.getStudies().add(withId(new Study()));
+        submissionEnvelope.getAssays().add(withId(new Assay()));
+        for (int i = 0; i < 3; i++) {
+            submissionEnvelope.getAssayData().add(withId(new AssayData()));
+        }
+        for (int i = 0; i < 2; i++) {
+            submissionEnvelope.getAnalyses().add(withId(new Analysis()));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        partitionedEnaProcessor.destroy();
+    }
+
+    @Test
+    public void whenASubmissionIsLarge_ThenItsParentsGoFirstAndItsPartitionsGoTogether() {
+        final CountDownLatch allPartitionsSent = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            final SubmissionEnvelope envelope = (SubmissionEnvelope) invocation.getArguments()[0];
+            sentEnvelopes.add(envelope);
+            if (envelope.getStudies().isEmpty()) {
+                allPartitionsSent.countDown();
+                if (!allPartitionsSent.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("The partitions were not sent together.");
+                }
+            }
+            return Collections.emptyList();
+        }).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        partitionedEnaProcessor.process(submissionEnvelope, (envelope, validationResults) -> handedOverEnvelopes.add(envelope));
+
+        assertThat(sentEnvelopes, hasSize(4));
+        assertThat(meterRegistry.get("ena.agent.ena.call").timer().count(), is(4L));
+        assertThat(handedOverEnvelopes.get(0).getStudies(), is(submissionEnvelope.getStudies()));
+        assertThat(handedOverEnvelopes.get(0).getAssays(), is(submissionEnvelope.getAssays()));
+        assertThat(handedOverEnvelopes.get(0).getAssayData(), hasSize(0));
+        assertThat(handedOverEnvelopes.stream().skip(1)
+                        .map(envelope -> (int) SubmissionEnvelopes.fileDependentSubmittables(envelope).count())
+                        .collect(Collectors.toList()),
+                contains(2, 2, 1));
+        assertThat(handedOverEnvelopes.stream().skip(1)
+                        .flatMap(SubmissionEnvelopes::fileDependentSubmittables)
+                        .collect(Collectors.toList()),
+                is(SubmissionEnvelopes.fileDependentSubmittables(submissionEnvelope).collect(Collectors.toList())));
+    }
+
+    @Test
+    public void whenENADoesNotAcceptTheParents_ThenTheirDependentsAreNotSent() {
+        final SingleValidationResult validationResult = new SingleValidationResult();
+        doReturn(Collections.singletonList(validationResult)).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        partitionedEnaProcessor.process(submissionEnvelope, (envelope, validationResults) -> handedOverEnvelopes.add(envelope));
+
+        assertThat(handedOverEnvelopes, hasSize(1));
+        assertThat(handedOverEnvelopes.get(0).getAssayData(), hasSize(0));
+    }
+
+    @Test
+    public void whenAPartitionFails_ThenTheOthersAreStillHandedOver() {
+        final AssayData failingAssayData = submissionEnvelope.getAssayData().get(0);
+        doAnswer(invocation -> {
+            final SubmissionEnvelope envelope = (SubmissionEnvelope) invocation.getArguments()[0];
+            if (envelope.getAssayData().contains(failingAssayData)) {
+                throw new IllegalStateException("ENA is down");
+            }
+            return Collections.emptyList();
+        }).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        try {
+            partitionedEnaProcessor.process(submissionEnvelope, (envelope, validationResults) -> handedOverEnvelopes.add(envelope));
+            fail("The failure of a partition should be passed on.");
+        } catch (IllegalStateException e) {
+            assertThat(handedOverEnvelopes, hasSize(3));
+        }
+    }
+
+    @Test
+    public void whenASubmissionIsSmall_ThenItGoesWhole() {
+        ReflectionTestUtils.setField(partitionedEnaProcessor, "partitionSize", 5);
+
+        partitionedEnaProcessor.process(submissionEnvelope, (envelope, validationResults) -> handedOverEnvelopes.add(envelope));
+
+        assertThat(sentEnvelopes, contains(submissionEnvelope));
+        assertThat(handedOverEnvelopes, contains(submissionEnvelope));
+    }
+
+    private static <T extends Submittable> T withId(T submittable) {
+        submittable.setId(UUID.randomUUID().toString());
+        return submittable;
+    }
+}
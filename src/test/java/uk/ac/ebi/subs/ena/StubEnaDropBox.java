@@ -0,0 +1,189 @@
+package uk.ac.ebi.subs.ena;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for the ENA drop-box, which accepts every object it is sent and gives it a made up accession.
+ * It takes a little while to answer, so that the submissions sent to it at the same time overlap.
+ *
+ * Add {@link Initializer} to the initializers of a test context to point ena.submission.url at a new stub drop-box,
+ * which the test can then autowire. The stub answers after stubEnaDropBox.answerDelayMillis, 200 ms by default.
+ */
+public class StubEnaDropBox implements DisposableBean {
+
+    static final String SUBMIT_PATH = "/ena/submit/drop-box/submit";
+
+    private static final Pattern OBJECT_ALIAS =
+            Pattern.compile("<(PROJECT|STUDY|SAMPLE|EXPERIMENT|RUN|ANALYSIS)\\b[^>]*?\\balias=\"([^\"]+)\"");
+
+    static final long DEFAULT_ANSWER_DELAY_MILLIS = 200;
+
+    private final long answerDelayMillis;
+
+    private final HttpServer httpServer;
+
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger accessionSequence = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final List<String> receivedAliases = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger submissions = new AtomicInteger();
+
+    StubEnaDropBox(long answerDelayMillis) throws IOException {
+        this.answerDelayMillis = answerDelayMillis;
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext(SUBMIT_PATH, this::submit);
+        httpServer.setExecutor(requestExecutor);
+        httpServer.start();
+    }
+
+    String getUrl() {
+        return "http://localhost:" + httpServer.getAddress().getPort() + SUBMIT_PATH;
+    }
+
+    int getSubmissions() {
+        return submissions.get();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    List<String> getReceivedAliases() {
+        return receivedAliases;
+    }
+
+    @Override
+    public void destroy() {
+        httpServer.stop(0);
+        requestExecutor.shutdownNow();
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        submissions.incrementAndGet();
+        try {
+            String request = read(exchange.getRequestBody());
+            final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                request = URLDecoder.decode(request, StandardCharsets.UTF_8.name());
+            }
+
+            final StringBuilder receipt = new StringBuilder()
+                    .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<RECEIPT receiptDate=\"2026-01-01T00:00:00.000Z\" submissionFile=\"SUBMISSION\" success=\"true\">\n");
+            final Matcher matcher = OBJECT_ALIAS.matcher(request);
+            while (matcher.find()) {
+                receivedAliases.add(matcher.group(2));
+                receipt.append(String.format("  <%s accession=\"%s\" alias=\"%s\" status=\"PRIVATE\"/>%n",
+                        matcher.group(1), accession(matcher.group(1)), matcher.group(2)));
+            }
+            receipt.append(String.format("  <SUBMISSION accession=\"%s\" alias=\"stub-submission-%d\"/>%n",
+                    accession("SUBMISSION"), submissions.get()))
+                    .append("  <MESSAGES><INFO>This submission is a TEST submission and will be discarded within 24 hours</INFO></MESSAGES>\n")
+                    .append("  <ACTIONS>ADD</ACTIONS>\n")
+                    .append("</RECEIPT>\n");
+
+            Thread.sleep(answerDelayMillis);
+
+            final byte[] response = receipt.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String accession(String objectType) {
+        final String prefix;
+        switch (objectType) {
+            case "PROJECT":
+                prefix = "PRJEB";
+                break;
+            case "STUDY":
+                prefix = "ERP";
+                break;
+            case "SAMPLE":
+                prefix = "ERS";
+                break;
+            case "EXPERIMENT":
+                prefix = "ERX";
+                break;
+            case "RUN":
+                prefix = "ERR";
+                break;
+            case "ANALYSIS":
+                prefix = "ERZ";
+                break;
+            default:
+                prefix = "ERA";
+        }
+        return String.format("%s%06d", prefix, accessionSequence.incrementAndGet());
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a stub drop-box for the context, registers it as a bean and points ena.submission.url at it.
+     */
+    public static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext applicationContext) {
+            final StubEnaDropBox stubEnaDropBox;
+            try {
+                stubEnaDropBox = new StubEnaDropBox(applicationContext.getEnvironment()
+                        .getProperty("stubEnaDropBox.answerDelayMillis", Long.class, DEFAULT_ANSWER_DELAY_MILLIS));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start the stub ENA drop-box.", e);
+            }
+
+            final DefaultListableBeanFactory beanFactory = (DefaultListableBeanFactory) applicationContext.getBeanFactory();
+            beanFactory.registerSingleton("stubEnaDropBox", stubEnaDropBox);
+            beanFactory.registerDisposableBean("stubEnaDropBox", stubEnaDropBox);
+            EnvironmentTestUtils.addEnvironment(applicationContext, "ena.submission.url=" + stubEnaDropBox.getUrl());
+        }
+    }
+}
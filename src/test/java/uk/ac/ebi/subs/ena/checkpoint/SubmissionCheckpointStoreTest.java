@@ -0,0 +1,166 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.data.component.Archive;
+import uk.ac.ebi.subs.data.status.ProcessingStatusEnum;
+import uk.ac.ebi.subs.data.submittable.Study;
+import uk.ac.ebi.subs.processing.ProcessingCertificate;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SubmissionCheckpointStoreTest {
+
+    private static final String SUBMISSION_ID = "submission-1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    private SubmissionCheckpointStore submissionCheckpointStore;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.getRoot().toPath().resolve("checkpoints");
+        submissionCheckpointStore = openStore();
+    }
+
+    @Test
+    public void whenACheckpointIsSaved_ThenItIsLoadedWithItsStagesAndOutputs() throws IOException {
+        final Study study = new Study();
+        study.setId("study-1");
+        study.setAccession("ERP000001");
+
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+        checkpoint.recordEnaResults(Stream.of(study), Collections.emptyList());
+        checkpoint.complete(SubmissionStage.FILES_MOVED);
+        checkpoint.complete(SubmissionStage.ENA_PROCESSED);
+        checkpoint.setProcessingCertificates(
+                Collections.singletonList(new ProcessingCertificate(study, Archive.Ena, ProcessingStatusEnum.Completed, "ERP000001")));
+        submissionCheckpointStore.save(checkpoint);
+
+        final SubmissionCheckpoint loadedCheckpoint = openStore().load(SUBMISSION_ID);
+
+        assertThat(loadedCheckpoint.isCompleted(SubmissionStage.ENA_PROCESSED), is(true));
+        assertThat(loadedCheckpoint.isCompleted(SubmissionStage.CERTIFICATES_BUILT), is(false));
+        assertThat(loadedCheckpoint.isProcessed(study), is(true));
+        assertThat(loadedCheckpoint.getAccession(study), is("ERP000001"));
+        assertThat(loadedCheckpoint.getProcessingCertificates(), contains(
+                new ProcessingCertificate(study, Archive.Ena, ProcessingStatusEnum.Completed, "ERP000001")));
+    }
+
+    @Test
+    public void whenACheckpointCanNotBeRead_ThenTheSubmissionStartsAgain() throws IOException {
+        Files.write(directory.resolve(SUBMISSION_ID + ".json"), "{\"completedStages\":[".getBytes(StandardCharsets.UTF_8));
+
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+
+        assertThat(checkpoint.getSubmissionId(), is(SUBMISSION_ID));
+        assertThat(checkpoint.getCompletedStages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenACheckpointIsOlderThanTheRetentionPeriod_ThenItIsRemoved() throws IOException {
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+        checkpoint.complete(SubmissionStage.ENA_PROCESSED);
+        submissionCheckpointStore.save(checkpoint);
+        Files.setLastModifiedTime(directory.resolve(SUBMISSION_ID + ".json"),
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31)));
+
+        submissionCheckpointStore.removeExpiredCheckpoints();
+
+        assertThat(submissionCheckpointStore.load(SUBMISSION_ID).isCompleted(SubmissionStage.ENA_PROCESSED), is(false));
+    }
+
+    @Test
+    public void whenACheckpointIsDeleted_ThenTheNextDeliveryOfTheSubmissionStartsAfresh() {
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+        checkpoint.complete(SubmissionStage.CERTIFICATES_BUILT);
+        submissionCheckpointStore.save(checkpoint);
+
+        submissionCheckpointStore.delete(SUBMISSION_ID);
+
+        assertThat(Files.exists(directory.resolve(SUBMISSION_ID + ".json")), is(false));
+        assertThat(submissionCheckpointStore.load(SUBMISSION_ID).getCompletedStages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenTheResultsOfPartitionsAreAppended_ThenTheyAreLoadedWithoutRewritingTheCheckpoint() throws IOException {
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+        checkpoint.complete(SubmissionStage.FILES_MOVED);
+        submissionCheckpointStore.save(checkpoint);
+        final long savedCheckpointSize = Files.size(directory.resolve(SUBMISSION_ID + ".json"));
+
+        checkpoint.recordEnaResults(Stream.of(study("study-1", "ERP000001")), Collections.emptyList());
+        submissionCheckpointStore.appendResults(checkpoint);
+        final SingleValidationResult error = new SingleValidationResult();
+        error.setEntityUuid("sample-2");
+        error.setMessage("sample rejected");
+        checkpoint.recordEnaResults(Stream.of(study("sample-2", null)), Collections.singletonList(error));
+        submissionCheckpointStore.appendResults(checkpoint);
+        submissionCheckpointStore.appendResults(checkpoint);
+
+        assertThat(Files.size(directory.resolve(SUBMISSION_ID + ".json")), is(savedCheckpointSize));
+        assertThat(Files.readAllLines(directory.resolve(SUBMISSION_ID + ".results")).size(), is(2));
+
+        final SubmissionCheckpoint loadedCheckpoint = openStore().load(SUBMISSION_ID);
+
+        assertThat(loadedCheckpoint.isCompleted(SubmissionStage.FILES_MOVED), is(true));
+        assertThat(loadedCheckpoint.getAccession(study("study-1", null)), is("ERP000001"));
+        assertThat(loadedCheckpoint.isProcessed(study("sample-2", null)), is(true));
+        assertThat(loadedCheckpoint.getMessage(study("sample-2", null)), is("sample rejected"));
+        assertThat(loadedCheckpoint.getErrorCount(), is(1));
+
+        loadedCheckpoint.complete(SubmissionStage.ENA_PROCESSED);
+        submissionCheckpointStore.save(loadedCheckpoint);
+
+        assertThat(Files.exists(directory.resolve(SUBMISSION_ID + ".results")), is(false));
+        assertThat(openStore().load(SUBMISSION_ID).getErrorCount(), is(1));
+    }
+
+    @Test
+    public void whenTheLastAppendedResultsWereCutShort_ThenTheResultsBeforeThemAreLoaded() throws IOException {
+        final SubmissionCheckpoint checkpoint = submissionCheckpointStore.load(SUBMISSION_ID);
+        checkpoint.recordEnaResults(Stream.of(study("study-1", "ERP000001")), Collections.emptyList());
+        submissionCheckpointStore.appendResults(checkpoint);
+        Files.write(directory.resolve(SUBMISSION_ID + ".results"), "{\"errorCount\":0,\"submitt".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        final SubmissionCheckpoint loadedCheckpoint = openStore().load(SUBMISSION_ID);
+
+        assertThat(loadedCheckpoint.getAccession(study("study-1", null)), is("ERP000001"));
+    }
+
+    private static Study study(String id, String accession) {
+        final Study study = new Study();
+        study.setId(id);
+        study.setAccession(accession);
+        return study;
+    }
+
+    private SubmissionCheckpointStore openStore() throws IOException {
+        SubmissionCheckpointStore store = new SubmissionCheckpointStore();
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "retentionDays", 30);
+        store.afterPropertiesSet();
+
+        return store;
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.ebi.subs.ena.checkpoint;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SubmittableResultsTest {
+
+    @Test
+    public void whenASubmittableHasBothKindsOfError_ThenTheErrorFromENAIsItsMessage() {
+        final SubmittableResults submittableResults = new SubmittableResults();
+        submittableResults.recordFileMoveError("assay-data-2", "file not moved");
+        submittableResults.recordEnaError("assay-data-2", "rejected by ENA");
+        submittableResults.recordEnaError("study-1", "study rejected");
+        submittableResults.recordFileMoveError("analysis-3", "file not found");
+
+        assertThat(submittableResults.size(), is(3));
+        assertThat(submittableResults.getFileMoveErrorCount(), is(2));
+        assertThat(submittableResults.getMessage("assay-data-2"), is("rejected by ENA"));
+        assertThat(submittableResults.hasFileMoveError("assay-data-2"), is(true));
+        assertThat(submittableResults.getMessage("analysis-3"), is("file not found"));
+        assertThat(submittableResults.getMessage("study-1"), is("study rejected"));
+        assertThat(submittableResults.hasFileMoveError("study-1"), is(false));
+        assertThat(submittableResults.getMessage("assay-4"), is(nullValue()));
+        assertThat(submittableResults.hasFileMoveError("assay-4"), is(false));
+    }
+
+    @Test
+    public void whenManySubmittablesAreRecorded_ThenEachKeepsItsResultsAndCanBeWrittenOutAndReadBack() {
+        final SubmittableResults submittableResults = new SubmittableResults();
+        for (int i = 0; i < 10000; i++) {
+            submittableResults.recordProcessed("sample-" + i, i % 2 == 0 ? "SAMEA" + i : null);
+        }
+        submittableResults.recordProcessed("sample-0", null);
+        submittableResults.recordProcessed(null, "SAMEA-1");
+
+        final SubmittableResults readBack = new SubmittableResults();
+        submittableResults.toList().forEach(readBack::add);
+
+        assertThat(readBack.size(), is(10000));
+        assertThat(readBack.getProcessedCount(), is(10000));
+        assertThat(readBack.isProcessed("sample-9999"), is(true));
+        assertThat(readBack.getAccession("sample-0"), is("SAMEA0"));
+        assertThat(readBack.getAccession("sample-4242"), is("SAMEA4242"));
+        assertThat(readBack.getAccession("sample-4243"), is(nullValue()));
+        assertThat(readBack.isProcessed("sample-10000"), is(false));
+    }
+}
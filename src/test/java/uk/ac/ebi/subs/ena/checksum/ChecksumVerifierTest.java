@@ -0,0 +1,106 @@
+package uk.ac.ebi.subs.ena.checksum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ChecksumVerifierTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ChecksumVerifier checksumVerifier;
+
+    @Before
+    public void setup() {
+        checksumVerifier = new ChecksumVerifier(new EnaAgentMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(checksumVerifier, "enabled", true);
+        ReflectionTestUtils.setField(checksumVerifier, "threads", 4);
+        ReflectionTestUtils.setField(checksumVerifier, "bufferSizeBytes", 64 * 1024);
+        ReflectionTestUtils.setField(checksumVerifier, "cacheSize", 10);
+        checksumVerifier.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        checksumVerifier.destroy();
+    }
+
+    @Test
+    public void whenFilesAreVerified_ThenOnlyTheOnesThatDoNotMatchTheirChecksumAreReported() throws IOException {
+        final byte[] content = randomBytes(1024 * 1024 + 3);
+        final UploadedFile intactFile = uploadedFile("intact.bam", content, DigestUtils.md5DigestAsHex(content).toUpperCase());
+        final UploadedFile corruptedFile = uploadedFile("corrupted.bam", randomBytes(4096), DigestUtils.md5DigestAsHex(content));
+        final UploadedFile missingFile = new UploadedFile();
+        missingFile.setPath(temporaryFolder.getRoot().toPath().resolve("missing.bam").toString());
+        missingFile.setChecksum(DigestUtils.md5DigestAsHex(content));
+
+        final Map<String, String> mismatches = checksumVerifier.verify(Arrays.asList(intactFile, corruptedFile, missingFile)).join();
+
+        assertThat(mismatches.size(), is(2));
+        assertThat(mismatches.get(corruptedFile.getPath()), containsString("does not match"));
+        assertThat(mismatches.get(missingFile.getPath()), containsString("Could not verify"));
+    }
+
+    @Test
+    public void whenAFileIsHashedAgainUnchanged_ThenItsChecksumComesFromTheCache() throws IOException {
+        final byte[] content = randomBytes(8192);
+        final Path path = temporaryFolder.getRoot().toPath().resolve("reads.fastq.gz");
+        Files.write(path, content);
+        final FileTime modificationTime = Files.getLastModifiedTime(path);
+
+        final String checksum = checksumVerifier.md5(path);
+        Files.write(path, randomBytes(8192));
+        Files.setLastModifiedTime(path, modificationTime);
+
+        assertThat(checksum, is(DigestUtils.md5DigestAsHex(content)));
+        assertThat(checksumVerifier.md5(path), is(checksum));
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modificationTime.toMillis() + 1000));
+
+        assertThat(checksumVerifier.md5(path), is(DigestUtils.md5DigestAsHex(Files.readAllBytes(path))));
+    }
+
+    @Test
+    public void whenTheVerificationIsOff_ThenNothingIsReported() throws IOException {
+        ReflectionTestUtils.setField(checksumVerifier, "enabled", false);
+        final UploadedFile corruptedFile = uploadedFile("corrupted.bam", randomBytes(4096), "00000000000000000000000000000000");
+
+        assertThat(checksumVerifier.verify(Arrays.asList(corruptedFile)).join().isEmpty(), is(true));
+    }
+
+    private UploadedFile uploadedFile(String filename, byte[] content, String checksum) throws IOException {
+        final Path path = Files.write(temporaryFolder.getRoot().toPath().resolve(filename), content);
+
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setPath(path.toString());
+        uploadedFile.setFilename(filename);
+        uploadedFile.setChecksum(checksum);
+        return uploadedFile;
+    }
+
+    private static byte[] randomBytes(int size) {
+        final byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
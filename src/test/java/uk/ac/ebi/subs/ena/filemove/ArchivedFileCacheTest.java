@@ -0,0 +1,145 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ArchivedFileCacheTest {
+
+    private static final String CHECKSUM = "1234567890abcdefabcd1234567890ab";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FileMoveJournal fileMoveJournal;
+
+    private ArchivedFileCache archivedFileCache;
+
+    @Before
+    public void setup() throws IOException {
+        fileMoveJournal = new FileMoveJournal();
+        ReflectionTestUtils.setField(fileMoveJournal, "journalPath",
+                temporaryFolder.getRoot().toPath().resolve("filemove.journal").toString());
+        ReflectionTestUtils.setField(fileMoveJournal, "compactionThresholdBytes", 1024 * 1024L);
+        ReflectionTestUtils.setField(fileMoveJournal, "retentionDays", 30);
+        fileMoveJournal.afterPropertiesSet();
+
+        archivedFileCache = openCache();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileMoveJournal.destroy();
+    }
+
+    @Test
+    public void whenAFileHasBeenAdded_ThenTheCacheKnowsItByChecksumAndRelativePath() {
+        archivedFileCache.add(CHECKSUM, "team/submission/file.fastq.gz");
+
+        assertThat(archivedFileCache.contains(CHECKSUM, "team/submission/file.fastq.gz"), is(true));
+        assertThat(archivedFileCache.contains("ffffffffffffffffffffffffffffffff", "team/submission/file.fastq.gz"), is(false));
+        assertThat(archivedFileCache.contains(CHECKSUM, "team/submission/other.fastq.gz"), is(false));
+    }
+
+    @Test
+    public void whenTheCacheIsFull_ThenTheLeastRecentlyUsedFileIsForgotten() {
+        archivedFileCache.add(CHECKSUM, "first.fastq.gz");
+        archivedFileCache.add(CHECKSUM, "second.fastq.gz");
+        archivedFileCache.contains(CHECKSUM, "first.fastq.gz");
+
+        archivedFileCache.add(CHECKSUM, "third.fastq.gz");
+
+        assertThat(archivedFileCache.size(), is(2));
+        assertThat(archivedFileCache.contains(CHECKSUM, "first.fastq.gz"), is(true));
+        assertThat(archivedFileCache.contains(CHECKSUM, "second.fastq.gz"), is(false));
+        assertThat(archivedFileCache.contains(CHECKSUM, "third.fastq.gz"), is(true));
+    }
+
+    @Test
+    public void whenAFileHasNoChecksum_ThenItIsNeverCached() {
+        archivedFileCache.add(null, "team/submission/file.fastq.gz");
+
+        assertThat(archivedFileCache.size(), is(0));
+        assertThat(archivedFileCache.contains(null, "team/submission/file.fastq.gz"), is(false));
+    }
+
+    @Test
+    public void whenSeeded_ThenTheCacheKnowsTheFilesOfTheJournal() {
+        fileMoveJournal.recordMoved("submission-1", uploadedFile("file.fastq.gz"));
+
+        archivedFileCache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+
+        assertThat(archivedFileCache.contains(CHECKSUM, "team/submission/file.fastq.gz"), is(true));
+    }
+
+    @Test
+    public void whenTheJournalHasBeenCompacted_ThenTheCacheStillKnowsTheFilesItHeldBeforeARestart() throws IOException {
+        fileMoveJournal.recordMoved("submission-1", uploadedFile("file.fastq.gz"));
+        archivedFileCache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+        archivedFileCache.add(CHECKSUM, "team/submission/other.fastq.gz");
+        fileMoveJournal.markSubmissionCompleted("submission-1");
+        fileMoveJournal.compact();
+
+        archivedFileCache.destroy();
+        final ArchivedFileCache restartedCache = openCache();
+        restartedCache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+
+        assertThat(restartedCache.size(), is(2));
+        assertThat(restartedCache.contains(CHECKSUM, "team/submission/file.fastq.gz"), is(true));
+        assertThat(restartedCache.contains(CHECKSUM, "team/submission/other.fastq.gz"), is(true));
+    }
+
+    @Test
+    public void whenTheAgentStopsWithoutShuttingDown_ThenTheCacheStillKnowsTheFilesAddedAndRemovedSinceItStarted() {
+        archivedFileCache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+        archivedFileCache.add(CHECKSUM, "team/submission/kept.fastq.gz");
+        archivedFileCache.add(CHECKSUM, "team/submission/removed.fastq.gz");
+        archivedFileCache.remove(CHECKSUM, "team/submission/removed.fastq.gz");
+
+        final ArchivedFileCache restartedCache = openCache();
+        restartedCache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+
+        assertThat(restartedCache.size(), is(1));
+        assertThat(restartedCache.contains(CHECKSUM, "team/submission/kept.fastq.gz"), is(true));
+        assertThat(restartedCache.contains(CHECKSUM, "team/submission/removed.fastq.gz"), is(false));
+    }
+
+    @Test
+    public void whenNoPathIsGiven_ThenTheCacheFileIsNextToTheJournal() {
+        final ArchivedFileCache cache = new ArchivedFileCache(fileMoveJournal, new EnaAgentMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        cache.afterPropertiesSet();
+        cache.seed(sourcePath -> sourcePath.substring("/data/ready_to_agent/".length()));
+
+        assertThat(Files.exists(temporaryFolder.getRoot().toPath().resolve("archived-files.cache")), is(true));
+    }
+
+    private ArchivedFileCache openCache() {
+        final ArchivedFileCache cache = new ArchivedFileCache(fileMoveJournal, new EnaAgentMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "cachePath",
+                temporaryFolder.getRoot().toPath().resolve("archived-files.cache").toString());
+        cache.afterPropertiesSet();
+        return cache;
+    }
+
+    private UploadedFile uploadedFile(String filename) {
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setPath("/data/ready_to_agent/team/submission/" + filename);
+        uploadedFile.setFilename(filename);
+        uploadedFile.setChecksum(CHECKSUM);
+        return uploadedFile;
+    }
+}
@@ -0,0 +1,115 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A local stand-in for the {@code ssh} executable and ENA's file move script.
+ * The fake {@code ssh} runs the remote command with the local shell
+ * and records every session, one line per call, in {@link #getInvocationLog()}.
+ * It also mimics a ControlMaster connection: a session opens the master when there is none,
+ * {@code -O check} and {@code -O exit} query and close it, and every new connection is counted
+ * in {@link #getConnections()}.
+ * The fake move script moves the file between local folders like the real one does on the remote host.
+ */
+public class FakeSsh {
+
+    private static final String FAKE_SSH =
+            "#!/bin/sh\n" +
+            "home=\"$(dirname \"$0\")\"\n" +
+            "control_path=''\n" +
+            "control_operation=''\n" +
+            "while [ $# -gt 1 ]; do\n" +
+            "  case \"$1\" in\n" +
+            "    -O) control_operation=\"$2\"; shift 2 ;;\n" +
+            "    -o) case \"$2\" in ControlPath=*) control_path=\"${2#ControlPath=}\" ;; esac; shift 2 ;;\n" +
+            "    *) break ;;\n" +
+            "  esac\n" +
+            "done\n" +
+            "case \"$control_operation\" in\n" +
+            "  check) [ -e \"$home/master\" ]; exit $? ;;\n" +
+            "  exit) rm -f \"$home/master\"; exit 0 ;;\n" +
+            "esac\n" +
+            "if [ -z \"$control_path\" ] || [ ! -e \"$home/master\" ]; then\n" +
+            "  echo connect >> \"$home/connections.log\"\n" +
+            "  [ -n \"$control_path\" ] && touch \"$home/master\"\n" +
+            "fi\n" +
+            "[ \"$2\" = true ] || echo \"$2\" >> \"$home/invocations.log\"\n" +
+            "exec sh -c \"$2\"\n";
+
+    private static final String FAKE_MOVE_SCRIPT =
+            "#!/bin/sh\n" +
+            "# arguments: relative file path, source base path, webin folder path, profile\n" +
+            "mkdir -p \"$(dirname \"$3/$4/$1\")\" && mv \"$2/$1\" \"$3/$4/$1\"\n";
+
+    private final Path sshCommand;
+    private final Path scriptPath;
+    private final Path invocationLog;
+    private final Path connectionLog;
+    private final Path master;
+
+    public FakeSsh(File folder) throws IOException {
+        Path binFolder = Files.createDirectories(folder.toPath().resolve("bin"));
+        this.scriptPath = Files.createDirectories(folder.toPath().resolve("scripts"));
+        this.sshCommand = writeExecutable(binFolder.resolve("ssh"), FAKE_SSH);
+        this.invocationLog = binFolder.resolve("invocations.log");
+        this.connectionLog = binFolder.resolve("connections.log");
+        this.master = binFolder.resolve("master");
+        writeExecutable(scriptPath.resolve("move_file_to_archive_storage.sh"), FAKE_MOVE_SCRIPT);
+    }
+
+    public String getSshCommand() {
+        return sshCommand.toString();
+    }
+
+    public String getScriptPath() {
+        return scriptPath.toString();
+    }
+
+    public Path getInvocationLog() {
+        return invocationLog;
+    }
+
+    public List<String> getInvocations() throws IOException {
+        return readLines(invocationLog);
+    }
+
+    public List<String> getConnections() throws IOException {
+        return readLines(connectionLog);
+    }
+
+    /**
+     * Simulates a master connection that died without being closed.
+     */
+    public void killMaster() throws IOException {
+        Files.deleteIfExists(master);
+    }
+
+    private static List<String> readLines(Path path) throws IOException {
+        return Files.exists(path)
+                ? Files.readAllLines(path, StandardCharsets.UTF_8)
+                : Collections.emptyList();
+    }
+
+    /**
+     * Replaces the fake move script, e.g. to make it slow or make it fail.
+     */
+    public void setMoveScript(String... lines) throws IOException {
+        writeExecutable(scriptPath.resolve("move_file_to_archive_storage.sh"),
+                "#!/bin/sh\n" + String.join("\n", Arrays.asList(lines)) + "\n");
+    }
+
+    private static Path writeExecutable(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        if (!path.toFile().setExecutable(true)) {
+            throw new IOException("Could not make " + path + " executable.");
+        }
+        return path;
+    }
+}
@@ -0,0 +1,77 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FileMoveAdmissionControllerTest {
+
+    private MeterRegistry meterRegistry;
+
+    private FileMoveAdmissionController fileMoveAdmissionController;
+
+    @Before
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        fileMoveAdmissionController = new FileMoveAdmissionController(new EnaAgentMetrics(meterRegistry));
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightBytes", 1000L);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "maxInFlightMoves", 10);
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "waitMillis", 100L);
+        fileMoveAdmissionController.afterPropertiesSet();
+    }
+
+    @Test
+    public void whenTheBudgetIsUsedUp_ThenTheNextSubmissionIsTurnedAwayAfterWaiting() {
+        fileMoveAdmissionController.admit(800, 2);
+
+        try {
+            fileMoveAdmissionController.admit(300, 1);
+            fail("The files should not fit in the budget.");
+        } catch (FileMoveAdmissionException e) {
+            assertThat(meterRegistry.find("ena.agent.file_move.admission.denials").counter().count(), is(1.0));
+        }
+
+        assertThat(meterRegistry.find("ena.agent.file_move.admission.in_flight_bytes").gauge().value(), is(800.0));
+        assertThat(meterRegistry.find("ena.agent.file_move.admission.budget_bytes").gauge().value(), is(1000.0));
+    }
+
+    @Test
+    public void whenFilesFinishMoving_ThenAWaitingSubmissionIsAdmitted() throws Exception {
+        ReflectionTestUtils.setField(fileMoveAdmissionController, "waitMillis", 10000L);
+        fileMoveAdmissionController.admit(600, 5);
+        fileMoveAdmissionController.admit(0, 5);
+
+        final CompletableFuture<Void> waitingSubmission = CompletableFuture.runAsync(() -> fileMoveAdmissionController.admit(300, 1));
+        while (fileMoveAdmissionController.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        assertThat(waitingSubmission.isDone(), is(false));
+
+        fileMoveAdmissionController.release(0, 1);
+        waitingSubmission.get(5, TimeUnit.SECONDS);
+
+        assertThat(fileMoveAdmissionController.getInFlightBytes(), is(900L));
+        assertThat(fileMoveAdmissionController.getInFlightMoves(), is(10));
+    }
+
+    @Test
+    public void whenASubmissionIsLargerThanTheWholeBudget_ThenItIsAdmittedOnItsOwn() {
+        fileMoveAdmissionController.admit(5000, 50);
+
+        assertThat(fileMoveAdmissionController.getInFlightBytes(), is(5000L));
+
+        fileMoveAdmissionController.release(5000, 50);
+
+        assertThat(fileMoveAdmissionController.getInFlightMoves(), is(0));
+    }
+}
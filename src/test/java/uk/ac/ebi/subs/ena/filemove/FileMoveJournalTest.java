@@ -0,0 +1,119 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class FileMoveJournalTest {
+
+    private static final String SUBMISSION_ID = "submission-1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path journalPath;
+
+    private FileMoveJournal fileMoveJournal;
+
+    @Before
+    public void setup() throws IOException {
+        journalPath = temporaryFolder.getRoot().toPath().resolve("journal").resolve("filemove.journal");
+        fileMoveJournal = openJournal();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileMoveJournal.destroy();
+    }
+
+    @Test
+    public void whenAFileHasBeenMoved_ThenTheJournalKnowsItByPathAndChecksum() {
+        final UploadedFile uploadedFile = uploadedFile("file.fastq.gz", "1234567890abcdefabcd1234567890ab");
+
+        fileMoveJournal.recordMoved(SUBMISSION_ID, uploadedFile);
+
+        assertThat(fileMoveJournal.isMoved(SUBMISSION_ID, uploadedFile), is(true));
+        assertThat(fileMoveJournal.isMoved("submission-2", uploadedFile), is(false));
+        assertThat(fileMoveJournal.isMoved(SUBMISSION_ID, uploadedFile("file.fastq.gz", "ffffffffffffffffffffffffffffffff")), is(false));
+    }
+
+    @Test
+    public void whenTheJournalIsReopened_ThenItStillKnowsTheMovedFiles() throws IOException {
+        final UploadedFile uploadedFile = uploadedFile("file.fastq.gz", "1234567890abcdefabcd1234567890ab");
+        fileMoveJournal.recordMoved(SUBMISSION_ID, uploadedFile);
+        fileMoveJournal.sync();
+        fileMoveJournal.destroy();
+
+        fileMoveJournal = openJournal();
+
+        assertThat(fileMoveJournal.isMoved(SUBMISSION_ID, uploadedFile), is(true));
+    }
+
+    @Test
+    public void whenTheJournalHasAnUnreadableRecord_ThenTheOtherRecordsAreStillLoaded() throws IOException {
+        final UploadedFile uploadedFile = uploadedFile("file.fastq.gz", "1234567890abcdefabcd1234567890ab");
+        fileMoveJournal.recordMoved(SUBMISSION_ID, uploadedFile);
+        fileMoveJournal.destroy();
+        Files.write(journalPath, "M\t123".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        fileMoveJournal = openJournal();
+
+        assertThat(fileMoveJournal.isMoved(SUBMISSION_ID, uploadedFile), is(true));
+    }
+
+    @Test
+    public void whenASubmissionIsCompleted_ThenCompactionDropsItsRecords() throws IOException {
+        final UploadedFile completedFile = uploadedFile("completed.fastq.gz", "1234567890abcdefabcd1234567890ab");
+        final UploadedFile pendingFile = uploadedFile("pending.fastq.gz", "1234567890abcdefabcd1234567890ab");
+        for (int i = 0; i < 100; i++) {
+            fileMoveJournal.recordMoved(SUBMISSION_ID, uploadedFile("completed" + i + ".fastq.gz", "1234567890abcdefabcd1234567890ab"));
+        }
+        fileMoveJournal.recordMoved(SUBMISSION_ID, completedFile);
+        fileMoveJournal.recordMoved("submission-2", pendingFile);
+        fileMoveJournal.markSubmissionCompleted(SUBMISSION_ID);
+        final long sizeBeforeCompaction = Files.size(journalPath);
+
+        fileMoveJournal.compact();
+
+        assertThat(Files.size(journalPath), is(lessThan(sizeBeforeCompaction)));
+        assertThat(fileMoveJournal.isMoved(SUBMISSION_ID, completedFile), is(false));
+        assertThat(fileMoveJournal.isMoved("submission-2", pendingFile), is(true));
+
+        fileMoveJournal.destroy();
+        fileMoveJournal = openJournal();
+
+        assertThat(fileMoveJournal.isMoved("submission-2", pendingFile), is(true));
+    }
+
+    private FileMoveJournal openJournal() throws IOException {
+        FileMoveJournal journal = new FileMoveJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", journalPath.toString());
+        ReflectionTestUtils.setField(journal, "compactionThresholdBytes", 1024 * 1024L);
+        ReflectionTestUtils.setField(journal, "retentionDays", 30);
+        journal.afterPropertiesSet();
+
+        return journal;
+    }
+
+    private UploadedFile uploadedFile(String filename, String checksum) {
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setPath("/data/ready_to_agent/team/submission/" + filename);
+        uploadedFile.setFilename(filename);
+        uploadedFile.setChecksum(checksum);
+        return uploadedFile;
+    }
+}
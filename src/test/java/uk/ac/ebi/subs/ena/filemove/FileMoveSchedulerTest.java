@@ -0,0 +1,144 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.junit.After;
+import org.junit.Test;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class FileMoveSchedulerTest {
+
+    private FileMoveScheduler fileMoveScheduler;
+
+    @After
+    public void tearDown() {
+        if (fileMoveScheduler != null) {
+            fileMoveScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void whenPackingFiles_ThenTheLargestGoFirstIntoTheLeastFullBatch() {
+        final List<UploadedFile> files = files(3L, 7L, 4L, 9L, 5L);
+
+        final List<List<UploadedFile>> batches = FileMoveScheduler.packLargestFirst(files, 2, 500, 0, UploadedFile::getTotalSize);
+
+        assertThat(batches, hasSize(2));
+        assertThat(sizes(batches.get(0)), contains(7L, 5L, 3L));
+        assertThat(sizes(batches.get(1)), contains(9L, 4L));
+    }
+
+    @Test
+    public void whenPackingMoreFilesThanABatchHolds_ThenThereAreMoreBatchesAndFilesOfUnknownSizeCountAsTheAverage() {
+        final List<UploadedFile> files = files(100L, null, 300L, 10L, 10L);
+
+        final List<List<UploadedFile>> batches = FileMoveScheduler.packLargestFirst(files, 1, 2, 0, this::sizeOrUnknown);
+
+        assertThat(batches, hasSize(3));
+        assertThat(sizes(batches.get(0)), contains(300L));
+        assertThat(sizes(batches.get(1)), contains(null, 10L));
+        assertThat(sizes(batches.get(2)), contains(100L, 10L));
+    }
+
+    @Test
+    public void whenPackingMoreBytesThanABatchMayHold_ThenThereAreMoreBatchesThanSlots() {
+        final List<UploadedFile> files = files(40L, 30L, 30L, 20L, 20L, 10L, 10L);
+
+        final List<List<UploadedFile>> batches = FileMoveScheduler.packLargestFirst(files, 2, 500, 50L, UploadedFile::getTotalSize);
+
+        assertThat(batches, hasSize(4));
+        batches.forEach(batch -> assertThat(sizes(batch).stream().mapToLong(Long::longValue).sum(), is(lessThanOrEqualTo(50L))));
+    }
+
+    @Test
+    public void whenASubmissionComesInBehindALargeOne_ThenItGetsTheNextFreeSlot() {
+        fileMoveScheduler = new FileMoveScheduler(1, 1000, "test-move-");
+        final CountDownLatch slotTaken = new CountDownLatch(1);
+        final List<String> moves = Collections.synchronizedList(new ArrayList<>());
+
+        final List<CompletableFuture<Void>> results = new ArrayList<>();
+        results.add(fileMoveScheduler.submit("large", 1, () -> {
+            await(slotTaken);
+            moves.add("large-first");
+            return null;
+        }));
+        for (int i = 1; i <= 4; i++) {
+            final String move = "large-" + i;
+            results.add(fileMoveScheduler.submit("large", i, () -> {
+                moves.add(move);
+                return null;
+            }));
+        }
+        results.add(fileMoveScheduler.submit("small", 1, () -> {
+            moves.add("small");
+            return null;
+        }));
+
+        slotTaken.countDown();
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+
+        assertThat(moves, contains("large-first", "large-4", "small", "large-3", "large-2", "large-1"));
+    }
+
+    @Test
+    public void whenMovesAreQueued_ThenTheExpectedRemainingTimeCoversTheirBytesOverTheSlots() {
+        fileMoveScheduler = new FileMoveScheduler(2, 1000, "test-move-");
+        final CountDownLatch slotsTaken = new CountDownLatch(1);
+
+        final List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (long bytes : new long[]{1000, 1000, 2000, 4000}) {
+            results.add(fileMoveScheduler.submit("submission", bytes, () -> {
+                await(slotsTaken);
+                return null;
+            }));
+        }
+
+        assertThat(fileMoveScheduler.getExpectedRemainingMillis(), is(4000L));
+
+        slotsTaken.countDown();
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+
+        assertThat(fileMoveScheduler.getExpectedRemainingMillis(), is(0L));
+        assertThat(fileMoveScheduler.getExpectedFinishTime().toEpochMilli(), is(lessThan(System.currentTimeMillis() + 1000)));
+    }
+
+    private long sizeOrUnknown(UploadedFile uploadedFile) {
+        return uploadedFile.getTotalSize() != null ? uploadedFile.getTotalSize() : -1;
+    }
+
+    private static List<UploadedFile> files(Long... sizes) {
+        final List<UploadedFile> files = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            final UploadedFile uploadedFile = new UploadedFile();
+            uploadedFile.setPath("/data/ready_to_agent/team/submission/file" + i + ".fastq.gz");
+            uploadedFile.setTotalSize(sizes[i]);
+            files.add(uploadedFile);
+        }
+        return files;
+    }
+
+    private static List<Long> sizes(List<UploadedFile> batch) {
+        return batch.stream().map(UploadedFile::getTotalSize).collect(Collectors.toList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+public class LocalFileMoveTransportTest {
+
+    private static final String ACTIVE_PROFILE = "test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalFileMoveTransport localFileMoveTransport;
+
+    private Path sourceBasePath;
+
+    private Path webinFolderPath;
+
+    @Before
+    public void setup() throws IOException {
+        sourceBasePath = temporaryFolder.newFolder("upload", "ready_to_agent").toPath();
+        webinFolderPath = temporaryFolder.newFolder("webin").toPath();
+
+        localFileMoveTransport = new LocalFileMoveTransport(new EnaAgentMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(localFileMoveTransport, "webinFolderPath", webinFolderPath.toString());
+        ReflectionTestUtils.setField(localFileMoveTransport, "localSourceBasePath", sourceBasePath.toString());
+        ReflectionTestUtils.setField(localFileMoveTransport, "activeProfile", ACTIVE_PROFILE);
+    }
+
+    @Test
+    public void whenMovingABatch_ThenEachFileEndsUpInTheProfileFolderAndAMissingOneIsReportedAsFailed() throws IOException {
+        Map<String, UploadedFile> filesByRelativePath = new LinkedHashMap<>();
+        filesByRelativePath.put("team/submission/reads.fastq.gz", createUploadedFile("team/submission/reads.fastq.gz"));
+        filesByRelativePath.put("team/submission/missing.fastq.gz", uploadedFile("team/submission/missing.fastq.gz"));
+
+        final List<FileMoveResult> results = localFileMoveTransport.moveBatch(sourceBasePath.toString(), filesByRelativePath);
+
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(Files.exists(webinFolderPath.resolve(ACTIVE_PROFILE).resolve("team/submission/reads.fastq.gz")), is(true));
+        assertThat(Files.exists(sourceBasePath.resolve("team/submission/reads.fastq.gz")), is(false));
+    }
+
+    @Test
+    public void whenCopyingAcrossFileSystems_ThenTheTargetHasTheWholeFileAndTheSourceIsDeleted() throws IOException {
+        final byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        final Path source = Files.write(sourceBasePath.resolve("large.bam"), content);
+        final Path target = webinFolderPath.resolve("large.bam");
+
+        localFileMoveTransport.copyAndDelete(source, target);
+
+        assertThat(Files.readAllBytes(target), is(content));
+        assertThat(Files.exists(source), is(false));
+        assertThat(Files.exists(webinFolderPath.resolve("large.bam.part")), is(false));
+    }
+
+    @Test
+    public void whenTheWebinFolderIsNotMounted_ThenTheTransportIsNotAvailable() {
+        assertThat(localFileMoveTransport.isAvailable(), is(true));
+
+        ReflectionTestUtils.setField(localFileMoveTransport, "webinFolderPath", webinFolderPath.resolve("not-mounted").toString());
+
+        assertThat(localFileMoveTransport.isAvailable(), is(false));
+    }
+
+    @Test
+    public void whenTheUploadAreaIsNotMounted_ThenTheTransportIsNotAvailable() {
+        ReflectionTestUtils.setField(localFileMoveTransport, "localSourceBasePath", sourceBasePath.resolve("not-mounted").toString());
+
+        assertThat(localFileMoveTransport.isAvailable(), is(false));
+    }
+
+    @Test
+    public void whenTheUploadAreaIsNotReadable_ThenTheTransportIsNotAvailable() {
+        assertThat(sourceBasePath.toFile().setReadable(false), is(true));
+        assumeThat(Files.isReadable(sourceBasePath), is(false));
+
+        assertThat(localFileMoveTransport.isAvailable(), is(false));
+    }
+
+    @Test
+    public void whenTheUploadAreaIsNotConfigured_ThenTheTransportIsNotAvailable() {
+        ReflectionTestUtils.setField(localFileMoveTransport, "localSourceBasePath", "");
+
+        assertThat(localFileMoveTransport.isAvailable(), is(false));
+    }
+
+    private UploadedFile createUploadedFile(String relativePath) throws IOException {
+        final UploadedFile uploadedFile = uploadedFile(relativePath);
+        final Path path = sourceBasePath.resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        Files.write(path, relativePath.getBytes());
+        return uploadedFile;
+    }
+
+    private UploadedFile uploadedFile(String relativePath) {
+        UploadedFile uploadedFile = new UploadedFile();
+        uploadedFile.setPath(sourceBasePath.resolve(relativePath).toString());
+        uploadedFile.setFilename(sourceBasePath.resolve(relativePath).getFileName().toString());
+        return uploadedFile;
+    }
+}
@@ -0,0 +1,100 @@
+package uk.ac.ebi.subs.ena.filemove;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SshConnectionManagerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SshConnectionManager sshConnectionManager;
+
+    private FakeSsh fakeSsh;
+
+    @Before
+    public void setup() throws IOException {
+        fakeSsh = new FakeSsh(temporaryFolder.newFolder("fake-ssh"));
+
+        sshConnectionManager = new SshConnectionManager();
+        ReflectionTestUtils.setField(sshConnectionManager, "remoteHostName", "localhost");
+        ReflectionTestUtils.setField(sshConnectionManager, "fileMoveUsername", "fileuploadusername");
+        ReflectionTestUtils.setField(sshConnectionManager, "logFilePath", temporaryFolder.getRoot().toPath().resolve("filemove.log").toString());
+        ReflectionTestUtils.setField(sshConnectionManager, "sshCommand", fakeSsh.getSshCommand());
+        ReflectionTestUtils.setField(sshConnectionManager, "multiplexing", true);
+        ReflectionTestUtils.setField(sshConnectionManager, "controlDir", temporaryFolder.newFolder("ssh-control").toString());
+        ReflectionTestUtils.setField(sshConnectionManager, "controlPersistSeconds", 60);
+        sshConnectionManager.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        sshConnectionManager.destroy();
+    }
+
+    @Test
+    public void whenRunningManySessions_ThenTheyShareOneConnection() throws Exception {
+        sshConnectionManager.ensureConnected();
+        for (int i = 0; i < 5; i++) {
+            assertThat(run(sshConnectionManager.remoteCommand("echo session " + i)), is(0));
+        }
+
+        assertThat(sshConnectionManager.isConnected(), is(true));
+        assertThat(fakeSsh.getInvocations(), hasSize(5));
+        assertThat(fakeSsh.getConnections(), hasSize(1));
+    }
+
+    @Test
+    public void whenTheConnectionIsClosed_ThenTheNextSessionOpensANewOne() throws Exception {
+        sshConnectionManager.ensureConnected();
+        sshConnectionManager.closeConnection();
+
+        assertThat(sshConnectionManager.isConnected(), is(false));
+
+        sshConnectionManager.ensureConnected();
+
+        assertThat(sshConnectionManager.isConnected(), is(true));
+        assertThat(fakeSsh.getConnections(), hasSize(2));
+    }
+
+    @Test
+    public void whenTheMasterDies_ThenTheHealthCheckLetsTheNextSessionReconnect() throws Exception {
+        sshConnectionManager.ensureConnected();
+        fakeSsh.killMaster();
+
+        sshConnectionManager.checkConnection();
+        sshConnectionManager.ensureConnected();
+
+        assertThat(sshConnectionManager.isConnected(), is(true));
+        assertThat(fakeSsh.getConnections(), hasSize(2));
+    }
+
+    @Test
+    public void whenMultiplexingIsDisabled_ThenEverySessionConnects() throws Exception {
+        ReflectionTestUtils.setField(sshConnectionManager, "multiplexing", false);
+
+        sshConnectionManager.ensureConnected();
+        for (int i = 0; i < 3; i++) {
+            assertThat(run(sshConnectionManager.remoteCommand("echo session " + i)), is(0));
+        }
+
+        assertThat(sshConnectionManager.isConnected(), is(false));
+        assertThat(fakeSsh.getInvocations(), hasItems("echo session 0", "echo session 2"));
+        assertThat(fakeSsh.getConnections(), hasSize(3));
+    }
+
+    private int run(String[] command) throws IOException, InterruptedException {
+        return new ProcessBuilder(command).start().waitFor();
+    }
+}
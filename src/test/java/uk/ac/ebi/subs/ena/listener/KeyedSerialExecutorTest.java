@@ -0,0 +1,144 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class KeyedSerialExecutorTest {
+
+    private KeyedSerialExecutor keyedSerialExecutor;
+
+    @Before
+    public void setup() {
+        keyedSerialExecutor = new KeyedSerialExecutor(4, "test-submission-");
+    }
+
+    @After
+    public void tearDown() {
+        keyedSerialExecutor.shutdown();
+    }
+
+    @Test
+    public void whenTasksHaveTheSameKey_ThenTheyRunOneAfterTheOtherInOrder() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        List<CompletableFuture<Integer>> deliveries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int delivery = i;
+            deliveries.add(keyedSerialExecutor.submit("submission-1", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(delivery);
+                sleep(50);
+                running.decrementAndGet();
+                return delivery;
+            }));
+        }
+        deliveries.forEach(CompletableFuture::join);
+
+        assertThat(maxRunning.get(), is(1));
+        assertThat(order, contains(0, 1, 2, 3));
+    }
+
+    @Test
+    public void whenTasksHaveDifferentKeys_ThenASlowOneDoesNotHoldUpTheOthers() {
+        final CountDownLatch slowTaskReleased = new CountDownLatch(1);
+
+        final CompletableFuture<String> slowDelivery =
+                keyedSerialExecutor.submit("large-submission", () -> await(slowTaskReleased));
+        final List<CompletableFuture<String>> quickDeliveries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            quickDeliveries.add(keyedSerialExecutor.submit("small-submission-" + i, () -> "done"));
+        }
+
+        quickDeliveries.forEach(quickDelivery -> assertThat(quickDelivery.join(), is("done")));
+        assertThat(slowDelivery.isDone(), is(false));
+
+        slowTaskReleased.countDown();
+        slowDelivery.join();
+    }
+
+    @Test
+    public void whenMoreKeysHaveTasksThanThereAreThreads_ThenNoMoreTasksRunAtOnceThanThereAreThreads() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<CompletableFuture<Integer>> deliveries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int delivery = i;
+            deliveries.add(keyedSerialExecutor.submit("submission-" + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                running.decrementAndGet();
+                return delivery;
+            }));
+        }
+        deliveries.forEach(CompletableFuture::join);
+
+        assertThat(maxRunning.get(), is(lessThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void whenATaskFails_ThenItsResultHasTheExceptionAndTheNextTaskOfTheKeyStillRuns() {
+        final CompletableFuture<Object> failed = keyedSerialExecutor.submit("submission-1", () -> {
+            throw new IllegalStateException("the submission went wrong");
+        });
+        final CompletableFuture<String> next = keyedSerialExecutor.submit("submission-1", () -> "next");
+
+        try {
+            failed.join();
+            fail("The exception of the task should have been thrown.");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+            assertThat(e.getCause().getMessage(), is("the submission went wrong"));
+        }
+        assertThat(next.join(), is("next"));
+    }
+
+    @Test
+    public void whenTheTasksOfAKeyAreDone_ThenTheKeyIsForgotten() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            keyedSerialExecutor.submit("submission-" + i, () -> "done").join();
+        }
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (keyedSerialExecutor.pendingKeys() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(keyedSerialExecutor.pendingKeys(), is(0));
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ManualAckListenerContainerFactoryTest {
+
+    private ManualAckListenerContainerFactory manualAckListenerContainerFactory;
+
+    private Channel channel;
+
+    private Message message;
+
+    @Before
+    public void setup() {
+        manualAckListenerContainerFactory = new ManualAckListenerContainerFactory();
+        manualAckListenerContainerFactory.setConnectionFactory(mock(ConnectionFactory.class));
+        channel = mock(Channel.class);
+
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setDeliveryTag(9L);
+        message = new Message(new byte[0], messageProperties);
+    }
+
+    @Test
+    public void whenTheListenerThrowsWithManualAcknowledgement_ThenTheMessageIsRejectedWithoutBeingRequeued() throws Exception {
+        manualAckListenerContainerFactory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        final SimpleMessageListenerContainer container = manualAckListenerContainerFactory.createListenerContainer(
+                endpoint(new TestListener(new MessageConversionException("unreadable"))));
+
+        try {
+            ((ChannelAwareMessageListener) container.getMessageListener()).onMessage(message, channel);
+            fail("The listener should have thrown.");
+        } catch (MessageConversionException e) {
+            verify(channel).basicReject(9L, false);
+        }
+    }
+
+    @Test
+    public void whenTheListenerSucceedsWithManualAcknowledgement_ThenTheMessageIsLeftToTheListener() throws Exception {
+        manualAckListenerContainerFactory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        final SimpleMessageListenerContainer container = manualAckListenerContainerFactory.createListenerContainer(
+                endpoint(new TestListener(null)));
+
+        ((ChannelAwareMessageListener) container.getMessageListener()).onMessage(message, channel);
+
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void whenTheContainerAcknowledgesByItself_ThenTheListenerIsLeftAsItIs() {
+        final TestListener listener = new TestListener(null);
+        final SimpleMessageListenerContainer container = manualAckListenerContainerFactory.createListenerContainer(endpoint(listener));
+
+        if (container.getMessageListener() != listener) {
+            fail("The listener should not have been wrapped.");
+        }
+    }
+
+    private SimpleRabbitListenerEndpoint endpoint(TestListener listener) {
+        final SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId("test-listener");
+        endpoint.setQueueNames("test-queue");
+        endpoint.setMessageListener(listener);
+        return endpoint;
+    }
+
+    /**
+     * A listener that takes its channel like the adapters of annotated listener methods do, and throws the given exception if any.
+     */
+    private static class TestListener implements MessageListener, ChannelAwareMessageListener {
+
+        private final RuntimeException failure;
+
+        private TestListener(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            throw new UnsupportedOperationException("The listener takes its channel.");
+        }
+
+        @Override
+        public void onMessage(Message message, Channel channel) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
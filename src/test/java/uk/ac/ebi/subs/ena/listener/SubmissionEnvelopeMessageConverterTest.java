@@ -0,0 +1,184 @@
+package uk.ac.ebi.subs.ena.listener;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import uk.ac.ebi.subs.data.Submission;
+import uk.ac.ebi.subs.data.submittable.AssayData;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.fileupload.UploadedFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SubmissionEnvelopeMessageConverterTest {
+
+    private ObjectMapper objectMapper;
+
+    private MeterRegistry meterRegistry;
+
+    private SubmissionEnvelopeMessageConverter submissionEnvelopeMessageConverter;
+
+    private SubmissionEnvelope submissionEnvelope;
+
+    @Before
+    public void setup() {
+        objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        meterRegistry = new SimpleMeterRegistry();
+        submissionEnvelopeMessageConverter = new SubmissionEnvelopeMessageConverter(objectMapper, new EnaAgentMetrics(meterRegistry));
+
+        final Submission submission = new Submission();
+        submission.setId("submission-1");
+        submissionEnvelope = new SubmissionEnvelope(submission);
+        for (int i = 0; i < 3; i++) {
+            final AssayData assayData = new AssayData();
+            assayData.setAlias("assay-data-" + i);
+            submissionEnvelope.getAssayData().add(assayData);
+
+            final UploadedFile uploadedFile = new UploadedFile();
+            uploadedFile.setPath("/data/ready_to_agent/team/submission/file" + i + ".fastq.gz");
+            uploadedFile.setChecksum("1234567890abcdefabcd1234567890ab");
+            submissionEnvelope.getUploadedFiles().add(uploadedFile);
+        }
+    }
+
+    @Test
+    public void whenTheEnvelopeIsPlainJson_ThenItIsReadWhole() throws IOException {
+        assertReadWhole(submissionEnvelopeMessageConverter.fromMessage(message(json(), "UTF-8")));
+        assertThat(meterRegistry.find("ena.agent.envelope.read").tags("encoding", "identity").timer().count(), is(1L));
+    }
+
+    @Test
+    public void whenTheEnvelopeIsCompressedWithGzip_ThenItIsDecompressedAsItIsRead() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json());
+        }
+
+        assertReadWhole(submissionEnvelopeMessageConverter.fromMessage(message(compressed.toByteArray(), "gzip")));
+        assertThat(meterRegistry.find("ena.agent.envelope.size").tags("encoding", "gzip").summary().totalAmount(),
+                is((double) compressed.size()));
+    }
+
+    @Test
+    public void whenTheEnvelopeIsCompressedWithDeflate_ThenItIsDecompressedAsItIsRead() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream deflate = new DeflaterOutputStream(compressed)) {
+            deflate.write(json());
+        }
+
+        assertReadWhole(submissionEnvelopeMessageConverter.fromMessage(message(compressed.toByteArray(), "deflate")));
+    }
+
+    @Test
+    public void whenTheEnvelopeIsInAnotherCharset_ThenItIsReadInThatCharset() throws IOException {
+        final byte[] utf16 = new String(json(), StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_16);
+
+        assertReadWhole(submissionEnvelopeMessageConverter.fromMessage(message(utf16, "UTF-16")));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void whenTheContentEncodingIsNotSupported_ThenTheMessageCanNotBeConverted() throws IOException {
+        submissionEnvelopeMessageConverter.fromMessage(message(json(), "zstd"));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void whenTheBodyIsNotCompressedAsItSays_ThenTheMessageCanNotBeConverted() throws IOException {
+        submissionEnvelopeMessageConverter.fromMessage(message(json(), "gzip"));
+    }
+
+    @Test
+    public void whenTheContentEncodingIsNotSupportedWithManualAcknowledgement_ThenTheMessageIsRejectedWithoutBeingRequeued()
+            throws Exception {
+        final ManualAckListenerContainerFactory factory = new ManualAckListenerContainerFactory();
+        factory.setConnectionFactory(mock(ConnectionFactory.class));
+        factory.setMessageConverter(submissionEnvelopeMessageConverter);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        final SubmissionListener submissionListener = new SubmissionListener();
+        final SimpleMessageListenerContainer container = factory.createListenerContainer(endpoint(submissionListener));
+        final Message message = message(json(), "zstd");
+        message.getMessageProperties().setDeliveryTag(4L);
+        final Channel channel = mock(Channel.class);
+
+        try {
+            ((ChannelAwareMessageListener) container.getMessageListener()).onMessage(message, channel);
+            fail("The message should not have been converted.");
+        } catch (MessageConversionException e) {
+            verify(channel).basicReject(4L, false);
+            assertThat(submissionListener.received, is(false));
+        }
+    }
+
+    private static MethodRabbitListenerEndpoint endpoint(SubmissionListener submissionListener) throws NoSuchMethodException {
+        final DefaultMessageHandlerMethodFactory messageHandlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        messageHandlerMethodFactory.afterPropertiesSet();
+
+        final MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+        endpoint.setId("test-submission-listener");
+        endpoint.setQueueNames("test-queue");
+        endpoint.setBean(submissionListener);
+        endpoint.setMethod(SubmissionListener.class.getMethod("handleSubmission", SubmissionEnvelope.class, Channel.class, long.class));
+        endpoint.setMessageHandlerMethodFactory(messageHandlerMethodFactory);
+        return endpoint;
+    }
+
+    private void assertReadWhole(SubmissionEnvelope readEnvelope) {
+        assertThat(readEnvelope.getSubmission().getId(), is("submission-1"));
+        assertThat(readEnvelope.getAssayData().stream().map(AssayData::getAlias).collect(Collectors.toList()),
+                contains("assay-data-0", "assay-data-1", "assay-data-2"));
+        assertThat(readEnvelope.getUploadedFiles().stream().map(UploadedFile::getPath).collect(Collectors.toList()),
+                is(submissionEnvelope.getUploadedFiles().stream().map(UploadedFile::getPath).collect(Collectors.toList())));
+    }
+
+    private byte[] json() throws IOException {
+        return objectMapper.writeValueAsBytes(submissionEnvelope);
+    }
+
+    private static Message message(byte[] body, String contentEncoding) {
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        messageProperties.setContentEncoding(contentEncoding);
+        return new Message(body, messageProperties);
+    }
+
+    /**
+     * Takes submission envelopes like the submission listener of the agent does.
+     */
+    public static class SubmissionListener {
+
+        private boolean received;
+
+        public void handleSubmission(SubmissionEnvelope submissionEnvelope, Channel channel,
+                                     @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+            received = true;
+        }
+    }
+}
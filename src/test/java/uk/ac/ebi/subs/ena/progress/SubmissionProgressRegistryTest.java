@@ -0,0 +1,116 @@
+package uk.ac.ebi.subs.ena.progress;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.info.Info;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SubmissionProgressRegistryTest {
+
+    private MeterRegistry meterRegistry;
+
+    private SubmissionProgressRegistry submissionProgressRegistry;
+
+    private SubmissionProgressEndpoint submissionProgressEndpoint;
+
+    @Before
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        submissionProgressRegistry = new SubmissionProgressRegistry(new EnaAgentMetrics(meterRegistry));
+        submissionProgressRegistry.afterPropertiesSet();
+        submissionProgressEndpoint = new SubmissionProgressEndpoint(submissionProgressRegistry);
+    }
+
+    @Test
+    public void whenSubmissionsAreStarted_ThenTheyAreListedOldestFirstUntilTheyFinish() throws InterruptedException {
+        submissionProgressRegistry.start("submission-1");
+        Thread.sleep(2);
+        submissionProgressRegistry.start("submission-2");
+        Thread.sleep(2);
+        submissionProgressRegistry.start("submission-3");
+        submissionProgressRegistry.finish("submission-2");
+
+        assertThat(submissionProgressRegistry.getInFlightSubmissions().stream()
+                        .map(SubmissionProgress::getSubmissionId)
+                        .collect(Collectors.toList()),
+                contains("submission-1", "submission-3"));
+        assertThat(meterRegistry.find("ena.agent.submissions.in_flight").gauge().value(), is(2.0));
+    }
+
+    @Test
+    public void whenASubmissionIsNotTracked_ThenItsProgressIsNotListed() {
+        submissionProgressRegistry.get("submission-1").setStage(SubmissionProgress.Stage.MOVING_FILES);
+
+        assertThat(submissionProgressRegistry.getInFlightSubmissions(), is(empty()));
+        assertThat(submissionProgressRegistry.getOldestAgeMillis(), is(0L));
+    }
+
+    @Test
+    public void whenFilesMove_ThenThePercentMovedFollowsTheirBytes() {
+        final SubmissionProgress submissionProgress = submissionProgressRegistry.start("submission-1");
+        submissionProgress.setStage(SubmissionProgress.Stage.MOVING_FILES);
+        submissionProgress.setFilesToMove(4, 1000);
+
+        submissionProgress.recordFileMoved(100L);
+        submissionProgress.recordFileMoved(150L);
+
+        final Map<String, Object> progress = submissionProgressRegistry.get("submission-1").toMap();
+        assertThat(progress.get("stage"), is(SubmissionProgress.Stage.MOVING_FILES));
+        assertThat(progress.get("filesMoved"), is(2L));
+        assertThat(progress.get("filesTotal"), is(4));
+        assertThat(progress.get("bytesMoved"), is(250L));
+        assertThat(progress.get("percentMoved"), is(25.0));
+    }
+
+    @Test
+    public void whenTheSizesOfTheFilesAreNotKnown_ThenThePercentMovedFollowsTheFiles() {
+        final SubmissionProgress submissionProgress = submissionProgressRegistry.start("submission-1");
+        submissionProgress.setFilesToMove(4, 0);
+
+        submissionProgress.recordFileMoved(null);
+
+        assertThat(submissionProgress.getPercentMoved(), is(25.0));
+    }
+
+    @Test
+    public void whenTheCallToEnaFinishes_ThenItIsNoLongerShown() throws InterruptedException {
+        final SubmissionProgress submissionProgress = submissionProgressRegistry.start("submission-1");
+
+        submissionProgress.recordEnaCallStarted();
+        Thread.sleep(5);
+        assertThat(submissionProgress.getEnaCallMillis(), is(greaterThanOrEqualTo(5L)));
+
+        submissionProgress.recordEnaCallFinished();
+        assertThat(submissionProgress.getEnaCallMillis(), is(-1L));
+        assertThat(submissionProgress.toMap().get("enaCallSeconds"), is(nullValue()));
+    }
+
+    @Test
+    public void whenTheEndpointIsInvoked_ThenItListsTheSubmissionsInFlightAndPutsTheOldestInTheInfo() {
+        submissionProgressRegistry.start("submission-1").setStage(SubmissionProgress.Stage.SUBMITTING_TO_ENA);
+
+        final List<Map<String, Object>> submissions = submissionProgressEndpoint.invoke();
+        assertThat(submissions.size(), is(1));
+        assertThat(submissions.get(0).get("submissionId"), is("submission-1"));
+
+        final Info.Builder builder = new Info.Builder();
+        submissionProgressEndpoint.contribute(builder);
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> info = (Map<String, Object>) builder.build().get("submissions");
+        assertThat(info.get("inFlight"), is(1));
+        assertThat(((Map<?, ?>) info.get("oldest")).get("stage"), is(SubmissionProgress.Stage.SUBMITTING_TO_ENA));
+    }
+}
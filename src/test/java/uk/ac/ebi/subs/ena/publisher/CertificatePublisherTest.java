@@ -0,0 +1,122 @@
+package uk.ac.ebi.subs.ena.publisher;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.ena.metrics.EnaAgentMetrics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class CertificatePublisherTest {
+
+    private static final String EXCHANGE = "usi-1:submissions";
+    private static final String ROUTING_KEY = "usi.submission.agent.results";
+
+    private RabbitTemplate rabbitTemplate;
+
+    private MeterRegistry meterRegistry;
+
+    private CertificatePublisher certificatePublisher;
+
+    @Before
+    public void setup() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        certificatePublisher = new CertificatePublisher(new RabbitMessagingTemplate(rabbitTemplate), new EnaAgentMetrics(meterRegistry));
+        ReflectionTestUtils.setField(certificatePublisher, "confirms", true);
+        ReflectionTestUtils.setField(certificatePublisher, "bufferSize", 10);
+        ReflectionTestUtils.setField(certificatePublisher, "batchSize", 5);
+        ReflectionTestUtils.setField(certificatePublisher, "bufferTimeoutMillis", 1000L);
+        ReflectionTestUtils.setField(certificatePublisher, "confirmTimeoutMillis", 5000L);
+    }
+
+    @After
+    public void tearDown() {
+        certificatePublisher.destroy();
+    }
+
+    @Test
+    public void whenTheBrokerConfirmsAResult_ThenItsPublishIsDone() throws Exception {
+        final RabbitTemplate.ConfirmCallback confirmCallback = startPublisher();
+
+        final CompletableFuture<Void> first = certificatePublisher.publish(EXCHANGE, ROUTING_KEY, "first");
+        final CompletableFuture<Void> second = certificatePublisher.publish(EXCHANGE, ROUTING_KEY, "second");
+        final List<CorrelationData> sent = sentCorrelationData(2);
+
+        assertThat(first.isDone(), is(false));
+        assertThat(certificatePublisher.getUnconfirmed(), is(2));
+
+        confirmCallback.confirm(sent.get(0), true, null);
+        confirmCallback.confirm(sent.get(1), false, "queue full");
+
+        first.get(5, TimeUnit.SECONDS);
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("A result the broker did not take should not count as sent.");
+        } catch (ExecutionException e) {
+            assertThat(meterRegistry.find("ena.agent.publisher.nacks").counter().count(), is(1.0));
+        }
+        assertThat(certificatePublisher.getUnconfirmed(), is(0));
+    }
+
+    @Test
+    public void whenTheBrokerDoesNotConfirmInTime_ThenThePublishFails() throws Exception {
+        ReflectionTestUtils.setField(certificatePublisher, "confirmTimeoutMillis", 100L);
+        startPublisher();
+
+        final CompletableFuture<Void> publish = certificatePublisher.publish(EXCHANGE, ROUTING_KEY, "result");
+
+        try {
+            publish.get(5, TimeUnit.SECONDS);
+            fail("A result that is never confirmed should not count as sent.");
+        } catch (ExecutionException e) {
+            assertThat(certificatePublisher.getUnconfirmed(), is(0));
+        }
+    }
+
+    @Test
+    public void whenConfirmsAreOff_ThenTheResultIsSentStraightAway() {
+        ReflectionTestUtils.setField(certificatePublisher, "confirms", false);
+        certificatePublisher.afterPropertiesSet();
+
+        final CompletableFuture<Void> publish = certificatePublisher.publish(EXCHANGE, ROUTING_KEY, "result");
+
+        assertThat(publish.isDone(), is(true));
+        verify(rabbitTemplate).send(eq(EXCHANGE), eq(ROUTING_KEY), any(Message.class));
+    }
+
+    private RabbitTemplate.ConfirmCallback startPublisher() {
+        certificatePublisher.afterPropertiesSet();
+
+        final ArgumentCaptor<RabbitTemplate.ConfirmCallback> confirmCallback = ArgumentCaptor.forClass(RabbitTemplate.ConfirmCallback.class);
+        verify(rabbitTemplate).setConfirmCallback(confirmCallback.capture());
+        return confirmCallback.getValue();
+    }
+
+    private List<CorrelationData> sentCorrelationData(int times) {
+        final ArgumentCaptor<CorrelationData> correlationData = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, timeout(5000).times(times))
+                .send(eq(EXCHANGE), eq(ROUTING_KEY), any(Message.class), correlationData.capture());
+        return correlationData.getAllValues();
+    }
+}
@@ -0,0 +1,179 @@
+package uk.ac.ebi.subs.ena.sample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.ac.ebi.subs.data.component.Team;
+import uk.ac.ebi.subs.data.submittable.Sample;
+import uk.ac.ebi.subs.ena.processor.ENAProcessor;
+import uk.ac.ebi.subs.processing.SubmissionEnvelope;
+import uk.ac.ebi.subs.processing.UpdatedSamplesEnvelope;
+import uk.ac.ebi.subs.validator.data.SingleValidationResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SampleUpdateCoalescerTest {
+
+    private SampleUpdateCoalescer sampleUpdateCoalescer;
+
+    private ENAProcessor enaProcessor;
+
+    private final List<SubmissionEnvelope> processedEnvelopes = Collections.synchronizedList(new ArrayList<>());
+
+    private final Team team = new Team();
+
+    @Before
+    public void setup() {
+        team.setName("test-team");
+
+        enaProcessor = mock(ENAProcessor.class);
+        when(enaProcessor.process(any(SubmissionEnvelope.class))).thenAnswer(invocation -> {
+            processedEnvelopes.add((SubmissionEnvelope) invocation.getArguments()[0]);
+            return Collections.emptyList();
+        });
+
+        sampleUpdateCoalescer = new SampleUpdateCoalescer(enaProcessor);
+        ReflectionTestUtils.setField(sampleUpdateCoalescer, "windowMillis", 300L);
+        ReflectionTestUtils.setField(sampleUpdateCoalescer, "maxBatchSize", 100);
+        sampleUpdateCoalescer.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        sampleUpdateCoalescer.destroy();
+    }
+
+    @Test
+    public void whenUpdatesArriveWithinAWindow_ThenTheyGoToENAOnceWithTheLatestVersionOfEachSample() {
+        final Sample firstVersion = sample("SAMEA1", "first");
+        final Sample otherSample = sample("SAMEA2", "other");
+        final Sample latestVersion = sample("SAMEA1", "latest");
+
+        final CompletableFuture<Void> firstUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-1", firstVersion, otherSample));
+        final CompletableFuture<Void> secondUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-1", latestVersion));
+        CompletableFuture.allOf(firstUpdate, secondUpdate).join();
+
+        assertThat(processedEnvelopes, hasSize(1));
+        assertThat(processedEnvelopes.get(0).getSubmission().getId(), is("submission-1"));
+        assertThat(processedEnvelopes.get(0).getSamples(), contains(otherSample, latestVersion));
+    }
+
+    @Test
+    public void whenUpdatesOfSeveralSubmissionsArriveWithinAWindow_ThenEachGoesToENAWithItsOwnSubmission() {
+        final Sample sampleOfFirstSubmission = sample("SAMEA1", "a");
+        final Sample sampleOfSecondSubmission = sample("SAMEA2", "b");
+
+        CompletableFuture.allOf(
+                sampleUpdateCoalescer.add(updatedSamples("submission-1", sampleOfFirstSubmission)),
+                sampleUpdateCoalescer.add(updatedSamples("submission-2", sampleOfSecondSubmission))).join();
+
+        assertThat(processedEnvelopes, hasSize(2));
+        assertThat(processedEnvelopes.get(0).getSubmission().getId(), is("submission-1"));
+        assertThat(processedEnvelopes.get(0).getSamples(), contains(sampleOfFirstSubmission));
+        assertThat(processedEnvelopes.get(1).getSubmission().getId(), is("submission-2"));
+        assertThat(processedEnvelopes.get(1).getSamples(), contains(sampleOfSecondSubmission));
+    }
+
+    @Test
+    public void whenENARejectsASample_ThenOnlyTheUpdateWithThatSampleIsRejected() {
+        final Sample rejectedSample = sample("SAMEA1", "rejected");
+        doAnswer(invocation -> {
+            processedEnvelopes.add((SubmissionEnvelope) invocation.getArguments()[0]);
+            return Collections.singletonList(validationResult(rejectedSample.getId(), "invalid attribute"));
+        }).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        final CompletableFuture<Void> rejectedUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-1", rejectedSample));
+        final CompletableFuture<Void> acceptedUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-1", sample("SAMEA2", "accepted")));
+
+        acceptedUpdate.join();
+        try {
+            rejectedUpdate.join();
+            fail("The update should have been rejected.");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), is(instanceOf(SampleUpdateRejectedException.class)));
+            assertThat(e.getCause().getMessage(), containsString("SAMEA1=invalid attribute"));
+        }
+        assertThat(processedEnvelopes, hasSize(1));
+    }
+
+    @Test
+    public void whenAWindowReachesTheMaximumBatchSize_ThenItIsSentStraightAwayWithoutWaitingForENA() throws InterruptedException {
+        ReflectionTestUtils.setField(sampleUpdateCoalescer, "windowMillis", 60000L);
+        ReflectionTestUtils.setField(sampleUpdateCoalescer, "maxBatchSize", 2);
+        final CountDownLatch enaAnswers = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            enaAnswers.await();
+            processedEnvelopes.add((SubmissionEnvelope) invocation.getArguments()[0]);
+            return Collections.emptyList();
+        }).when(enaProcessor).process(any(SubmissionEnvelope.class));
+
+        final CompletableFuture<Void> update = sampleUpdateCoalescer.add(
+                updatedSamples("submission-1", sample("SAMEA1", "a"), sample("SAMEA2", "b")));
+
+        assertThat(update.isDone(), is(false));
+        enaAnswers.countDown();
+        update.join();
+        assertThat(processedEnvelopes, hasSize(1));
+    }
+
+    @Test
+    public void whenENAFails_ThenEveryUpdateOfTheWindowFails() {
+        when(enaProcessor.process(any(SubmissionEnvelope.class))).thenThrow(new IllegalStateException("ENA is down"));
+
+        final CompletableFuture<Void> firstUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-1", sample("SAMEA1", "a")));
+        final CompletableFuture<Void> secondUpdate = sampleUpdateCoalescer.add(updatedSamples("submission-2", sample("SAMEA2", "b")));
+
+        for (CompletableFuture<Void> update : Arrays.asList(firstUpdate, secondUpdate)) {
+            try {
+                update.join();
+                fail("The update should have failed.");
+            } catch (CompletionException e) {
+                assertThat(e.getCause().getMessage(), is("ENA is down"));
+                assertThat(e.getCause(), is(not(instanceOf(SampleUpdateRejectedException.class))));
+            }
+        }
+    }
+
+    private SingleValidationResult validationResult(String entityUuid, String message) {
+        SingleValidationResult validationResult = new SingleValidationResult();
+        validationResult.setEntityUuid(entityUuid);
+        validationResult.setMessage(message);
+        return validationResult;
+    }
+
+    private UpdatedSamplesEnvelope updatedSamples(String submissionId, Sample... samples) {
+        UpdatedSamplesEnvelope updatedSamplesEnvelope = new UpdatedSamplesEnvelope();
+        updatedSamplesEnvelope.setSubmissionId(submissionId);
+        updatedSamplesEnvelope.setUpdatedSamples(Arrays.asList(samples));
+        return updatedSamplesEnvelope;
+    }
+
+    private Sample sample(String accession, String alias) {
+        Sample sample = new Sample();
+        sample.setId(alias + "-" + accession);
+        sample.setAlias(alias);
+        sample.setAccession(accession);
+        sample.setTeam(team);
+        return sample;
+    }
+}
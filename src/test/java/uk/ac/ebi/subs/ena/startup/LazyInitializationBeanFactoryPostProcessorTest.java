@@ -0,0 +1,189 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LazyInitializationBeanFactoryPostProcessorTest {
+
+    private AnnotationConfigApplicationContext applicationContext;
+
+    @Before
+    public void setup() {
+        applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(TestConfiguration.class);
+        applicationContext.registerBeanDefinition("namedEagerBean", new RootBeanDefinition(PlainBean.class));
+        applicationContext.addBeanFactoryPostProcessor(
+                new LazyInitializationBeanFactoryPostProcessor(Collections.singletonList("namedEagerBean")));
+        applicationContext.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Test
+    public void whenABeanIsNotNeededToConsume_ThenItIsOnlyCreatedOnFirstUse() {
+        assertThat(isCreated("plainBean"), is(false));
+
+        applicationContext.getBean("plainBean");
+
+        assertThat(isCreated("plainBean"), is(true));
+    }
+
+    @Test
+    public void whenABeanListensToAQueue_ThenItIsCreatedAtStartup() {
+        assertThat(isCreated("listenerBean"), is(true));
+    }
+
+    @Test
+    public void whenABeanCreatedAtStartupUsesALazyBean_ThenTheLazyBeanIsOnlyCreatedOnItsFirstCall() {
+        final ListenerBean listenerBean = applicationContext.getBean(ListenerBean.class);
+        assertThat(isCreated("listenerDependency"), is(false));
+
+        listenerBean.handle("message");
+
+        assertThat(isCreated("listenerDependency"), is(true));
+        assertThat(applicationContext.getBean(ListenerDependency.class).getCalls(), is(1));
+    }
+
+    @Test
+    public void whenABeanIsAQueue_ThenItIsCreatedAtStartup() {
+        assertThat(isCreated("queue"), is(true));
+    }
+
+    @Test
+    public void whenABeanHasALifecycleOrScheduledMethods_ThenItIsCreatedAtStartup() {
+        assertThat(isCreated("lifecycleBean"), is(true));
+        assertThat(isCreated("scheduledBean"), is(true));
+    }
+
+    @Test
+    public void whenABeanIsNamedAsEager_ThenItIsCreatedAtStartup() {
+        assertThat(isCreated("namedEagerBean"), is(true));
+    }
+
+    private boolean isCreated(String beanName) {
+        return applicationContext.getBeanFactory().containsSingleton(beanName);
+    }
+
+    @Configuration
+    static class TestConfiguration {
+
+        @Bean
+        public PlainBean plainBean() {
+            return new PlainBean();
+        }
+
+        @Bean
+        public ListenerDependency listenerDependency() {
+            return new ListenerDependency();
+        }
+
+        @Bean
+        public ListenerBean listenerBean(ListenerDependency listenerDependency) {
+            return new ListenerBean(listenerDependency);
+        }
+
+        @Bean
+        public Queue queue() {
+            return new Queue("test-queue");
+        }
+
+        @Bean
+        public LifecycleBean lifecycleBean() {
+            return new LifecycleBean();
+        }
+
+        @Bean
+        public ScheduledBean scheduledBean() {
+            return new ScheduledBean();
+        }
+    }
+
+    static class PlainBean {
+    }
+
+    static class ListenerDependency {
+
+        private int calls;
+
+        public void call() {
+            calls++;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+    }
+
+    static class ListenerBean {
+
+        private final ListenerDependency listenerDependency;
+
+        ListenerBean(ListenerDependency listenerDependency) {
+            this.listenerDependency = listenerDependency;
+        }
+
+        @RabbitListener(queues = "test-queue")
+        public void handle(String message) {
+            listenerDependency.call();
+        }
+    }
+
+    static class ScheduledBean {
+
+        @Scheduled(fixedDelay = 1000)
+        public void sweep() {
+        }
+    }
+
+    static class LifecycleBean implements SmartLifecycle {
+
+        private boolean running;
+
+        @Override
+        public boolean isAutoStartup() {
+            return false;
+        }
+
+        @Override
+        public void stop(Runnable callback) {
+            callback.run();
+        }
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public int getPhase() {
+            return 0;
+        }
+    }
+}
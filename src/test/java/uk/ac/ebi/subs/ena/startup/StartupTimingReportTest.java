@@ -0,0 +1,60 @@
+package uk.ac.ebi.subs.ena.startup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.listener.AsyncConsumerStartedEvent;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import uk.ac.ebi.subs.messaging.Queues;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class StartupTimingReportTest {
+
+    private static final String[] ARGS = {};
+
+    private SpringApplication springApplication;
+
+    private StartupTimingReport startupTimingReport;
+
+    @Before
+    public void setup() {
+        springApplication = new SpringApplication(StartupTimingReportTest.class);
+        startupTimingReport = new StartupTimingReport();
+        startupTimingReport.onApplicationEvent(new ApplicationStartingEvent(springApplication, ARGS));
+    }
+
+    @Test
+    public void whenTheAgentConsumesSubmissions_ThenTheTimeItTookIsReported() throws InterruptedException {
+        Thread.sleep(5);
+        startupTimingReport.onApplicationEvent(new AsyncConsumerStartedEvent(container(Queues.ENA_AGENT), new Object()));
+        startupTimingReport.onApplicationEvent(new ApplicationReadyEvent(springApplication, ARGS, new GenericApplicationContext()));
+
+        assertThat(startupTimingReport.getMillisSinceApplicationStarting(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS),
+                is(greaterThanOrEqualTo(5L)));
+        assertThat(startupTimingReport.report(), containsString("consuming from " + Queues.ENA_AGENT));
+        assertThat(startupTimingReport.report(), not(containsString("not consuming")));
+    }
+
+    @Test
+    public void whenAnotherQueueIsConsumed_ThenTheAgentIsNotConsumingSubmissionsYet() {
+        startupTimingReport.onApplicationEvent(new AsyncConsumerStartedEvent(container("another-queue"), new Object()));
+
+        assertThat(startupTimingReport.isReached(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS), is(false));
+        assertThat(startupTimingReport.getMillisSinceApplicationStarting(StartupTimingReport.Phase.CONSUMING_SUBMISSIONS), is(-1L));
+        assertThat(startupTimingReport.report(), containsString("not consuming from " + Queues.ENA_AGENT + " yet"));
+    }
+
+    private static SimpleMessageListenerContainer container(String queueName) {
+        final SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+        container.setQueueNames(queueName);
+        return container;
+    }
+}